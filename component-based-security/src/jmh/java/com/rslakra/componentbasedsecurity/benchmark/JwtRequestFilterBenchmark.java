@@ -0,0 +1,132 @@
+package com.rslakra.componentbasedsecurity.benchmark;
+
+import ch.qos.logback.classic.Level;
+import com.rslakra.componentbasedsecurity.cache.UserDetailsCache;
+import com.rslakra.componentbasedsecurity.config.JwtRequestFilter;
+import com.rslakra.componentbasedsecurity.config.JwtUtils;
+import com.rslakra.componentbasedsecurity.config.TokenContext;
+import com.rslakra.componentbasedsecurity.config.TokenFailures;
+import com.rslakra.componentbasedsecurity.service.TokenVersions;
+import com.rslakra.componentbasedsecurity.service.UserAccount;
+import com.rslakra.componentbasedsecurity.service.UserDetailsServiceImpl;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of {@link JwtRequestFilter}: anonymous and permitted requests, which take the fast path, and
+ * requests with a valid, expired or malformed token. Run with the GC profiler to see the bytes allocated per request.
+ *
+ * @author Rohtash Lakra
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class JwtRequestFilterBenchmark {
+
+    private static final String SECRET = "rslakra-component-based-security-jwt-secret-key";
+    private static final String USER_NAME = "benchmark";
+    private static final long USER_ID = 1L;
+    private static final FilterChain CHAIN = (request, response) -> {
+    };
+
+    private JwtRequestFilter filter;
+    private MockHttpServletResponse response;
+    private MockHttpServletRequest anonymous;
+    private MockHttpServletRequest permitted;
+    private MockHttpServletRequest validToken;
+    private MockHttpServletRequest expiredToken;
+    private MockHttpServletRequest malformedToken;
+
+    @Setup
+    public void setUp() {
+        // the level the application runs with
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        final JwtUtils jwtUtils = new JwtUtils(SECRET, 0L, TimeUnit.HOURS.toMillis(1));
+        // the user stays cached, so the repository is never queried
+        final UserDetailsCache userDetailsCache = new UserDetailsCache(16, TimeUnit.DAYS.toMillis(1));
+        final UserAccount account = new UserAccount(USER_ID, USER_NAME, "{noop}", java.util.List.of());
+        userDetailsCache.get(USER_NAME, userName -> account);
+        final UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl();
+        ReflectionTestUtils.setField(userDetailsService, "userDetailsCache", userDetailsCache);
+        // no user was revoked, so the versions are never loaded
+        filter = new JwtRequestFilter(jwtUtils, userDetailsService, new TokenContext(), new TokenFailures(10_000),
+                                      new TokenVersions(null));
+
+        response = new MockHttpServletResponse();
+        anonymous = request("GET", "/home", null);
+        permitted = request("POST", "/authenticate", null);
+        validToken = request("GET", "/home", jwtUtils.generateToken(account, USER_ID, 0));
+        expiredToken = request("GET", "/home", new JwtUtils(SECRET, 0L, -1000L).generateToken(account, USER_ID, 0));
+        malformedToken = request("GET", "/home", "not-a-token");
+    }
+
+    @Benchmark
+    public void anonymous() throws ServletException, IOException {
+        doFilter(anonymous);
+    }
+
+    @Benchmark
+    public void permitted() throws ServletException, IOException {
+        doFilter(permitted);
+    }
+
+    @Benchmark
+    public void validToken() throws ServletException, IOException {
+        doFilter(validToken);
+    }
+
+    @Benchmark
+    public void expiredToken() throws ServletException, IOException {
+        doFilter(expiredToken);
+    }
+
+    @Benchmark
+    public void malformedToken() throws ServletException, IOException {
+        doFilter(malformedToken);
+    }
+
+    private void doFilter(MockHttpServletRequest request) throws ServletException, IOException {
+        filter.doFilter(request, response, CHAIN);
+        SecurityContextHolder.clearContext();
+    }
+
+    /**
+     * @param method the HTTP method
+     * @param path   the servlet path
+     * @param token  the bearer token, or null for none
+     * @return the request
+     */
+    private static MockHttpServletRequest request(String method, String path, String token) {
+        final MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setServletPath(path);
+        if (token != null) {
+            request.addHeader(JwtUtils.AUTHORIZATION, JwtUtils.BEARER + " " + token);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,91 @@
+package com.rslakra.componentbasedsecurity.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The latencies and response statuses of one endpoint, as seen by one client; not thread-safe. Every latency is
+ * kept, so percentiles are exact; the recorders of all clients are merged into one per endpoint for the report.
+ *
+ * @author Rohtash Lakra
+ */
+final class LatencyRecorder {
+
+    private long[] latencies = new long[1024];
+    private int count;
+    private long succeeded;
+    // 429 and 503: the server shedding load, as designed
+    private long rejected;
+    // any other status, or no response at all
+    private long failed;
+
+    /**
+     * @param latencyNanos the time from sending the request to reading the whole response
+     * @param status       the response status, or 0 if no response was received
+     */
+    void record(final long latencyNanos, final int status) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+        if (status >= 200 && status < 300) {
+            succeeded++;
+        } else if (status == 429 || status == 503) {
+            rejected++;
+        } else {
+            failed++;
+        }
+    }
+
+    /**
+     * @param other the recorder of another client, for the same endpoint
+     */
+    void merge(final LatencyRecorder other) {
+        if (count + other.count > latencies.length) {
+            latencies = Arrays.copyOf(latencies, count + other.count);
+        }
+        System.arraycopy(other.latencies, 0, latencies, count, other.count);
+        count += other.count;
+        succeeded += other.succeeded;
+        rejected += other.rejected;
+        failed += other.failed;
+    }
+
+    long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @param durationNanos the measured time
+     * @return the request count, throughput, status counts and latency percentiles in millis
+     */
+    Map<String, Object> summarize(final long durationNanos) {
+        final long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", (long) count);
+        summary.put("throughput", count * 1_000_000_000.0 / durationNanos);
+        summary.put("succeeded", succeeded);
+        summary.put("rejected", rejected);
+        summary.put("failed", failed);
+        summary.put("p50", percentileMillis(sorted, 50));
+        summary.put("p95", percentileMillis(sorted, 95));
+        summary.put("p99", percentileMillis(sorted, 99));
+        summary.put("max", (sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1_000_000.0));
+        return summary;
+    }
+
+    /**
+     * @param sorted     the sorted latencies
+     * @param percentile the percentile, from 0 to 100
+     * @return the nearest-rank percentile in millis, or 0 if there are no latencies
+     */
+    private static double percentileMillis(final long[] sorted, final int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,309 @@
+package com.rslakra.componentbasedsecurity.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rslakra.componentbasedsecurity.ComponentBasedSecurityApplication;
+import com.rslakra.componentbasedsecurity.config.JwtUtils;
+import com.rslakra.componentbasedsecurity.payload.dto.UserDTO;
+import com.rslakra.componentbasedsecurity.service.UserAccount;
+import com.rslakra.componentbasedsecurity.service.UserDetailsServiceImpl;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the application on a random port, with an in-memory H2 database, seeds users and drives a mix of
+ * registrations, logins and authenticated <code>GET /home</code> calls from virtual-thread clients. Prints, and
+ * writes as JSON, the throughput and p50/p95/p99 latencies of each endpoint; exits with 1 if any request failed
+ * (429/503 are the server shedding load, and are reported apart).
+ * <p>
+ * Needs nothing but the JDK and the project's dependencies, so it runs offline:
+ * <pre>
+ *     mvn -Ploadtest verify [-Dloadtest.clients=64] [-Dloadtest.users=100] [-Dloadtest.durationSeconds=30]
+ *                           [-Dloadtest.warmupSeconds=5] [-Dloadtest.mix=register:1,authenticate:9,home:90]
+ * </pre>
+ *
+ * @author Rohtash Lakra
+ */
+public final class LoadTest {
+
+    static final String PASSWORD = "load-test-password";
+
+    /**
+     * The endpoints of the mix.
+     */
+    enum Endpoint {
+        REGISTER,
+        AUTHENTICATE,
+        HOME
+    }
+
+    private final Map<String, String> options;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private URI baseUri;
+    private List<String> userNames;
+    private List<String> accessTokens;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    /**
+     * @param args the options, as <code>--name=value</code>
+     */
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value: " + arg);
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        System.exit(new LoadTest(options).run() ? 0 : 1);
+    }
+
+    /**
+     * @return true if no request failed, or failures are tolerated
+     */
+    private boolean run() throws Exception {
+        final int users = intOption("users", 100);
+        final int clients = intOption("clients", 64);
+        final int warmupSeconds = intOption("warmupSeconds", 5);
+        final int durationSeconds = intOption("durationSeconds", 30);
+        final Map<Endpoint, Integer> mix = parseMix(options.getOrDefault("mix", "register:1,authenticate:9,home:90"));
+
+        final Map<Endpoint, LatencyRecorder> results;
+        try (ConfigurableApplicationContext context = start()) {
+            baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+            seed(context, users);
+            System.out.printf("Seeded %d users; %d clients, %ds warm-up, %ds measured, mix %s%n", users, clients,
+                              warmupSeconds, durationSeconds, mix);
+            results = drive(clients, mix, TimeUnit.SECONDS.toNanos(warmupSeconds),
+                            TimeUnit.SECONDS.toNanos(durationSeconds));
+        }
+
+        final Map<String, Object> report = report(results, TimeUnit.SECONDS.toNanos(durationSeconds));
+        final String reportFile = options.get("report");
+        if (reportFile != null) {
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(reportFile), report);
+            System.out.println("Report written to " + reportFile);
+        }
+
+        final long failed = results.values().stream().mapToLong(LatencyRecorder::getFailed).sum();
+        return (failed == 0 || !Boolean.parseBoolean(options.getOrDefault("failOnErrors", "true")));
+    }
+
+    /**
+     * @return the started application, on a random port, with a fresh in-memory database
+     */
+    private static ConfigurableApplicationContext start() {
+        // command line arguments, so they win over application.properties
+        return new SpringApplicationBuilder(ComponentBasedSecurityApplication.class).run(
+            "--server.port=0",
+            "--spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+            "--spring.jpa.hibernate.ddl-auto=create-drop",
+            "--spring.jpa.show-sql=false",
+            "--spring.h2.console.enabled=false",
+            // the tokens are issued once, before the run
+            "--app.accessTokenValidityMillis=" + TimeUnit.DAYS.toMillis(1),
+            "--logging.level.root=WARN");
+    }
+
+    /**
+     * Saves the users through the application, hashing their passwords in parallel, and issues their access tokens.
+     *
+     * @param context the application
+     * @param users   the number of users
+     */
+    private void seed(ConfigurableApplicationContext context, int users) throws Exception {
+        final UserDetailsServiceImpl userDetailsService = context.getBean(UserDetailsServiceImpl.class);
+        final JwtUtils jwtUtils = context.getBean(JwtUtils.class);
+        userNames = new ArrayList<>(users);
+        accessTokens = new ArrayList<>(users);
+        final List<Future<?>> saves = new ArrayList<>(users);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < users; i++) {
+                final UserDTO user = new UserDTO();
+                user.setUserName("user-" + i);
+                user.setPassword(PASSWORD);
+                userNames.add(user.getUserName());
+                saves.add(executor.submit(() -> userDetailsService.save(user)));
+            }
+            for (Future<?> save : saves) {
+                save.get();
+            }
+        }
+        for (String userName : userNames) {
+            final UserAccount account = (UserAccount) userDetailsService.loadUserByUsername(userName);
+            accessTokens.add(jwtUtils.generateToken(account, account.getId(), 0));
+        }
+    }
+
+    /**
+     * Runs the clients through the warm-up and the measured time.
+     *
+     * @param clients       the number of clients
+     * @param mix           the weights of the endpoints
+     * @param warmupNanos   the time before latencies are recorded
+     * @param durationNanos the measured time
+     * @return the recorders of all clients, merged by endpoint of the mix
+     */
+    private Map<Endpoint, LatencyRecorder> drive(int clients, Map<Endpoint, Integer> mix, long warmupNanos,
+                                                 long durationNanos) throws Exception {
+        final long measureFrom = System.nanoTime() + warmupNanos;
+        final long measureUntil = measureFrom + durationNanos;
+        final List<Future<Map<Endpoint, LatencyRecorder>>> futures = new ArrayList<>(clients);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                final int clientId = i;
+                futures.add(executor.submit(() -> client(clientId, mix, measureFrom, measureUntil)));
+            }
+
+            final Map<Endpoint, LatencyRecorder> merged = new EnumMap<>(Endpoint.class);
+            for (Endpoint endpoint : mix.keySet()) {
+                merged.put(endpoint, new LatencyRecorder());
+            }
+            for (Future<Map<Endpoint, LatencyRecorder>> future : futures) {
+                future.get().forEach((endpoint, recorder) -> merged.get(endpoint).merge(recorder));
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Sends requests, one at a time, until the measured time is over.
+     *
+     * @return the latencies recorded by this client, by endpoint
+     */
+    private Map<Endpoint, LatencyRecorder> client(int clientId, Map<Endpoint, Integer> mix, long measureFrom,
+                                                  long measureUntil) throws InterruptedException {
+        final Map<Endpoint, LatencyRecorder> recorders = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : mix.keySet()) {
+            recorders.put(endpoint, new LatencyRecorder());
+        }
+        final int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        int registrations = 0;
+
+        long startedAt;
+        while ((startedAt = System.nanoTime()) < measureUntil) {
+            final Endpoint endpoint = pick(mix, random.nextInt(totalWeight));
+            final int user = random.nextInt(userNames.size());
+            final HttpRequest request = switch (endpoint) {
+                case REGISTER -> post("/register", "load-" + clientId + "-" + registrations++);
+                case AUTHENTICATE -> post("/authenticate", userNames.get(user));
+                case HOME -> HttpRequest.newBuilder(baseUri.resolve("/home"))
+                    .header(JwtUtils.AUTHORIZATION, JwtUtils.BEARER + " " + accessTokens.get(user))
+                    .GET()
+                    .build();
+            };
+
+            int status;
+            try {
+                status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException ex) {
+                status = 0;
+            }
+            if (startedAt >= measureFrom) {
+                recorders.get(endpoint).record(System.nanoTime() - startedAt, status);
+            }
+        }
+        return recorders;
+    }
+
+    /**
+     * @param path     the path
+     * @param userName the username of the credentials sent
+     * @return the POST request with the credentials
+     */
+    private HttpRequest post(String path, String userName) {
+        final String body = "{\"userName\":\"" + userName + "\",\"password\":\"" + PASSWORD + "\"}";
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
+
+    /**
+     * Prints the results as a table.
+     *
+     * @param results       the merged recorders
+     * @param durationNanos the measured time
+     * @return the results by endpoint, for the JSON report
+     */
+    private static Map<String, Object> report(Map<Endpoint, LatencyRecorder> results, long durationNanos) {
+        final Map<String, Object> report = new LinkedHashMap<>();
+        System.out.printf("%-13s %9s %10s %9s %9s %7s %9s %9s %9s %9s%n", "endpoint", "requests", "req/s",
+                          "2xx", "429/503", "failed", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        results.forEach((endpoint, recorder) -> {
+            final Map<String, Object> summary = recorder.summarize(durationNanos);
+            report.put(endpoint.name().toLowerCase(), summary);
+            System.out.printf("%-13s %9d %10.1f %9d %9d %7d %9.2f %9.2f %9.2f %9.2f%n", endpoint.name().toLowerCase(),
+                              summary.get("requests"), summary.get("throughput"), summary.get("succeeded"),
+                              summary.get("rejected"), summary.get("failed"), summary.get("p50"), summary.get("p95"),
+                              summary.get("p99"), summary.get("max"));
+        });
+        return report;
+    }
+
+    /**
+     * @param mix    the weights of the endpoints
+     * @param ticket a number below the sum of the weights
+     * @return the endpoint the ticket falls on
+     */
+    private static Endpoint pick(Map<Endpoint, Integer> mix, int ticket) {
+        for (Map.Entry<Endpoint, Integer> entry : mix.entrySet()) {
+            ticket -= entry.getValue();
+            if (ticket < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Ticket beyond the total weight");
+    }
+
+    /**
+     * @param mix the weights, e.g. <code>register:1,authenticate:9,home:90</code>
+     * @return the positive weights by endpoint
+     */
+    private static Map<Endpoint, Integer> parseMix(String mix) {
+        final Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+        for (String part : mix.split(",")) {
+            final String[] nameAndWeight = part.trim().split(":");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Expected endpoint:weight in the mix: " + part);
+            }
+            final int weight = Integer.parseInt(nameAndWeight[1].trim());
+            if (weight > 0) {
+                weights.put(Endpoint.valueOf(nameAndWeight[0].trim().toUpperCase()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no endpoint: " + mix);
+        }
+        return weights;
+    }
+
+    private int intOption(String name, int defaultValue) {
+        final String value = options.get(name);
+        return (value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim()));
+    }
+}
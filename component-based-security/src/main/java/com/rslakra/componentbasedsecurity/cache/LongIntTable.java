@@ -0,0 +1,164 @@
+package com.rslakra.componentbasedsecurity.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A map of <code>long</code> keys to <code>int</code> values, with open addressing over primitive arrays, so a lookup
+ * neither boxes nor allocates.
+ * <p>
+ * Built for many lookups and few writes: {@link #get(long)} is an optimistic read, retried under the read lock only if
+ * a write raced with it; writes take the write lock. Values only grow ({@link #putMax(long, int)}) and entries are
+ * never removed. Absent keys map to 0.
+ *
+ * @author Rohtash Lakra
+ */
+public final class LongIntTable {
+
+    // marks an empty slot; not a valid key
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+    // the keys and values are swapped together on resize, so a reader always probes a consistent pair
+    private Slots slots = new Slots(MIN_CAPACITY);
+    private int size;
+
+    /**
+     * @param key the key
+     * @return the value of the key, or 0 if absent
+     */
+    public int get(final long key) {
+        long stamp = lock.tryOptimisticRead();
+        int value = slots.find(key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = slots.find(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Sets the value of the key, unless it already has a greater one.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the value of the key after the call
+     * @throws IllegalArgumentException if the key is {@link Long#MIN_VALUE}
+     */
+    public int putMax(final long key, final int value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Unsupported key: " + key);
+        }
+
+        final long stamp = lock.writeLock();
+        try {
+            int index = slots.indexOf(key);
+            if (slots.keys[index] == key) {
+                slots.values[index] = Math.max(slots.values[index], value);
+                return slots.values[index];
+            }
+
+            // at most half full, so probes stay short and always reach an empty slot
+            if ((size + 1) * 2 > slots.keys.length) {
+                slots = slots.resize();
+                index = slots.indexOf(key);
+            }
+            slots.values[index] = value;
+            slots.keys[index] = key;
+            size++;
+            return value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the number of keys
+     */
+    public int size() {
+        final long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * The keys and values, by slot.
+     */
+    private static final class Slots {
+
+        private final long[] keys;
+        private final int[] values;
+
+        private Slots(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        /**
+         * @param key the key
+         * @return the value of the key, or 0 if absent
+         */
+        private int find(long key) {
+            final int mask = keys.length - 1;
+            int index = hash(key) & mask;
+            // bounded, as a racing write may leave an optimistic reader without an empty slot to stop at
+            for (int probes = 0; probes <= mask; probes++) {
+                final long current = keys[index];
+                if (current == key) {
+                    return values[index];
+                }
+                if (current == EMPTY) {
+                    return 0;
+                }
+                index = (index + 1) & mask;
+            }
+            return 0;
+        }
+
+        /**
+         * @param key the key
+         * @return the slot of the key, or the empty slot it would go to
+         */
+        private int indexOf(long key) {
+            final int mask = keys.length - 1;
+            int index = hash(key) & mask;
+            while (keys[index] != key && keys[index] != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        /**
+         * @return the slots rehashed into twice the capacity
+         */
+        private Slots resize() {
+            final Slots resized = new Slots(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    final int index = resized.indexOf(keys[i]);
+                    resized.keys[index] = keys[i];
+                    resized.values[index] = values[i];
+                }
+            }
+            return resized;
+        }
+
+        /**
+         * @param key the key
+         * @return the mixed bits of the key, as sequential ids would otherwise cluster
+         */
+        private static int hash(long key) {
+            final long mixed = key * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ (mixed >>> 32));
+        }
+    }
+}
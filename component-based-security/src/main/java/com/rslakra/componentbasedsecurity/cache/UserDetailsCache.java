@@ -0,0 +1,270 @@
+package com.rslakra.componentbasedsecurity.cache;
+
+import com.rslakra.componentbasedsecurity.service.UserAccount;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of loaded {@link UserDetails}, keyed by username, in front of the user repository.
+ * <p>
+ * Entries live for <code>ttlMillis</code>. When the cache is full, every new entry evicts one: a small sample of
+ * loaded entries, taken from a random region of the map, is inspected and the expired (or soonest to expire) one is
+ * evicted, so a put never scans the whole map. Loads are single-flight: while a user is being loaded, concurrent lookups
+ * of the same user wait for that load instead of querying again. Failed loads (e.g. an unknown user, or a loader
+ * returning null) are not cached.
+ * <p>
+ * The cached instance is never handed out: authentication erases the credentials of the principal it returns, so every
+ * lookup gets its own copy.
+ *
+ * @author Rohtash Lakra
+ */
+@Component
+public class UserDetailsCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000L;
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+    // samples tried before giving up, when the sampled regions hold no loaded entry
+    private static final int EVICTION_ATTEMPTS = 4;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Clock clock;
+
+    /**
+     * @param maxSize   the maximum number of cached users, 0 to disable the cache
+     * @param ttlMillis the time an entry lives
+     * @param clock     the clock used to expire entries
+     */
+    public UserDetailsCache(int maxSize, long ttlMillis, Clock clock) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative");
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.clock = Objects.requireNonNull(clock, "clock");
+    }
+
+    /**
+     * @param maxSize   the maximum number of cached users, 0 to disable the cache
+     * @param ttlMillis the time an entry lives
+     */
+    @Autowired
+    public UserDetailsCache(@Value("${app.userCache.maxSize:" + DEFAULT_MAX_SIZE + "}") int maxSize,
+                            @Value("${app.userCache.ttlMillis:" + DEFAULT_TTL_MILLIS + "}") long ttlMillis) {
+        this(maxSize, ttlMillis, Clock.systemUTC());
+    }
+
+    /**
+     * Returns the cached user, or loads it, once, if it isn't cached or has expired.
+     *
+     * @param userName the username
+     * @param loader   loads the user from the repository
+     * @return a copy of the user details
+     * @throws RuntimeException whatever the loader throws, e.g. a <code>UsernameNotFoundException</code>, or an
+     *                          <code>InternalAuthenticationServiceException</code> if it returns null
+     */
+    public UserDetails get(final String userName, final Function<String, UserDetails> loader) {
+        if (maxSize == 0) {
+            return loader.apply(userName);
+        }
+
+        final long now = clock.millis();
+        final Entry created = new Entry(now + ttlMillis);
+        final Entry entry = entries.compute(userName, (key, existing) ->
+            (existing != null && !existing.isExpired(now) ? existing : created));
+        if (entry != created) {
+            hits.increment();
+            return copyOf(entry.await());
+        }
+
+        misses.increment();
+        if (entries.size() > maxSize) {
+            evictOne(now);
+        }
+        final UserDetails userDetails;
+        try {
+            userDetails = loader.apply(userName);
+            if (userDetails == null) {
+                throw new InternalAuthenticationServiceException("No user details loaded for username: " + userName);
+            }
+        } catch (Throwable ex) {
+            // complete the waiters whatever the loader failed with, so none of them hangs
+            entries.remove(userName, entry);
+            entry.future.completeExceptionally(ex);
+            throw ex;
+        }
+        entry.future.complete(userDetails);
+        return copyOf(userDetails);
+    }
+
+    /**
+     * Drops the cached user; called whenever the user is saved. A load already in flight still completes for the
+     * lookups waiting on it, but isn't cached.
+     *
+     * @param userName the username
+     */
+    public void invalidate(final String userName) {
+        entries.remove(userName);
+    }
+
+    /**
+     * Drops every cached user.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of cached users
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the hit ratio of all lookups so far, between 0 and 1
+     */
+    public double hitRate() {
+        final long hitCount = hits.sum();
+        final long total = hitCount + misses.sum();
+        return (total == 0 ? 0 : (double) hitCount / total);
+    }
+
+    /**
+     * @return hit/miss/eviction counters, the hit rate and the current size
+     */
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("hitRate", hitRate());
+        return stats;
+    }
+
+    /**
+     * @param userDetails the cached user
+     * @return a copy the caller may erase the credentials of
+     */
+    private static UserDetails copyOf(final UserDetails userDetails) {
+        if (userDetails instanceof UserAccount) {
+            return new UserAccount((UserAccount) userDetails);
+        }
+        return User.withUserDetails(userDetails).build();
+    }
+
+    /**
+     * Samples a few loaded entries and evicts an expired one, or the one closest to expiry. Entries still loading are
+     * skipped, as lookups are waiting on them.
+     *
+     * @param now the current time in millis
+     */
+    private void evictOne(long now) {
+        for (int attempt = 0; attempt < EVICTION_ATTEMPTS; attempt++) {
+            final Iterator<Map.Entry<String, Entry>> iterator = Spliterators.iterator(randomRegion());
+            Map.Entry<String, Entry> victim = null;
+            for (int i = 0; i < EVICTION_SAMPLE_SIZE && iterator.hasNext(); i++) {
+                final Map.Entry<String, Entry> candidate = iterator.next();
+                if (!candidate.getValue().future.isDone()) {
+                    continue;
+                }
+                if (candidate.getValue().isExpired(now)) {
+                    victim = candidate;
+                    break;
+                }
+                if (victim == null || candidate.getValue().expiresAt < victim.getValue().expiresAt) {
+                    victim = candidate;
+                }
+            }
+
+            if (victim != null) {
+                if (entries.remove(victim.getKey(), victim.getValue())) {
+                    evictions.increment();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Halves the map's table at random until about a sample's worth of entries is left, so every entry is as likely
+     * to be sampled without iterating up to a random offset.
+     *
+     * @return the entries of a random region of the map
+     */
+    private Spliterator<Map.Entry<String, Entry>> randomRegion() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        Spliterator<Map.Entry<String, Entry>> region = entries.entrySet().spliterator();
+        for (long remaining = entries.size(); remaining > EVICTION_SAMPLE_SIZE; remaining >>>= 1) {
+            final Spliterator<Map.Entry<String, Entry>> prefix = region.trySplit();
+            if (prefix == null) {
+                break;
+            }
+            if (random.nextBoolean()) {
+                region = prefix;
+            }
+        }
+        return region;
+    }
+
+    /**
+     * A loaded, or still loading, user with its expiry.
+     */
+    private static final class Entry {
+
+        private final CompletableFuture<UserDetails> future = new CompletableFuture<>();
+        private final long expiresAt;
+
+        private Entry(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        /**
+         * @return the loaded user, once loaded
+         * @throws RuntimeException what the load failed with
+         * @throws Error           what the load failed with
+         */
+        private UserDetails await() {
+            try {
+                return future.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                if (ex.getCause() instanceof Error) {
+                    throw (Error) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+    }
+}
@@ -1,36 +1,100 @@
 package com.rslakra.componentbasedsecurity.config;
 
+import com.rslakra.componentbasedsecurity.config.TokenFailures.Reason;
+import com.rslakra.componentbasedsecurity.service.TokenVersions;
+import com.rslakra.componentbasedsecurity.service.UserAccount;
 import com.rslakra.componentbasedsecurity.service.UserDetailsServiceImpl;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 @Component
 public class JwtRequestFilter extends OncePerRequestFilter {
 
-    private static final Logger logger = LoggerFactory.getLogger(JwtRequestFilter.class);
+    private static final String BEARER_PREFIX = JwtUtils.BEARER + " ";
 
     private final JwtUtils jwtTokenUtil;
     private final UserDetailsServiceImpl userDetailsService;
+    private final TokenContext tokenContext;
+    private final TokenFailures tokenFailures;
+    private final TokenVersions tokenVersions;
+    private final WebAuthenticationDetailsSource authenticationDetailsSource = new WebAuthenticationDetailsSource();
+    // the permitted routes, split into exact paths and the prefixes of the '/**' ones
+    private final Set<String> permittedPaths = new HashSet<>();
+    private final List<String> permittedPrefixes = new ArrayList<>();
+    // built by OncePerRequestFilter on every request otherwise
+    private volatile String alreadyFilteredAttributeName;
 
-    public JwtRequestFilter(JwtUtils jwtTokenUtil, UserDetailsServiceImpl userDetailsService) {
+    /**
+     * @param jwtTokenUtil       the JWT utils
+     * @param userDetailsService the user details service
+     * @param tokenContext       the request-scoped holder of the verified token
+     * @param tokenFailures      the counters of the requests that couldn't be authenticated
+     * @param tokenVersions      the token versions of the users, for revoked tokens
+     */
+    public JwtRequestFilter(JwtUtils jwtTokenUtil, UserDetailsServiceImpl userDetailsService,
+                            TokenContext tokenContext, TokenFailures tokenFailures, TokenVersions tokenVersions) {
         this.jwtTokenUtil = jwtTokenUtil;
         this.userDetailsService = userDetailsService;
+        this.tokenContext = tokenContext;
+        this.tokenFailures = tokenFailures;
+        this.tokenVersions = tokenVersions;
+        for (String path : WebSecurityConfig.PERMITTED_PATHS) {
+            if (path.endsWith("/**")) {
+                permittedPrefixes.add(path.substring(0, path.length() - 3));
+            } else {
+                permittedPaths.add(path);
+            }
+        }
+    }
+
+    /**
+     * @return the name of the attribute marking a request as filtered, built once
+     */
+    @Override
+    protected String getAlreadyFilteredAttributeName() {
+        String attributeName = alreadyFilteredAttributeName;
+        if (attributeName == null) {
+            attributeName = super.getAlreadyFilteredAttributeName();
+            alreadyFilteredAttributeName = attributeName;
+        }
+        return attributeName;
+    }
+
+    /**
+     * Skips the routes permitted without a token (see {@link WebSecurityConfig#PERMITTED_PATHS}) before the token is
+     * even looked at; matching the path allocates nothing.
+     *
+     * @param request the HTTP request
+     * @return true if the request is on a permitted route
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        final String pathInfo = request.getPathInfo();
+        return isPermitted(pathInfo == null ? request.getServletPath() : request.getServletPath() + pathInfo);
     }
 
     /**
+     * Verifies the token once and keeps it in the {@link TokenContext}, for the authentication below and the rest of
+     * the request to read the claims from. Requests that can't be authenticated are counted in {@link TokenFailures}
+     * rather than logged one by one.
+     *
      * @param request     the HTTP request
      * @param response    the HTTP response
      * @param chain       the filter chain
@@ -40,48 +104,102 @@ public class JwtRequestFilter extends OncePerRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
         throws ServletException, IOException {
-        logger.debug("+doFilterInternal({}, {}, {})", request, response, chain);
         final String requestToken = request.getHeader(JwtUtils.AUTHORIZATION);
-        String userName = null;
-        String jwtToken = null;
+        if (requestToken == null) {
+            // anonymous; the authorization rules decide what it may access
+            tokenFailures.record(Reason.MISSING, null);
+        } else if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            authenticate(request, requestToken);
+        }
+
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * Verifies the token and, if it belongs to a known user, sets the authentication of the request.
+     *
+     * @param request      the HTTP request
+     * @param requestToken the Authorization header
+     */
+    private void authenticate(final HttpServletRequest request, final String requestToken) {
         /**
          * JWT Token is in the form "Bearer token". Remove Bearer word and get only the Token
          */
-        if (requestToken != null && requestToken.startsWith(JwtUtils.BEARER)) {
-            jwtToken = requestToken.substring(7);
-            try {
-                userName = jwtTokenUtil.getUserNameFromToken(jwtToken);
-            } catch (IllegalArgumentException ex) {
-                logger.error("Unable to get JWT Token", ex);
-            } catch (ExpiredJwtException ex) {
-                logger.error("JWT Token has expired", ex);
-            }
-        } else {
-            logger.warn("JWT Token does not begin with Bearer String");
+        if (!requestToken.regionMatches(0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            tokenFailures.record(Reason.NOT_BEARER, null);
+            return;
+        }
+        if (requestToken.length() == BEARER_PREFIX.length()) {
+            tokenFailures.record(Reason.EMPTY, null);
+            return;
         }
 
-        // Once we get the token validate it.
-        if (userName != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            final UserDetails userDetails = this.userDetailsService.loadUserByUsername(userName);
-            /*
-             * if token is valid configure Spring Security to manually set authentication
-             */
-            if (jwtTokenUtil.isValidToken(jwtToken, userDetails)) {
-                UsernamePasswordAuthenticationToken authToken =
-                    new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-                authToken
-                    .setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                /**
-                 * After setting the Authentication in the context,
-                 * we specify that the current user is authenticated.
-                 * So it passes the Spring Security Configurations successfully.
-                 */
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-            }
+        final ValidatedToken validatedToken;
+        try {
+            validatedToken = jwtTokenUtil.parseToken(requestToken.substring(BEARER_PREFIX.length()));
+        } catch (ExpiredJwtException ex) {
+            tokenFailures.record(Reason.EXPIRED, ex);
+            return;
+        } catch (JwtException | IllegalArgumentException ex) {
+            tokenFailures.record(Reason.INVALID, ex);
+            return;
+        }
+        if (validatedToken.getUserName() == null) {
+            tokenFailures.record(Reason.INVALID, null);
+            return;
         }
 
-        chain.doFilter(request, response);
-        logger.debug("-doFilterInternal()");
+        final UserDetails userDetails;
+        try {
+            userDetails = userDetailsService.loadUserByUsername(validatedToken.getUserName());
+        } catch (UsernameNotFoundException ex) {
+            tokenFailures.record(Reason.UNKNOWN_USER, ex);
+            return;
+        }
+        // one lookup in memory; revoked on logout or password change
+        if (!tokenVersions.isCurrent(((UserAccount) userDetails).getId(), validatedToken.getClaims())) {
+            tokenFailures.record(Reason.REVOKED, null);
+            return;
+        }
+
+        /*
+         * if token is valid configure Spring Security to manually set authentication
+         */
+        if (!jwtTokenUtil.isValidToken(validatedToken, userDetails)) {
+            tokenFailures.record(Reason.USER_MISMATCH, null);
+            return;
+        }
+
+        final UsernamePasswordAuthenticationToken authToken =
+            new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+        authToken.setDetails(authenticationDetailsSource.buildDetails(request));
+        /**
+         * After setting the Authentication in the context,
+         * we specify that the current user is authenticated.
+         * So it passes the Spring Security Configurations successfully.
+         */
+        tokenContext.setToken(validatedToken);
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+    }
+
+    /**
+     * @param path the path of the request
+     * @return true if the path is a permitted route
+     */
+    private boolean isPermitted(final String path) {
+        return permittedPaths.contains(path) || isPermittedPrefix(path);
     }
 
+    /**
+     * @param path the path of the request
+     * @return true if the path is below a permitted <code>/**</code> route
+     */
+    private boolean isPermittedPrefix(final String path) {
+        for (String prefix : permittedPrefixes) {
+            if (path.startsWith(prefix) && (path.length() == prefix.length() || path.charAt(prefix.length()) == '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -1,6 +1,7 @@
 package com.rslakra.componentbasedsecurity.config;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
@@ -21,19 +22,40 @@ public class JwtUtils implements Serializable {
     public static final long JWT_TOKEN_VALIDITY = 5 * 60 * 60;
     public static final String AUTHORIZATION = "Authorization";
     public static final String BEARER = "Bearer";
+    // the claims a token is revoked by, see TokenVersions
+    public static final String USER_ID = "uid";
+    public static final String TOKEN_VERSION = "ver";
 
-    @Value("${app.jwtSecret}")
-    private String secret;
+    private final Long jwtExpirationInMillis;
+    // short, as expired access tokens are renewed with a refresh token
+    private final long accessTokenValidityMillis;
 
-    @Value("${app.jwtExpirationInMillis}")
-    private Long jwtExpirationInMillis;
+    // derived once from the secret; the parser is immutable and thread-safe
+    private final SecretKey signingKey;
+    private final transient JwtParser jwtParser;
+
+    /**
+     * @param secret                    the secret
+     * @param jwtExpirationInMillis     the expiration in millis
+     * @param accessTokenValidityMillis the time an access token stays valid
+     */
+    public JwtUtils(@Value("${app.jwtSecret}") final String secret,
+                    @Value("${app.jwtExpirationInMillis}") final Long jwtExpirationInMillis,
+                    @Value("${app.accessTokenValidityMillis:" + JWT_TOKEN_VALIDITY * 1000 + "}")
+                    final long accessTokenValidityMillis) {
+        this.jwtExpirationInMillis = jwtExpirationInMillis;
+        this.accessTokenValidityMillis = accessTokenValidityMillis;
+        this.signingKey = buildSigningKey(secret);
+        this.jwtParser = Jwts.parser().verifyWith(signingKey).build();
+    }
 
     /**
      * Returns the secret key for signing JWT tokens.
      *
+     * @param secret the secret
      * @return SecretKey
      */
-    private SecretKey getSigningKey() {
+    private static SecretKey buildSigningKey(final String secret) {
         // Ensure the secret is at least 256 bits (32 bytes) for HS256
         byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
         if (keyBytes.length < 32) {
@@ -65,8 +87,8 @@ public class JwtUtils implements Serializable {
             .claims(claims)
             .subject(subject)
             .issuedAt(new Date(System.currentTimeMillis()))
-            .expiration(new Date(System.currentTimeMillis() + JWT_TOKEN_VALIDITY * 1000))
-            .signWith(getSigningKey())
+            .expiration(new Date(System.currentTimeMillis() + accessTokenValidityMillis))
+            .signWith(signingKey)
             .compact();
     }
 
@@ -81,6 +103,21 @@ public class JwtUtils implements Serializable {
         return generateToken(claims, userDetails.getUsername());
     }
 
+    /**
+     * Generates a revocable token for user.
+     *
+     * @param userDetails  the user details
+     * @param userId       the user id
+     * @param tokenVersion the current token version of the user
+     * @return the JWT token
+     */
+    public String generateToken(final UserDetails userDetails, final long userId, final int tokenVersion) {
+        final Map<String, Object> claims = new HashMap<>();
+        claims.put(USER_ID, userId);
+        claims.put(TOKEN_VERSION, tokenVersion);
+        return generateToken(claims, userDetails.getUsername());
+    }
+
     /**
      * Returns the Claims extracted from the token.
      * <p>
@@ -90,11 +127,19 @@ public class JwtUtils implements Serializable {
      * @return the claims
      */
     public Claims extractAllClaimsFromToken(final String token) {
-        return Jwts.parser()
-            .verifyWith(getSigningKey())
-            .build()
-            .parseSignedClaims(token)
-            .getPayload();
+        return jwtParser.parseSignedClaims(token).getPayload();
+    }
+
+    /**
+     * Parses and verifies the token once, for the rest of the request to read the claims from.
+     *
+     * @param token the JWT token
+     * @return the verified token
+     * @throws io.jsonwebtoken.JwtException if the token is invalid, expired or its signature doesn't match
+     * @throws IllegalArgumentException     if the token is empty
+     */
+    public ValidatedToken parseToken(final String token) {
+        return new ValidatedToken(token, extractAllClaimsFromToken(token));
     }
 
     /**
@@ -138,18 +183,17 @@ public class JwtUtils implements Serializable {
      * @return true if valid, false otherwise
      */
     public boolean isValidToken(final String token, final UserDetails userDetails) {
-        final String username = getUserNameFromToken(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return isValidToken(parseToken(token), userDetails);
     }
 
     /**
-     * Returns true if the token is already expired otherwise false.
+     * Returns true if the already verified token belongs to the user and isn't expired, otherwise false.
      *
-     * @param token the JWT token
-     * @return true if expired, false otherwise
+     * @param token       the verified token
+     * @param userDetails the user details
+     * @return true if valid, false otherwise
      */
-    private boolean isTokenExpired(String token) {
-        final Date expiration = getExpirationDateFromToken(token);
-        return expiration.before(new Date());
+    public boolean isValidToken(final ValidatedToken token, final UserDetails userDetails) {
+        return (userDetails.getUsername().equals(token.getUserName()) && !token.isExpired());
     }
 }
@@ -7,4 +7,5 @@ package com.rslakra.componentbasedsecurity.config;
 public interface Keys {
 
     String ACCESS_TOKEN = "accessToken";
+    String REFRESH_TOKEN = "refreshToken";
 }
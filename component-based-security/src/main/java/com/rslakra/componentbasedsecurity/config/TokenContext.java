@@ -0,0 +1,54 @@
+package com.rslakra.componentbasedsecurity.config;
+
+import io.jsonwebtoken.Claims;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.annotation.RequestScope;
+
+/**
+ * Holds the token of the current request, once {@link JwtRequestFilter} has verified it.
+ * <p>
+ * Controllers and services read the claims from here, so a token is parsed only once per request.
+ *
+ * @author Rohtash Lakra
+ */
+@Component
+@RequestScope
+public class TokenContext {
+
+    private ValidatedToken token;
+
+    /**
+     * @return the verified token of the request, or null if the request has none
+     */
+    public ValidatedToken getToken() {
+        return token;
+    }
+
+    /**
+     * @param token the verified token of the request
+     */
+    public void setToken(final ValidatedToken token) {
+        this.token = token;
+    }
+
+    /**
+     * @return true if the request carries a verified token
+     */
+    public boolean hasToken() {
+        return (token != null);
+    }
+
+    /**
+     * @return the claims of the token, or null if the request has none
+     */
+    public Claims getClaims() {
+        return (token == null ? null : token.getClaims());
+    }
+
+    /**
+     * @return the username of the token, or null if the request has none
+     */
+    public String getUserName() {
+        return (token == null ? null : token.getUserName());
+    }
+}
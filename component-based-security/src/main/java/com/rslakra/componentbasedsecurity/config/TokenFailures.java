@@ -0,0 +1,111 @@
+package com.rslakra.componentbasedsecurity.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the requests {@link JwtRequestFilter} could not authenticate, by reason, and logs a sample of them.
+ * <p>
+ * Under a crawler or credential-stuffing load, a log line (let alone a stack trace) per rejected token costs more than
+ * the rejection itself. Each reason is therefore logged at most once per <code>logIntervalMillis</code>, with the
+ * message of the failure and the count so far; every failure is still counted.
+ *
+ * @author Rohtash Lakra
+ */
+@Component
+public class TokenFailures {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenFailures.class);
+
+    public static final long DEFAULT_LOG_INTERVAL_MILLIS = 10_000L;
+
+    /**
+     * Why a request wasn't authenticated.
+     */
+    public enum Reason {
+        // no Authorization header; counted, never logged
+        MISSING(false),
+        NOT_BEARER(true),
+        EMPTY(true),
+        EXPIRED(true),
+        INVALID(true),
+        REVOKED(true),
+        UNKNOWN_USER(true),
+        USER_MISMATCH(true);
+
+        private final boolean logged;
+
+        Reason(boolean logged) {
+            this.logged = logged;
+        }
+    }
+
+    private static final Reason[] REASONS = Reason.values();
+
+    private final LongAdder[] counts = new LongAdder[REASONS.length];
+    // System.nanoTime() after which each reason may be logged again
+    private final AtomicLong[] nextLogAt = new AtomicLong[REASONS.length];
+    private final long logIntervalNanos;
+
+    /**
+     * @param logIntervalMillis the minimum time between two log lines of a reason
+     */
+    public TokenFailures(@Value("${app.tokenFailures.logIntervalMillis:" + DEFAULT_LOG_INTERVAL_MILLIS + "}")
+                         final long logIntervalMillis) {
+        this.logIntervalNanos = TimeUnit.MILLISECONDS.toNanos(logIntervalMillis);
+        final long now = System.nanoTime();
+        for (int i = 0; i < REASONS.length; i++) {
+            counts[i] = new LongAdder();
+            nextLogAt[i] = new AtomicLong(now);
+        }
+    }
+
+    /**
+     * Counts the failure, and logs it if its reason wasn't logged during the last interval.
+     *
+     * @param reason the reason
+     * @param cause  the failure, for the message of the log line; may be null
+     */
+    public void record(final Reason reason, final Throwable cause) {
+        final int index = reason.ordinal();
+        counts[index].increment();
+        if (!reason.logged || !LOGGER.isWarnEnabled()) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        final AtomicLong next = nextLogAt[index];
+        final long due = next.get();
+        if (now - due >= 0 && next.compareAndSet(due, now + logIntervalNanos)) {
+            LOGGER.warn("JWT authentication failed: {} ({} so far){}", reason, counts[index].sum(),
+                        (cause == null ? "" : ", e.g. " + cause.getMessage()));
+        }
+    }
+
+    /**
+     * @param reason the reason
+     * @return the number of failures of the reason so far
+     */
+    public long count(final Reason reason) {
+        return counts[reason.ordinal()].sum();
+    }
+
+    /**
+     * @return the number of failures so far, by reason
+     */
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        for (Reason reason : REASONS) {
+            stats.put(reason.name(), counts[reason.ordinal()].sum());
+        }
+        return stats;
+    }
+}
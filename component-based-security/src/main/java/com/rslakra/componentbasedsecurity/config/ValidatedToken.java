@@ -0,0 +1,64 @@
+package com.rslakra.componentbasedsecurity.config;
+
+import io.jsonwebtoken.Claims;
+
+import java.util.Date;
+
+/**
+ * A JWT token whose signature was verified, with the claims parsed out of it.
+ * <p>
+ * Built once per request by {@link JwtUtils#parseToken(String)}, so the checks and lookups that follow read the
+ * claims instead of parsing and verifying the token again.
+ *
+ * @author Rohtash Lakra
+ */
+public final class ValidatedToken {
+
+    private final String token;
+    private final Claims claims;
+
+    /**
+     * @param token  the JWT token
+     * @param claims the verified claims of the token
+     */
+    ValidatedToken(final String token, final Claims claims) {
+        this.token = token;
+        this.claims = claims;
+    }
+
+    /**
+     * @return the JWT token
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return the verified claims
+     */
+    public Claims getClaims() {
+        return claims;
+    }
+
+    /**
+     * @return the username (the subject of the token)
+     */
+    public String getUserName() {
+        return claims.getSubject();
+    }
+
+    /**
+     * @return the expiration date
+     */
+    public Date getExpiration() {
+        return claims.getExpiration();
+    }
+
+    /**
+     * @return true if the token is already expired otherwise false
+     */
+    public boolean isExpired() {
+        final Date expiration = getExpiration();
+        return (expiration != null && expiration.before(new Date()));
+    }
+}
@@ -1,5 +1,6 @@
 package com.rslakra.componentbasedsecurity.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -19,6 +20,9 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 @EnableMethodSecurity(prePostEnabled = true)
 public class WebSecurityConfig {
 
+    // the routes open without a token; JwtRequestFilter doesn't look at their requests at all
+    public static final String[] PERMITTED_PATHS = {"/authenticate", "/refresh", "/register", "/h2/**"};
+
     private final JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint;
     private final UserDetailsService userDetailsService;
     private final JwtRequestFilter jwtRequestFilter;
@@ -65,10 +69,14 @@ public class WebSecurityConfig {
         httpSecurity
             // Disable CSRF for stateless API
             .csrf(csrf -> csrf.disable())
+            // POST /logout revokes the tokens of the user, see JwtAuthenticationController
+            .logout(logout -> logout.disable())
             // Configure authorization
             .authorizeHttpRequests(auth -> auth
                 // Allow these endpoints without authentication
-                .requestMatchers("/authenticate", "/register", "/h2/**").permitAll()
+                .requestMatchers(PERMITTED_PATHS).permitAll()
+                // the async result of a request authorized already; its token may have been revoked meanwhile
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 // All other requests need to be authenticated
                 .anyRequest().authenticated()
             )
@@ -1,11 +1,16 @@
 package com.rslakra.componentbasedsecurity.controller;
 
+import com.rslakra.componentbasedsecurity.cache.UserDetailsCache;
+import com.rslakra.componentbasedsecurity.config.TokenContext;
+import com.rslakra.componentbasedsecurity.config.TokenFailures;
 import com.rslakra.componentbasedsecurity.payload.Response;
+import com.rslakra.componentbasedsecurity.service.PasswordHashingExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -13,6 +18,25 @@ public class HomeController {
 
     private static Logger LOGGER = LoggerFactory.getLogger(HomeController.class);
 
+    private final TokenContext tokenContext;
+    private final UserDetailsCache userDetailsCache;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final TokenFailures tokenFailures;
+
+    /**
+     * @param tokenContext            the verified token of the request
+     * @param userDetailsCache        the cache of loaded users
+     * @param passwordHashingExecutor the executor of login and registration hashing
+     * @param tokenFailures           the counters of the requests that couldn't be authenticated
+     */
+    public HomeController(TokenContext tokenContext, UserDetailsCache userDetailsCache,
+                          PasswordHashingExecutor passwordHashingExecutor, TokenFailures tokenFailures) {
+        this.tokenContext = tokenContext;
+        this.userDetailsCache = userDetailsCache;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.tokenFailures = tokenFailures;
+    }
+
     /**
      * @return
      */
@@ -20,7 +44,7 @@ public class HomeController {
     public ResponseEntity<?> doIndex() {
         LOGGER.debug("+doIndex()");
         final Response response = new Response();
-        final String userName = SecurityContextHolder.getContext().getAuthentication().getName();
+        final String userName = getUserName();
         response.setValue("message", String.format("Welcome, %s.", userName));
         LOGGER.debug("-doIndex(), response:" + response);
         return ResponseEntity.ok(response);
@@ -33,10 +57,43 @@ public class HomeController {
     public ResponseEntity<?> doHome() {
         LOGGER.debug("+doHome()");
         final Response response = new Response();
-        final String userName = SecurityContextHolder.getContext().getAuthentication().getName();
+        final String userName = getUserName();
         response.setValue("message", String.format("Welcome, %s.", userName));
         LOGGER.debug("-doHome(), response:" + response);
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * @return the hit/miss counters, hit rate and size of the user cache
+     */
+    @RequestMapping(value = "/user-cache-stats", method = RequestMethod.GET)
+    public ResponseEntity<?> doUserCacheStats() {
+        return ResponseEntity.ok(userDetailsCache.getStats());
+    }
+
+    /**
+     * @return the queue depth, task counters, and wait and hash times of the password-hashing executor
+     */
+    @RequestMapping(value = "/password-hashing-stats", method = RequestMethod.GET)
+    public ResponseEntity<?> doPasswordHashingStats() {
+        return ResponseEntity.ok(passwordHashingExecutor.getStats());
+    }
+
+    /**
+     * @return the number of requests the JWT filter couldn't authenticate, by reason
+     */
+    @RequestMapping(value = "/token-failure-stats", method = RequestMethod.GET)
+    public ResponseEntity<?> doTokenFailureStats() {
+        return ResponseEntity.ok(tokenFailures.getStats());
+    }
+
+    /**
+     * Returns the username of the request, read from the token verified by the filter.
+     *
+     * @return the username
+     */
+    private String getUserName() {
+        return (tokenContext.hasToken() ? tokenContext.getUserName()
+                                        : SecurityContextHolder.getContext().getAuthentication().getName());
+    }
 }
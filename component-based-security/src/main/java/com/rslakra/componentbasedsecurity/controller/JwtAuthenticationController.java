@@ -2,26 +2,43 @@ package com.rslakra.componentbasedsecurity.controller;
 
 import com.rslakra.componentbasedsecurity.config.JwtUtils;
 import com.rslakra.componentbasedsecurity.config.Keys;
+import com.rslakra.componentbasedsecurity.payload.PasswordChangeRequest;
+import com.rslakra.componentbasedsecurity.payload.RefreshRequest;
 import com.rslakra.componentbasedsecurity.payload.Request;
 import com.rslakra.componentbasedsecurity.payload.Response;
 import com.rslakra.componentbasedsecurity.payload.dto.UserDTO;
+import com.rslakra.componentbasedsecurity.persistence.model.User;
+import com.rslakra.componentbasedsecurity.service.PasswordHashingExecutor;
+import com.rslakra.componentbasedsecurity.service.PasswordHashingRejectedException;
+import com.rslakra.componentbasedsecurity.service.RefreshTokenService;
+import com.rslakra.componentbasedsecurity.service.TokenVersions;
+import com.rslakra.componentbasedsecurity.service.UserAccount;
 import com.rslakra.componentbasedsecurity.service.UserDetailsServiceImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @RestController
 @CrossOrigin
 public class JwtAuthenticationController {
@@ -37,37 +54,161 @@ public class JwtAuthenticationController {
     @Autowired
     private UserDetailsServiceImpl userDetailsService;
 
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private TokenVersions tokenVersions;
+
     /**
      * Register user.
+     * <p>
+     * The password is hashed on the password-hashing executor; the request thread is released meanwhile.
      *
      * @param user
      * @return
-     * @throws Exception
      */
     @RequestMapping(value = "/register", method = RequestMethod.POST)
-    public ResponseEntity<?> doRegistration(@RequestBody UserDTO user) throws Exception {
+    public CompletableFuture<ResponseEntity<User>> doRegistration(@RequestBody UserDTO user) {
         LOGGER.debug("doRegistration({})", user);
-        return ResponseEntity.ok(userDetailsService.save(user));
+        return passwordHashingExecutor.submit(() -> ResponseEntity.ok(userDetailsService.save(user)));
     }
 
     /**
      * Authenticates the request.
+     * <p>
+     * The password is matched on the password-hashing executor; the request thread is released meanwhile.
      *
      * @param request
      * @return
-     * @throws Exception
      */
     @RequestMapping(value = "/authenticate", method = RequestMethod.POST)
-    public ResponseEntity<?> doAuthentication(@RequestBody Request request) throws Exception {
+    public CompletableFuture<ResponseEntity<Response>> doAuthentication(@RequestBody Request request) {
         LOGGER.debug("doAuthentication(" + request + ")");
-        authenticate(request.getUserName(), request.getPassword());
-        final UserDetails userDetails = userDetailsService.loadUserByUsername(request.getUserName());
-        final String accessToken = jwtUtils.generateToken(userDetails);
+        return passwordHashingExecutor.submit(() -> {
+            try {
+                authenticate(request.getUserName(), request.getPassword());
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+            final UserDetails userDetails = userDetailsService.loadUserByUsername(request.getUserName());
+            return ResponseEntity.ok(newTokens(userDetails));
+        });
+    }
+
+    /**
+     * Renews the access token with a refresh token, without a password check. The refresh token is rotated: the one
+     * sent can't be used again, and a new one is returned with the access token.
+     *
+     * @param request
+     * @return
+     */
+    @RequestMapping(value = "/refresh", method = RequestMethod.POST)
+    public ResponseEntity<Response> doRefresh(@RequestBody RefreshRequest request) {
+        LOGGER.debug("+doRefresh()");
+        final RefreshTokenService.Grant grant = refreshTokenService.redeem(request.getRefreshToken());
+        final String userName = (grant == null ? null : grant.getUserName());
+        UserDetails userDetails = null;
+        if (userName != null) {
+            try {
+                userDetails = userDetailsService.loadUserByUsername(userName);
+            } catch (UsernameNotFoundException ex) {
+                LOGGER.warn("doRefresh(), user no longer exists:{}", userName);
+            }
+        }
+        // issued to a deleted user whose name was taken again, or before a logout or password change
+        if (userDetails == null || !userDetails.isEnabled()
+            || grant.getUserId() != ((UserAccount) userDetails).getId()
+            || !tokenVersions.isCurrent(((UserAccount) userDetails).getId(), grant.getTokenVersion())) {
+            final Response response = new Response();
+            response.setValue("message", "INVALID_REFRESH_TOKEN");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+        }
+
+        LOGGER.debug("-doRefresh(), userName:{}", userName);
+        return ResponseEntity.ok(newTokens(userDetails));
+    }
+
+    /**
+     * Revokes all the access and refresh tokens of the user issued so far, on every device.
+     *
+     * @return
+     */
+    @RequestMapping(value = "/logout", method = RequestMethod.POST)
+    public ResponseEntity<Response> doLogout() {
+        final UserAccount account = currentAccount();
+        final int tokenVersion = tokenVersions.revoke(account.getId());
+        LOGGER.debug("doLogout(), userName:{}, tokenVersion:{}", account.getUsername(), tokenVersion);
         final Response response = new Response();
-        response.setValue(Keys.ACCESS_TOKEN, accessToken);
+        response.setValue("message", "LOGGED_OUT");
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Changes the password of the user, which revokes all the tokens issued so far, and returns new ones.
+     * <p>
+     * The passwords are matched and hashed on the password-hashing executor; the request thread is released meanwhile.
+     *
+     * @param request
+     * @return
+     */
+    @RequestMapping(value = "/change-password", method = RequestMethod.POST)
+    public CompletableFuture<ResponseEntity<Response>> doChangePassword(@RequestBody PasswordChangeRequest request) {
+        // the security context is bound to the request thread
+        final String userName = currentAccount().getUsername();
+        LOGGER.debug("doChangePassword(), userName:{}", userName);
+        return passwordHashingExecutor.submit(() -> {
+            try {
+                authenticate(userName, request.getPassword());
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+            userDetailsService.changePassword(userName, request.getNewPassword());
+            return ResponseEntity.ok(newTokens(userDetailsService.loadUserByUsername(userName)));
+        });
+    }
+
+    /**
+     * @return the user authenticated by the JwtRequestFilter
+     */
+    private static UserAccount currentAccount() {
+        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return (UserAccount) authentication.getPrincipal();
+    }
+
+    /**
+     * @param userDetails the authenticated user
+     * @return a new access token and refresh token, of the current token version of the user
+     */
+    private Response newTokens(final UserDetails userDetails) {
+        final UserAccount account = (UserAccount) userDetails;
+        final int tokenVersion = tokenVersions.current(account.getId());
+        final Response response = new Response();
+        response.setValue(Keys.ACCESS_TOKEN, jwtUtils.generateToken(account, account.getId(), tokenVersion));
+        response.setValue(Keys.REFRESH_TOKEN, refreshTokenService.issue(account.getId(), account.getUsername(),
+                                                                        tokenVersion));
+        return response;
+    }
+
+    /**
+     * Fails fast when the password-hashing queue is full (429) or the executor is shut down (503).
+     *
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(PasswordHashingRejectedException.class)
+    public ResponseEntity<Response> onPasswordHashingRejected(PasswordHashingRejectedException ex) {
+        LOGGER.warn("onPasswordHashingRejected({})", ex.getMessage());
+        final Response response = new Response();
+        response.setValue("message", ex.getMessage());
+        return ResponseEntity.status(ex.isShutdown() ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, "1")
+            .body(response);
+    }
+
     /**
      * Authenticates the user.
      *
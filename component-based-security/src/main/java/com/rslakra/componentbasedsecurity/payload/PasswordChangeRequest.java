@@ -0,0 +1,38 @@
+package com.rslakra.componentbasedsecurity.payload;
+
+import java.io.Serializable;
+
+public class PasswordChangeRequest implements Serializable {
+
+    private static final long serialVersionUID = -4615802954319287466L;
+    private String password;
+    private String newPassword;
+
+    /**
+     * need default constructor for JSON Parsing
+     */
+    public PasswordChangeRequest() {
+    }
+
+    public PasswordChangeRequest(final String password, final String newPassword) {
+        this.setPassword(password);
+        this.setNewPassword(newPassword);
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public String getNewPassword() {
+        return newPassword;
+    }
+
+    public void setNewPassword(String newPassword) {
+        this.newPassword = newPassword;
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.rslakra.componentbasedsecurity.payload;
+
+import java.io.Serializable;
+
+public class RefreshRequest implements Serializable {
+
+    private static final long serialVersionUID = 3159874022180735174L;
+    private String refreshToken;
+
+    /**
+     * need default constructor for JSON Parsing
+     */
+    public RefreshRequest() {
+    }
+
+    public RefreshRequest(final String refreshToken) {
+        this.setRefreshToken(refreshToken);
+    }
+
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+
+    public void setRefreshToken(String refreshToken) {
+        this.refreshToken = refreshToken;
+    }
+
+}
@@ -2,11 +2,37 @@ package com.rslakra.componentbasedsecurity.persistence.dao;
 
 import com.rslakra.componentbasedsecurity.persistence.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
     User findByUserName(String userName);
 
+    /**
+     * @return the id and token version of the users whose tokens were ever revoked
+     */
+    @Query("select u.id, u.tokenVersion from User u where u.tokenVersion > 0")
+    List<Object[]> findRevokedTokenVersions();
+
+    /**
+     * @param id the user id
+     * @return the number of users updated
+     */
+    @Modifying
+    @Query("update User u set u.tokenVersion = u.tokenVersion + 1 where u.id = :id")
+    int incrementTokenVersion(@Param("id") Long id);
+
+    /**
+     * @param id the user id
+     * @return the token version of the user
+     */
+    @Query("select u.tokenVersion from User u where u.id = :id")
+    Integer findTokenVersionById(@Param("id") Long id);
+
 }
@@ -22,6 +22,10 @@ public class User {
 //    @JsonIgnore
     private String password;
 
+    // bumped to revoke every token issued to the user so far
+    @Column(name = "token_version", nullable = false, columnDefinition = "integer default 0")
+    private int tokenVersion;
+
     public Long getId() {
         return id;
     }
@@ -46,6 +50,14 @@ public class User {
         this.password = password;
     }
 
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
+    public void setTokenVersion(int tokenVersion) {
+        this.tokenVersion = tokenVersion;
+    }
+
     /**
      * Returns the subject for the user.
      *
@@ -1,5 +1,6 @@
 package com.rslakra.componentbasedsecurity.service;
 
+import com.rslakra.componentbasedsecurity.cache.UserDetailsCache;
 import com.rslakra.componentbasedsecurity.payload.dto.UserDTO;
 import com.rslakra.componentbasedsecurity.persistence.dao.UserRepository;
 import com.rslakra.componentbasedsecurity.persistence.model.User;
@@ -25,6 +26,9 @@ public class JwtUserService implements UserDetailsService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
     /**
      * @param username
      * @return
@@ -32,13 +36,23 @@ public class JwtUserService implements UserDetailsService {
      */
     @Override
     public UserDetails loadUserByUsername(final String username) throws UsernameNotFoundException {
-        LOGGER.debug("loadUserByUsername(" + username + ")");
+        LOGGER.debug("loadUserByUsername({})", username);
+        return userDetailsCache.get(username, this::loadUser);
+    }
+
+    /**
+     * Loads the user from the repository, on a cache miss.
+     *
+     * @param username
+     * @return
+     * @throws UsernameNotFoundException
+     */
+    private UserDetails loadUser(final String username) throws UsernameNotFoundException {
         final User user = userRepository.findByUserName(username);
         if (user == null) {
             throw new UsernameNotFoundException("User not found with username: " + username);
         }
-        return new org.springframework.security.core.userdetails.User(user.getUserName(), user.getPassword(),
-                                                                      new ArrayList<>());
+        return new UserAccount(user.getId(), user.getUserName(), user.getPassword(), new ArrayList<>());
     }
 
     /**
@@ -52,6 +66,8 @@ public class JwtUserService implements UserDetailsService {
         User newUser = new User();
         newUser.setUserName(user.getUserName());
         newUser.setPassword(bcryptEncoder.encode(user.getPassword()));
-        return userRepository.save(newUser);
+        final User savedUser = userRepository.save(newUser);
+        userDetailsCache.invalidate(savedUser.getUserName());
+        return savedUser;
     }
 }
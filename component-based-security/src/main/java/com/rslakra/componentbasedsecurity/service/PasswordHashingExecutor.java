@@ -0,0 +1,136 @@
+package com.rslakra.componentbasedsecurity.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs password hashing and matching (BCrypt) on a fixed pool of threads with a bounded queue, off the servlet
+ * threads, so a burst of logins can't take every request thread away from cheap, token-authenticated calls.
+ * <p>
+ * When the queue is full a task is rejected right away with a {@link PasswordHashingRejectedException}, rather than
+ * queued without bound. The time tasks wait in the queue and the time they take to run are recorded.
+ *
+ * @author Rohtash Lakra
+ */
+@Component
+public class PasswordHashingExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PasswordHashingExecutor.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxHashNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param threads       the number of hashing threads, 0 for one per processor
+     * @param queueCapacity the number of tasks that may wait for a thread
+     */
+    public PasswordHashingExecutor(@Value("${app.passwordHashing.threads:0}") final int threads,
+                                   @Value("${app.passwordHashing.queueCapacity:" + DEFAULT_QUEUE_CAPACITY + "}")
+                                   final int queueCapacity) {
+        final int poolSize = (threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "password-hashing-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<>(queueCapacity), threadFactory,
+                                               new ThreadPoolExecutor.AbortPolicy());
+        LOGGER.debug("PasswordHashingExecutor(threads={}, queueCapacity={})", poolSize, queueCapacity);
+    }
+
+    /**
+     * Queues the task for a hashing thread.
+     *
+     * @param task the task hashing or matching a password
+     * @param <T>  the type of the result
+     * @return the result of the task, once run
+     * @throws PasswordHashingRejectedException if the queue is full or the executor is shut down
+     */
+    public <T> CompletableFuture<T> submit(final Supplier<T> task) {
+        final long submittedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                final long startedAt = System.nanoTime();
+                record(waitNanos, maxWaitNanos, startedAt - submittedAt);
+                try {
+                    return task.get();
+                } finally {
+                    record(hashNanos, maxHashNanos, System.nanoTime() - startedAt);
+                    completed.increment();
+                }
+            }, executor);
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            throw new PasswordHashingRejectedException("Too many password hashing requests", executor.isShutdown());
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the queue depth, task counters, and average and maximum wait and hash times in millis
+     */
+    public Map<String, Object> getStats() {
+        final long completedCount = completed.sum();
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolSize", executor.getMaximumPoolSize());
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("queueCapacity", getQueueDepth() + executor.getQueue().remainingCapacity());
+        stats.put("completed", completedCount);
+        stats.put("rejected", rejected.sum());
+        stats.put("avgWaitMillis", averageMillis(waitNanos, completedCount));
+        stats.put("maxWaitMillis", toMillis(maxWaitNanos.get()));
+        stats.put("avgHashMillis", averageMillis(hashNanos, completedCount));
+        stats.put("maxHashMillis", toMillis(maxHashNanos.get()));
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static void record(final LongAdder total, final LongAccumulator max, final long nanos) {
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    private static double averageMillis(final LongAdder totalNanos, final long count) {
+        return (count == 0 ? 0 : toMillis(totalNanos.sum()) / count);
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,30 @@
+package com.rslakra.componentbasedsecurity.service;
+
+/**
+ * Thrown when the password-hashing queue is full, or the executor is shut down, so a login or registration is
+ * refused instead of waiting for a hashing thread.
+ *
+ * @author Rohtash Lakra
+ */
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean shutdown;
+
+    /**
+     * @param message  the message
+     * @param shutdown true if the executor is shut down, false if its queue is full
+     */
+    public PasswordHashingRejectedException(final String message, final boolean shutdown) {
+        super(message);
+        this.shutdown = shutdown;
+    }
+
+    /**
+     * @return true if the executor is shut down, false if its queue is full
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+}
@@ -0,0 +1,284 @@
+package com.rslakra.componentbasedsecurity.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues opaque, single-use refresh tokens, so an expired access token is renewed with a hash lookup instead of a
+ * password check.
+ * <p>
+ * A refresh token is 32 random bytes, Base64URL-encoded; only its SHA-256 digest is kept, mapped to the user id,
+ * username, token version and expiry. Redeeming a token removes it, so every refresh rotates the token and a stolen one
+ * works at most once.
+ * <p>
+ * Expired tokens are swept without scanning the index: each digest is also kept in the bucket of its expiry time,
+ * and the sweeper only drains the buckets already past. Redeeming a token drops its digest from its bucket too, so the
+ * buckets only hold the tokens still outstanding.
+ *
+ * @author Rohtash Lakra
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    public static final long DEFAULT_VALIDITY_MILLIS = 14 * 24 * 60 * 60 * 1000L;
+    public static final long DEFAULT_SWEEP_INTERVAL_MILLIS = 60 * 1000L;
+    private static final int TOKEN_BYTES = 32;
+
+    private final ConcurrentHashMap<TokenDigest, Entry> entries = new ConcurrentHashMap<>();
+    // digests by expiry bucket (expiry / sweep interval), oldest first
+    private final ConcurrentSkipListMap<Long, Set<TokenDigest>> expiries = new ConcurrentSkipListMap<>();
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final long validityMillis;
+    private final long sweepIntervalMillis;
+    private final Clock clock;
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * @param validityMillis      the time a refresh token stays valid
+     * @param sweepIntervalMillis the time between sweeps, also the width of an expiry bucket; 0 to not schedule the
+     *                            sweeper (see {@link #sweep()})
+     * @param clock               the clock used to expire tokens
+     */
+    public RefreshTokenService(long validityMillis, long sweepIntervalMillis, Clock clock) {
+        if (validityMillis <= 0) {
+            throw new IllegalArgumentException("validityMillis must be positive");
+        }
+        this.validityMillis = validityMillis;
+        this.sweepIntervalMillis = (sweepIntervalMillis > 0 ? sweepIntervalMillis : DEFAULT_SWEEP_INTERVAL_MILLIS);
+        this.clock = Objects.requireNonNull(clock, "clock");
+        if (sweepIntervalMillis > 0) {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "refresh-token-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalMillis, sweepIntervalMillis,
+                                           TimeUnit.MILLISECONDS);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    /**
+     * @param validityMillis      the time a refresh token stays valid
+     * @param sweepIntervalMillis the time between sweeps
+     */
+    @Autowired
+    public RefreshTokenService(@Value("${app.refreshToken.validityMillis:" + DEFAULT_VALIDITY_MILLIS + "}")
+                               long validityMillis,
+                               @Value("${app.refreshToken.sweepIntervalMillis:" + DEFAULT_SWEEP_INTERVAL_MILLIS + "}")
+                               long sweepIntervalMillis) {
+        this(validityMillis, sweepIntervalMillis, Clock.systemUTC());
+    }
+
+    /**
+     * Issues a new refresh token for the user.
+     *
+     * @param userId       the id of the user, so a token outliving its user isn't redeemed by a new one of the same name
+     * @param userName     the username
+     * @param tokenVersion the current token version of the user, see {@link TokenVersions}
+     * @return the opaque refresh token
+     */
+    public String issue(final long userId, final String userName, final int tokenVersion) {
+        final byte[] bytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(bytes);
+        final String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        final long expiresAt = clock.millis() + validityMillis;
+        final long bucket = expiresAt / sweepIntervalMillis;
+        final TokenDigest digest = TokenDigest.of(refreshToken);
+        entries.put(digest, new Entry(userId, userName, tokenVersion, expiresAt, bucket));
+        expiries.computeIfAbsent(bucket, key -> ConcurrentHashMap.newKeySet()).add(digest);
+        return refreshToken;
+    }
+
+    /**
+     * Redeems the refresh token; it can't be redeemed again.
+     *
+     * @param refreshToken the opaque refresh token
+     * @return the user and token version the token was issued for, or null if the token is unknown, already used or
+     * expired
+     */
+    public Grant redeem(final String refreshToken) {
+        if (refreshToken == null || refreshToken.isEmpty()) {
+            return null;
+        }
+
+        final TokenDigest digest = TokenDigest.of(refreshToken);
+        final Entry entry = entries.remove(digest);
+        if (entry == null) {
+            return null;
+        }
+        // an emptied bucket is left for the sweeper, so a concurrent issue never adds to a dropped one
+        final Set<TokenDigest> bucket = expiries.get(entry.bucket);
+        if (bucket != null) {
+            bucket.remove(digest);
+        }
+        return (entry.isExpired(clock.millis()) ? null : entry);
+    }
+
+    /**
+     * @return the number of refresh tokens held, including expired ones not swept yet
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of digests held in the expiry buckets, one per outstanding token
+     */
+    public int pendingExpiries() {
+        int pending = 0;
+        for (Set<TokenDigest> bucket : expiries.values()) {
+            pending += bucket.size();
+        }
+        return pending;
+    }
+
+    /**
+     * Drops the expired tokens; visits only the expiry buckets that are already past.
+     *
+     * @return the number of tokens dropped
+     */
+    public int sweep() {
+        final long now = clock.millis();
+        int swept = 0;
+        Map.Entry<Long, Set<TokenDigest>> bucket;
+        while ((bucket = expiries.firstEntry()) != null && bucket.getKey() < now / sweepIntervalMillis) {
+            expiries.remove(bucket.getKey());
+            for (TokenDigest digest : bucket.getValue()) {
+                final Entry entry = entries.get(digest);
+                // a token redeemed while its bucket is drained is no longer in the index
+                if (entry != null && entry.isExpired(now) && entries.remove(digest, entry)) {
+                    swept++;
+                }
+            }
+        }
+        if (swept > 0) {
+            LOGGER.debug("sweep(), swept:{}, size:{}", swept, entries.size());
+        }
+        return swept;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * What a redeemed refresh token was issued for.
+     */
+    public interface Grant {
+
+        /**
+         * @return the id of the user
+         */
+        long getUserId();
+
+        /**
+         * @return the username
+         */
+        String getUserName();
+
+        /**
+         * @return the token version of the user when the token was issued
+         */
+        int getTokenVersion();
+    }
+
+    /**
+     * The user, token version and expiry of a refresh token, and the expiry bucket holding its digest.
+     */
+    private static final class Entry implements Grant {
+
+        private final long userId;
+        private final String userName;
+        private final int tokenVersion;
+        private final long expiresAt;
+        private final long bucket;
+
+        private Entry(long userId, String userName, int tokenVersion, long expiresAt, long bucket) {
+            this.userId = userId;
+            this.userName = userName;
+            this.tokenVersion = tokenVersion;
+            this.expiresAt = expiresAt;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public long getUserId() {
+            return userId;
+        }
+
+        @Override
+        public String getUserName() {
+            return userName;
+        }
+
+        @Override
+        public int getTokenVersion() {
+            return tokenVersion;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    /**
+     * The SHA-256 digest of a refresh token; the token itself is never kept.
+     */
+    private static final class TokenDigest {
+
+        private final byte[] digest;
+        private final int hashCode;
+
+        private TokenDigest(byte[] digest) {
+            this.digest = digest;
+            this.hashCode = Arrays.hashCode(digest);
+        }
+
+        private static TokenDigest of(String token) {
+            try {
+                final MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+                return new TokenDigest(messageDigest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException("SHA-256 is not available", ex);
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return this == other || (other instanceof TokenDigest && Arrays.equals(digest, ((TokenDigest) other).digest));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
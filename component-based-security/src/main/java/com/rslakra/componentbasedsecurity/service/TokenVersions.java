@@ -0,0 +1,101 @@
+package com.rslakra.componentbasedsecurity.service;
+
+import com.rslakra.componentbasedsecurity.cache.LongIntTable;
+import com.rslakra.componentbasedsecurity.config.JwtUtils;
+import com.rslakra.componentbasedsecurity.persistence.dao.UserRepository;
+import io.jsonwebtoken.Claims;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Revokes the tokens of one user, without rotating the secret of everyone's.
+ * <p>
+ * Every user has a token version, carried by the tokens issued to it; revoking bumps the version, so the tokens
+ * issued before are rejected. The versions are stored with the users and mirrored, at startup and on every bump, in an
+ * in-memory {@link LongIntTable}: checking a token is a single lookup, without boxing or database access.
+ *
+ * @author Rohtash Lakra
+ */
+@Service
+public class TokenVersions {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenVersions.class);
+
+    // only users whose tokens were ever revoked; the others are at version 0
+    private final LongIntTable versions = new LongIntTable();
+    private final UserRepository userRepository;
+
+    /**
+     * @param userRepository the user repository
+     */
+    public TokenVersions(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * Loads the versions of the users whose tokens were revoked.
+     */
+    @PostConstruct
+    public void load() {
+        for (Object[] row : userRepository.findRevokedTokenVersions()) {
+            versions.putMax(((Number) row[0]).longValue(), ((Number) row[1]).intValue());
+        }
+        LOGGER.debug("load(), revoked users:{}", versions.size());
+    }
+
+    /**
+     * @param userId the user id
+     * @return the version new tokens of the user are issued with
+     */
+    public int current(final long userId) {
+        return versions.get(userId);
+    }
+
+    /**
+     * @param userId       the user id
+     * @param tokenVersion the version a token was issued with
+     * @return true if the token wasn't revoked since
+     */
+    public boolean isCurrent(final long userId, final int tokenVersion) {
+        return tokenVersion >= versions.get(userId);
+    }
+
+    /**
+     * Tokens issued before versions existed carry neither a user id nor a version: they are taken as version 0 of the
+     * user they were loaded for, so they stay valid until they expire, unless the user's tokens are revoked meanwhile.
+     *
+     * @param userId the id of the user the token was loaded for
+     * @param claims the verified claims of an access token
+     * @return true if the token's user id, if any, is the user's and the token wasn't revoked since
+     */
+    public boolean isCurrent(final long userId, final Claims claims) {
+        final Object tokenUserId = claims.get(JwtUtils.USER_ID);
+        final Object tokenVersion = claims.get(JwtUtils.TOKEN_VERSION);
+        if (tokenUserId != null && !(tokenUserId instanceof Number && ((Number) tokenUserId).longValue() == userId)) {
+            // issued to another user of the same name, e.g. one deleted since
+            return false;
+        }
+        if (tokenVersion == null) {
+            return isCurrent(userId, 0);
+        }
+        return (tokenVersion instanceof Number && isCurrent(userId, ((Number) tokenVersion).intValue()));
+    }
+
+    /**
+     * Revokes every token issued to the user so far, e.g. on logout or password change.
+     *
+     * @param userId the user id
+     * @return the new version of the user
+     */
+    @Transactional
+    public int revoke(final long userId) {
+        userRepository.incrementTokenVersion(userId);
+        final Integer version = userRepository.findTokenVersionById(userId);
+        final int current = versions.putMax(userId, (version == null ? 0 : version));
+        LOGGER.debug("revoke({}), version:{}", userId, current);
+        return current;
+    }
+}
@@ -0,0 +1,46 @@
+package com.rslakra.componentbasedsecurity.service;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * The user details of a user, with the id its tokens are issued and revoked under.
+ *
+ * @author Rohtash Lakra
+ */
+public class UserAccount extends User {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long id;
+
+    /**
+     * @param id          the user id
+     * @param username    the username
+     * @param password    the encoded password
+     * @param authorities the authorities
+     */
+    public UserAccount(final long id, final String username, final String password,
+                       final Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, authorities);
+        this.id = id;
+    }
+
+    /**
+     * @param account the account to copy
+     */
+    public UserAccount(final UserAccount account) {
+        super(account.getUsername(), account.getPassword(), account.isEnabled(), account.isAccountNonExpired(),
+              account.isCredentialsNonExpired(), account.isAccountNonLocked(), account.getAuthorities());
+        this.id = account.id;
+    }
+
+    /**
+     * @return the user id
+     */
+    public long getId() {
+        return id;
+    }
+}
@@ -1,5 +1,6 @@
 package com.rslakra.componentbasedsecurity.service;
 
+import com.rslakra.componentbasedsecurity.cache.UserDetailsCache;
 import com.rslakra.componentbasedsecurity.payload.dto.UserDTO;
 import com.rslakra.componentbasedsecurity.persistence.dao.UserRepository;
 import com.rslakra.componentbasedsecurity.persistence.model.User;
@@ -25,6 +26,12 @@ public class UserDetailsServiceImpl implements UserDetailsService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @Autowired
+    private TokenVersions tokenVersions;
+
     /**
      * @param username
      * @return
@@ -32,13 +39,23 @@ public class UserDetailsServiceImpl implements UserDetailsService {
      */
     @Override
     public UserDetails loadUserByUsername(final String username) throws UsernameNotFoundException {
-        LOGGER.debug("loadUserByUsername(" + username + ")");
+        LOGGER.debug("loadUserByUsername({})", username);
+        return userDetailsCache.get(username, this::loadUser);
+    }
+
+    /**
+     * Loads the user from the repository, on a cache miss.
+     *
+     * @param username
+     * @return
+     * @throws UsernameNotFoundException
+     */
+    private UserDetails loadUser(final String username) throws UsernameNotFoundException {
         final User user = userRepository.findByUserName(username);
         if (user == null) {
             throw new UsernameNotFoundException("User not found with username: " + username);
         }
-        return new org.springframework.security.core.userdetails.User(user.getUserName(), user.getPassword(),
-                                                                      new ArrayList<>());
+        return new UserAccount(user.getId(), user.getUserName(), user.getPassword(), new ArrayList<>());
     }
 
     /**
@@ -52,6 +69,27 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         User newUser = new User();
         newUser.setUserName(user.getUserName());
         newUser.setPassword(bcryptEncoder.encode(user.getPassword()));
-        return userRepository.save(newUser);
+        final User savedUser = userRepository.save(newUser);
+        userDetailsCache.invalidate(savedUser.getUserName());
+        return savedUser;
+    }
+
+    /**
+     * Changes the password of the user, and revokes every token issued to the user so far.
+     *
+     * @param userName
+     * @param newPassword
+     * @throws UsernameNotFoundException
+     */
+    public void changePassword(final String userName, final String newPassword) throws UsernameNotFoundException {
+        LOGGER.debug("changePassword({})", userName);
+        final User user = userRepository.findByUserName(userName);
+        if (user == null) {
+            throw new UsernameNotFoundException("User not found with username: " + userName);
+        }
+        user.setPassword(bcryptEncoder.encode(newPassword));
+        userRepository.save(user);
+        userDetailsCache.invalidate(userName);
+        tokenVersions.revoke(user.getId());
     }
 }
@@ -0,0 +1,89 @@
+package com.rslakra.componentbasedsecurity.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+public class LongIntTableTest {
+
+    @Test
+    void givenEmptyTable_whenLookedUp_thenAbsentKeysMapToZero() {
+        LongIntTable table = new LongIntTable();
+
+        assertThat(table.get(1L)).isZero();
+        assertThat(table.get(-1L)).isZero();
+        assertThat(table.size()).isZero();
+    }
+
+    @Test
+    void givenKey_whenPut_thenOnlyGreaterValuesReplaceIt() {
+        LongIntTable table = new LongIntTable();
+
+        assertThat(table.putMax(7L, 2)).isEqualTo(2);
+        assertThat(table.putMax(7L, 1)).isEqualTo(2);
+        assertThat(table.get(7L)).isEqualTo(2);
+        assertThat(table.putMax(7L, 5)).isEqualTo(5);
+        assertThat(table.get(7L)).isEqualTo(5);
+        assertThat(table.size()).isEqualTo(1);
+    }
+
+    @Test
+    void givenManyKeys_whenTableResizes_thenEveryKeyIsKept() {
+        LongIntTable table = new LongIntTable();
+        for (long key = 1; key <= 10_000; key++) {
+            table.putMax(key, (int) key);
+        }
+
+        assertThat(table.size()).isEqualTo(10_000);
+        for (long key = 1; key <= 10_000; key++) {
+            assertThat(table.get(key)).isEqualTo((int) key);
+        }
+        assertThat(table.get(10_001L)).isZero();
+    }
+
+    @Test
+    void givenCollidingKeys_whenPut_thenEachKeepsItsOwnValue() {
+        LongIntTable table = new LongIntTable();
+        // keys hashing to the same slot of the initial 16 slots, so each probes past the ones before it
+        long[] keys = new long[6];
+        int found = 0;
+        for (long key = 1; found < keys.length; key++) {
+            if (slotOf(key, 16) == slotOf(1L, 16)) {
+                keys[found++] = key;
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            table.putMax(keys[i], i + 1);
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            assertThat(table.get(keys[i])).isEqualTo(i + 1);
+        }
+        assertThat(table.size()).isEqualTo(keys.length);
+        // a colliding key that was never put runs into the empty slot after the cluster
+        long absent = keys[keys.length - 1] + 1;
+        while (slotOf(absent, 16) != slotOf(1L, 16)) {
+            absent++;
+        }
+        assertThat(table.get(absent)).isZero();
+    }
+
+    @Test
+    void givenEmptySlotMarker_whenPut_thenKeyIsRejected() {
+        LongIntTable table = new LongIntTable();
+
+        assertThatThrownBy(() -> table.putMax(Long.MIN_VALUE, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(table.get(Long.MIN_VALUE)).isZero();
+    }
+
+    /**
+     * @param key      the key
+     * @param capacity the number of slots
+     * @return the slot LongIntTable starts probing the key at
+     */
+    private static int slotOf(long key, int capacity) {
+        final long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & (capacity - 1);
+    }
+}
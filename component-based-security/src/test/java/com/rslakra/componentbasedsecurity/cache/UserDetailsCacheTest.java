@@ -0,0 +1,155 @@
+package com.rslakra.componentbasedsecurity.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.rslakra.componentbasedsecurity.service.UserAccount;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+public class UserDetailsCacheTest {
+
+    private static final long TTL_MILLIS = 60_000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(now.get());
+        }
+    };
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, UserDetails> loader = userName -> {
+        loads.incrementAndGet();
+        return new UserAccount(1L, userName, "password", new ArrayList<>());
+    };
+
+    @Test
+    void givenCachedUser_whenLookedUpAgain_thenItIsLoadedOnceAndCopied() {
+        UserDetailsCache cache = new UserDetailsCache(10, TTL_MILLIS, clock);
+
+        UserDetails first = cache.get("rslakra", loader);
+        UserDetails second = cache.get("rslakra", loader);
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getUsername()).isEqualTo("rslakra");
+        assertThat(cache.getStats()).containsEntry("hits", 1L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void givenUserBeingLoaded_whenLookedUpConcurrently_thenLookupWaitsForTheSameLoad() throws Exception {
+        UserDetailsCache cache = new UserDetailsCache(10, TTL_MILLIS, clock);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<String, UserDetails> slowLoader = userName -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return loader.apply(userName);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<UserDetails> loaded = executor.submit(() -> cache.get("rslakra", slowLoader));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<UserDetails> waiting = executor.submit(() -> cache.get("rslakra", slowLoader));
+            while (cache.getStats().get("hits").equals(0L)) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertThat(loaded.get(5, TimeUnit.SECONDS).getUsername()).isEqualTo("rslakra");
+            assertThat(waiting.get(5, TimeUnit.SECONDS).getUsername()).isEqualTo("rslakra");
+            assertThat(loads.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void givenExpiredUser_whenLookedUp_thenItIsLoadedAgain() {
+        UserDetailsCache cache = new UserDetailsCache(10, TTL_MILLIS, clock);
+        cache.get("rslakra", loader);
+
+        now.addAndGet(TTL_MILLIS - 1);
+        cache.get("rslakra", loader);
+        assertThat(loads.get()).isEqualTo(1);
+
+        now.addAndGet(1);
+        cache.get("rslakra", loader);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void givenFullCache_whenNewUsersAreLoaded_thenOneEntryIsEvictedPerUser() {
+        UserDetailsCache cache = new UserDetailsCache(4, TTL_MILLIS, clock);
+        for (int i = 0; i < 20; i++) {
+            now.incrementAndGet();
+            cache.get("user-" + i, loader);
+        }
+
+        assertThat(cache.size()).isEqualTo(4);
+        assertThat(cache.getStats()).containsEntry("evictions", 16L);
+        // the newest user is never the victim of its own insert
+        cache.get("user-19", loader);
+        assertThat(loads.get()).isEqualTo(20);
+    }
+
+    @Test
+    void givenFailingOrNullLoader_whenLookedUp_thenFailureIsThrownAndNotCached() {
+        UserDetailsCache cache = new UserDetailsCache(10, TTL_MILLIS, clock);
+
+        assertThatThrownBy(() -> cache.get("unknown", userName -> {
+            throw new UsernameNotFoundException(userName);
+        })).isInstanceOf(UsernameNotFoundException.class);
+        assertThatThrownBy(() -> cache.get("broken", userName -> {
+            throw new StackOverflowError();
+        })).isInstanceOf(StackOverflowError.class);
+        assertThatThrownBy(() -> cache.get("missing", userName -> null))
+            .isInstanceOf(InternalAuthenticationServiceException.class);
+        assertThat(cache.size()).isZero();
+
+        assertThat(cache.get("missing", loader).getUsername()).isEqualTo("missing");
+    }
+
+    @Test
+    void givenCachedUser_whenInvalidated_thenItIsLoadedAgain() {
+        UserDetailsCache cache = new UserDetailsCache(10, TTL_MILLIS, clock);
+        cache.get("rslakra", loader);
+
+        cache.invalidate("rslakra");
+        cache.get("rslakra", loader);
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,160 @@
+package com.rslakra.componentbasedsecurity.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.rslakra.componentbasedsecurity.config.TokenFailures.Reason;
+import com.rslakra.componentbasedsecurity.persistence.dao.UserRepository;
+import com.rslakra.componentbasedsecurity.service.TokenVersions;
+import com.rslakra.componentbasedsecurity.service.UserAccount;
+import com.rslakra.componentbasedsecurity.service.UserDetailsServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+
+public class JwtRequestFilterTest {
+
+    private static final long USER_ID = 1L;
+
+    private final JwtUtils jwtUtils = new JwtUtils("rslakra-component-based-security-jwt-secret-key", 3_600_000L,
+                                                   3_600_000L);
+    private final UserDetailsServiceImpl userDetailsService = mock(UserDetailsServiceImpl.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final TokenVersions tokenVersions = new TokenVersions(userRepository);
+    private final TokenFailures tokenFailures = new TokenFailures(TokenFailures.DEFAULT_LOG_INTERVAL_MILLIS);
+    private final TokenContext tokenContext = new TokenContext();
+    private final JwtRequestFilter jwtRequestFilter = new JwtRequestFilter(jwtUtils, userDetailsService, tokenContext,
+                                                                           tokenFailures, tokenVersions);
+    private final UserAccount account = new UserAccount(USER_ID, "rslakra", "password", new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        when(userDetailsService.loadUserByUsername("rslakra")).thenReturn(account);
+        when(userRepository.findTokenVersionById(USER_ID)).thenReturn(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void givenPermittedPath_whenFiltered_thenTokenIsNotLookedAt() throws Exception {
+        MockFilterChain chain = filter("/authenticate", "Basic cnNsYWtyYQ==");
+
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(tokenFailures.getStats().values()).allMatch(count -> count == 0);
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void givenCurrentToken_whenFiltered_thenRequestIsAuthenticated() throws Exception {
+        MockFilterChain chain = filter("/users", bearer(jwtUtils.generateToken(account, USER_ID, 0)));
+
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(SecurityContextHolder.getContext().getAuthentication().getName()).isEqualTo("rslakra");
+        assertThat(tokenContext.getUserName()).isEqualTo("rslakra");
+    }
+
+    @Test
+    void givenHeaderWithoutBearerToken_whenFiltered_thenFailureIsCountedByReason() throws Exception {
+        filter("/users", null);
+        filter("/users", "Basic cnNsYWtyYQ==");
+        filter("/users", "Basic cnNsYWtyYQ==");
+        filter("/users", JwtUtils.BEARER + " ");
+
+        assertThat(tokenFailures.getStats())
+            .containsEntry(Reason.MISSING.name(), 1L)
+            .containsEntry(Reason.NOT_BEARER.name(), 2L)
+            .containsEntry(Reason.EMPTY.name(), 1L)
+            .containsEntry(Reason.INVALID.name(), 0L);
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    void givenTamperedSignature_whenFiltered_thenTokenIsInvalid() throws Exception {
+        String token = jwtUtils.generateToken(account, USER_ID, 0);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BA" : "AA");
+
+        MockFilterChain chain = filter("/users", bearer(tampered));
+
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(tokenFailures.count(Reason.INVALID)).isEqualTo(1);
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        assertThat(tokenContext.hasToken()).isFalse();
+    }
+
+    @Test
+    void givenRevokedToken_whenFiltered_thenItIsRejected() throws Exception {
+        String token = jwtUtils.generateToken(account, USER_ID, tokenVersions.current(USER_ID));
+
+        tokenVersions.revoke(USER_ID);
+        filter("/users", bearer(token));
+
+        assertThat(tokenFailures.count(Reason.REVOKED)).isEqualTo(1);
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        assertThat(tokenContext.hasToken()).isFalse();
+
+        filter("/users", bearer(jwtUtils.generateToken(account, USER_ID, tokenVersions.current(USER_ID))));
+        assertThat(SecurityContextHolder.getContext().getAuthentication().getName()).isEqualTo("rslakra");
+    }
+
+    @Test
+    void givenTokenWithoutVersion_whenFiltered_thenItIsVersionZeroOfTheLoadedUser() throws Exception {
+        // issued before tokens carried uid and ver
+        String legacyToken = jwtUtils.generateToken(account);
+
+        filter("/users", bearer(legacyToken));
+        assertThat(SecurityContextHolder.getContext().getAuthentication().getName()).isEqualTo("rslakra");
+        SecurityContextHolder.clearContext();
+
+        tokenVersions.revoke(USER_ID);
+        filter("/users", bearer(legacyToken));
+        assertThat(tokenFailures.count(Reason.REVOKED)).isEqualTo(1);
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    void givenTokenOfAnotherUserId_whenFiltered_thenItIsRejected() throws Exception {
+        filter("/users", bearer(jwtUtils.generateToken(account, USER_ID + 1, 0)));
+
+        assertThat(tokenFailures.count(Reason.REVOKED)).isEqualTo(1);
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    void givenTokenOfAnotherUserName_whenFiltered_thenItIsRejectedWithoutBeingPublished() throws Exception {
+        // the user store resolves the name of the token to a user with another name
+        UserAccount alias = new UserAccount(USER_ID, "alias", "password", new ArrayList<>());
+        when(userDetailsService.loadUserByUsername("alias")).thenReturn(account);
+
+        filter("/users", bearer(jwtUtils.generateToken(alias, USER_ID, 0)));
+
+        assertThat(tokenFailures.count(Reason.USER_MISMATCH)).isEqualTo(1);
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        assertThat(tokenContext.hasToken()).isFalse();
+    }
+
+    private static String bearer(String token) {
+        return JwtUtils.BEARER + " " + token;
+    }
+
+    private MockFilterChain filter(String servletPath, String authorization) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", servletPath);
+        request.setServletPath(servletPath);
+        if (authorization != null) {
+            request.addHeader(JwtUtils.AUTHORIZATION, authorization);
+        }
+        MockFilterChain chain = new MockFilterChain();
+        jwtRequestFilter.doFilter(request, new MockHttpServletResponse(), chain);
+        return chain;
+    }
+}
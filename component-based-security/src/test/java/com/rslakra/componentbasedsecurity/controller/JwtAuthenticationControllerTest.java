@@ -0,0 +1,77 @@
+package com.rslakra.componentbasedsecurity.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.rslakra.componentbasedsecurity.config.JwtUtils;
+import com.rslakra.componentbasedsecurity.config.Keys;
+import com.rslakra.componentbasedsecurity.payload.RefreshRequest;
+import com.rslakra.componentbasedsecurity.payload.Response;
+import com.rslakra.componentbasedsecurity.persistence.dao.UserRepository;
+import com.rslakra.componentbasedsecurity.service.RefreshTokenService;
+import com.rslakra.componentbasedsecurity.service.TokenVersions;
+import com.rslakra.componentbasedsecurity.service.UserAccount;
+import com.rslakra.componentbasedsecurity.service.UserDetailsServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.util.ArrayList;
+
+public class JwtAuthenticationControllerTest {
+
+    private final JwtUtils jwtUtils = new JwtUtils("rslakra-component-based-security-jwt-secret-key", 3_600_000L,
+                                                   3_600_000L);
+    private final UserDetailsServiceImpl userDetailsService = mock(UserDetailsServiceImpl.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final TokenVersions tokenVersions = new TokenVersions(userRepository);
+    // the sweeper isn't scheduled
+    private final RefreshTokenService refreshTokenService = new RefreshTokenService(
+        RefreshTokenService.DEFAULT_VALIDITY_MILLIS, 0, Clock.systemUTC());
+    private final JwtAuthenticationController controller = new JwtAuthenticationController();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(controller, "jwtUtils", jwtUtils);
+        ReflectionTestUtils.setField(controller, "userDetailsService", userDetailsService);
+        ReflectionTestUtils.setField(controller, "refreshTokenService", refreshTokenService);
+        ReflectionTestUtils.setField(controller, "tokenVersions", tokenVersions);
+    }
+
+    @AfterEach
+    void tearDown() {
+        refreshTokenService.shutdown();
+    }
+
+    @Test
+    void givenRefreshTokenOfCurrentUser_whenRefreshing_thenNewTokensAreIssued() {
+        when(userDetailsService.loadUserByUsername("rslakra")).thenReturn(account(1L));
+        String refreshToken = refreshTokenService.issue(1L, "rslakra", tokenVersions.current(1L));
+
+        ResponseEntity<Response> response = controller.doRefresh(new RefreshRequest(refreshToken));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getValueAsString(Keys.REFRESH_TOKEN)).isNotEqualTo(refreshToken);
+    }
+
+    @Test
+    void givenRefreshTokenOfDeletedUser_whenNameIsRegisteredAgain_thenItIsRejected() {
+        String refreshToken = refreshTokenService.issue(1L, "rslakra", tokenVersions.current(1L));
+        // a new user of the same name, whose token version matches the old one
+        when(userDetailsService.loadUserByUsername("rslakra")).thenReturn(account(2L));
+
+        ResponseEntity<Response> response = controller.doRefresh(new RefreshRequest(refreshToken));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+        assertThat(response.getBody().getValueAsString("message")).isEqualTo("INVALID_REFRESH_TOKEN");
+    }
+
+    private static UserAccount account(long id) {
+        return new UserAccount(id, "rslakra", "password", new ArrayList<>());
+    }
+}
@@ -0,0 +1,73 @@
+package com.rslakra.componentbasedsecurity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PasswordHashingExecutorTest {
+
+    private final PasswordHashingExecutor executor = new PasswordHashingExecutor(1, 2);
+    private final CountDownLatch running = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void givenFullQueue_whenSubmitting_thenTaskIsRejectedAndCounted() throws Exception {
+        CompletableFuture<String> blocking = executor.submit(this::blockUntilReleased);
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> first = executor.submit(() -> "first");
+        CompletableFuture<String> second = executor.submit(() -> "second");
+        assertThat(executor.getQueueDepth()).isEqualTo(2);
+
+        assertThatThrownBy(() -> executor.submit(() -> "third"))
+            .isInstanceOfSatisfying(PasswordHashingRejectedException.class,
+                                    ex -> assertThat(ex.isShutdown()).isFalse());
+        assertThat(executor.getStats())
+            .containsEntry("poolSize", 1)
+            .containsEntry("queueDepth", 2)
+            .containsEntry("queueCapacity", 2)
+            .containsEntry("rejected", 1L);
+
+        release.countDown();
+        assertThat(blocking.get(5, TimeUnit.SECONDS)).isEqualTo("blocked");
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("second");
+        assertThat(executor.getStats())
+            .containsEntry("queueDepth", 0)
+            .containsEntry("completed", 3L)
+            .containsEntry("rejected", 1L);
+        assertThat((double) executor.getStats().get("maxWaitMillis")).isPositive();
+        assertThat((double) executor.getStats().get("maxHashMillis")).isPositive();
+    }
+
+    @Test
+    void givenShutdownExecutor_whenSubmitting_thenRejectionReportsShutdown() {
+        executor.shutdown();
+
+        assertThatThrownBy(() -> executor.submit(() -> "late"))
+            .isInstanceOfSatisfying(PasswordHashingRejectedException.class,
+                                    ex -> assertThat(ex.isShutdown()).isTrue());
+        assertThat(executor.getStats()).containsEntry("rejected", 1L);
+    }
+
+    private String blockUntilReleased() {
+        running.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return "blocked";
+    }
+}
@@ -0,0 +1,116 @@
+package com.rslakra.componentbasedsecurity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.rslakra.componentbasedsecurity.persistence.dao.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RefreshTokenServiceTest {
+
+    private static final long VALIDITY_MILLIS = 120_000;
+    private static final long SWEEP_INTERVAL_MILLIS = RefreshTokenService.DEFAULT_SWEEP_INTERVAL_MILLIS;
+
+    // at the start of an expiry bucket
+    private final AtomicLong now = new AtomicLong(1_000 * SWEEP_INTERVAL_MILLIS);
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(now.get());
+        }
+    };
+    // the sweeper isn't scheduled, the tests call sweep()
+    private final RefreshTokenService refreshTokenService = new RefreshTokenService(VALIDITY_MILLIS, 0, clock);
+
+    @AfterEach
+    void tearDown() {
+        refreshTokenService.shutdown();
+    }
+
+    @Test
+    void givenIssuedToken_whenRedeemed_thenItCanNotBeRedeemedAgain() {
+        String refreshToken = refreshTokenService.issue(1L, "rslakra", 3);
+
+        RefreshTokenService.Grant grant = refreshTokenService.redeem(refreshToken);
+        assertThat(grant.getUserId()).isEqualTo(1L);
+        assertThat(grant.getUserName()).isEqualTo("rslakra");
+        assertThat(grant.getTokenVersion()).isEqualTo(3);
+        assertThat(refreshTokenService.redeem(refreshToken)).isNull();
+        assertThat(refreshTokenService.redeem("unknown")).isNull();
+        assertThat(refreshTokenService.redeem(null)).isNull();
+    }
+
+    @Test
+    void givenRedeemedToken_whenRotated_thenOnlyTheNewTokenIsHeld() {
+        String refreshToken = refreshTokenService.issue(1L, "rslakra", 0);
+        refreshTokenService.redeem(refreshToken);
+        String rotated = refreshTokenService.issue(1L, "rslakra", 0);
+
+        assertThat(rotated).isNotEqualTo(refreshToken);
+        assertThat(refreshTokenService.size()).isEqualTo(1);
+        // the redeemed digest left its expiry bucket
+        assertThat(refreshTokenService.pendingExpiries()).isEqualTo(1);
+        assertThat(refreshTokenService.redeem(rotated).getUserName()).isEqualTo("rslakra");
+        assertThat(refreshTokenService.pendingExpiries()).isZero();
+    }
+
+    @Test
+    void givenExpiredToken_whenRedeemed_thenItIsRejected() {
+        String refreshToken = refreshTokenService.issue(1L, "rslakra", 0);
+
+        now.addAndGet(VALIDITY_MILLIS);
+
+        assertThat(refreshTokenService.redeem(refreshToken)).isNull();
+        assertThat(refreshTokenService.size()).isZero();
+    }
+
+    @Test
+    void givenRevokedUser_whenTokenIsRedeemed_thenItsVersionIsNoLongerCurrent() {
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findTokenVersionById(1L)).thenReturn(1);
+        TokenVersions tokenVersions = new TokenVersions(userRepository);
+        String refreshToken = refreshTokenService.issue(1L, "rslakra", tokenVersions.current(1L));
+
+        tokenVersions.revoke(1L);
+
+        RefreshTokenService.Grant grant = refreshTokenService.redeem(refreshToken);
+        assertThat(grant.getTokenVersion()).isZero();
+        assertThat(tokenVersions.isCurrent(1L, grant.getTokenVersion())).isFalse();
+        assertThat(tokenVersions.isCurrent(1L, tokenVersions.current(1L))).isTrue();
+    }
+
+    @Test
+    void givenExpiredTokens_whenSwept_thenOnlyBucketsAlreadyPastAreDrained() {
+        refreshTokenService.issue(2L, "expired", 0);
+
+        // expired, but its bucket isn't past yet
+        now.addAndGet(VALIDITY_MILLIS);
+        String live = refreshTokenService.issue(3L, "live", 0);
+        assertThat(refreshTokenService.sweep()).isZero();
+        assertThat(refreshTokenService.size()).isEqualTo(2);
+
+        now.addAndGet(SWEEP_INTERVAL_MILLIS);
+        assertThat(refreshTokenService.sweep()).isEqualTo(1);
+        assertThat(refreshTokenService.size()).isEqualTo(1);
+        assertThat(refreshTokenService.pendingExpiries()).isEqualTo(1);
+        assertThat(refreshTokenService.redeem(live).getUserName()).isEqualTo("live");
+    }
+}
@@ -0,0 +1,69 @@
+package com.rslakra.componentbasedsecurity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.rslakra.componentbasedsecurity.cache.UserDetailsCache;
+import com.rslakra.componentbasedsecurity.payload.dto.UserDTO;
+import com.rslakra.componentbasedsecurity.persistence.dao.UserRepository;
+import com.rslakra.componentbasedsecurity.persistence.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class UserDetailsServiceImplTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+    private final TokenVersions tokenVersions = mock(TokenVersions.class);
+    private final UserDetailsCache userDetailsCache = new UserDetailsCache(10, UserDetailsCache.DEFAULT_TTL_MILLIS);
+    private final UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl();
+    private final User user = new User();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(userDetailsService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userDetailsService, "bcryptEncoder", passwordEncoder);
+        ReflectionTestUtils.setField(userDetailsService, "tokenVersions", tokenVersions);
+        ReflectionTestUtils.setField(userDetailsService, "userDetailsCache", userDetailsCache);
+
+        user.setId(1L);
+        user.setUserName("rslakra");
+        user.setPassword("old-hash");
+        when(userRepository.findByUserName("rslakra")).thenReturn(user);
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(passwordEncoder.encode(anyString())).thenReturn("new-hash");
+    }
+
+    @Test
+    void givenCachedUser_whenSaved_thenNextLookupReloadsIt() {
+        assertThat(userDetailsService.loadUserByUsername("rslakra").getPassword()).isEqualTo("old-hash");
+        assertThat(userDetailsService.loadUserByUsername("rslakra").getPassword()).isEqualTo("old-hash");
+        verify(userRepository, times(1)).findByUserName("rslakra");
+
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUserName("rslakra");
+        userDTO.setPassword("secret");
+        userDetailsService.save(userDTO);
+        user.setPassword("new-hash");
+
+        assertThat(userDetailsService.loadUserByUsername("rslakra").getPassword()).isEqualTo("new-hash");
+        verify(userRepository, times(2)).findByUserName("rslakra");
+    }
+
+    @Test
+    void givenCachedUser_whenPasswordChanges_thenCacheIsDroppedAndTokensRevoked() {
+        userDetailsService.loadUserByUsername("rslakra");
+
+        userDetailsService.changePassword("rslakra", "secret");
+
+        assertThat(userDetailsCache.size()).isZero();
+        verify(tokenVersions).revoke(1L);
+    }
+}
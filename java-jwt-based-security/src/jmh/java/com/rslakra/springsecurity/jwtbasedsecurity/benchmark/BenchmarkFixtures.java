@@ -0,0 +1,90 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.benchmark;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The keys and claims shared by the benchmarks.
+ *
+ * @author Rohtash Lakra
+ */
+final class BenchmarkFixtures {
+
+    static final String ISSUER = "Rohtash Lakra";
+    static final String SUBJECT = "rslakra";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Returns an ASCII secret exactly as long as the algorithm requires, so the key of
+     * {@link JWTUtils#decodeJWTToken(String, String)} and of the byte[] signing methods selects the same algorithm.
+     *
+     * @param algorithm HS256, HS384 or HS512
+     * @return the secret
+     */
+    static String secretOf(String algorithm) {
+        final int bytes = switch (algorithm) {
+            case JWTHeaderUtils.HS256 -> 32;
+            case JWTHeaderUtils.HS384 -> 48;
+            case JWTHeaderUtils.HS512 -> 64;
+            default -> throw new IllegalArgumentException("Unsupported algorithm: " + algorithm);
+        };
+
+        final StringBuilder secret = new StringBuilder(bytes);
+        for (int i = 0; i < bytes; i++) {
+            secret.append((char) ('A' + (i * 7 + algorithm.length()) % 26));
+        }
+        return secret.toString();
+    }
+
+    /**
+     * @param payloadSize SMALL (registered claims only), MEDIUM (~1 KB) or LARGE (~8 KB)
+     * @return custom claims of about the given size
+     */
+    static Map<String, Object> customClaimsOf(String payloadSize) {
+        final int extraClaims = switch (payloadSize) {
+            case "SMALL" -> 0;
+            case "MEDIUM" -> 16;
+            case "LARGE" -> 128;
+            default -> throw new IllegalArgumentException("Unsupported payload size: " + payloadSize);
+        };
+
+        final Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("scope", "ADMIN");
+        for (int i = 0; i < extraClaims; i++) {
+            claims.put("permission" + i, "resource-" + i + ":read,write,delete");
+        }
+        return claims;
+    }
+
+    /**
+     * @param payloadSize the payload size
+     * @return the registered and custom claims
+     */
+    static Map<String, Object> claimsOf(String payloadSize) {
+        final Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put(JWTUtils.ISSUER, ISSUER);
+        claims.put(JWTUtils.SUBJECT, SUBJECT);
+        claims.put(JWTUtils.ISSUED_AT, issuedAtSeconds());
+        claims.put(JWTUtils.EXPIRATION, expirySeconds());
+        claims.putAll(customClaimsOf(payloadSize));
+        return claims;
+    }
+
+    static long issuedAtSeconds() {
+        return Instant.now().getEpochSecond();
+    }
+
+    /**
+     * @return an expiry far enough away to outlast any run
+     */
+    static long expirySeconds() {
+        return Instant.now().plus(365, ChronoUnit.DAYS).getEpochSecond();
+    }
+}
@@ -0,0 +1,84 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.benchmark;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.compression.PooledDeflateAlgorithm;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the JWTUtils signing methods, single-threaded; see {@link Contended} for the same on all cores.
+ *
+ * @author Rohtash Lakra
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class JWTSigningBenchmark {
+
+    @Param({"HS256", "HS384", "HS512"})
+    public String algorithm;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public String payloadSize;
+
+    private byte[] secretBytes;
+    private SecretKey secretKey;
+    private Map<String, Object> claims;
+    private Map<String, Object> customClaims;
+    private long issuedAtSeconds;
+    private long expirySeconds;
+
+    @Setup
+    public void setUp() {
+        secretBytes = BenchmarkFixtures.secretOf(algorithm).getBytes(StandardCharsets.UTF_8);
+        secretKey = Keys.hmacShaKeyFor(secretBytes);
+        claims = BenchmarkFixtures.claimsOf(payloadSize);
+        customClaims = BenchmarkFixtures.customClaimsOf(payloadSize);
+        issuedAtSeconds = BenchmarkFixtures.issuedAtSeconds();
+        expirySeconds = BenchmarkFixtures.expirySeconds();
+    }
+
+    @Benchmark
+    public String jwtCompactBuilderWithClaims() {
+        return JWTUtils.jwtCompactBuilderWithClaims(claims, secretBytes);
+    }
+
+    @Benchmark
+    public String jwtCompactBuilderWithClaimsCompressed() {
+        var builder = JWTUtils.builderWithClaims(claims).compressWith(PooledDeflateAlgorithm.DEFAULT);
+        return JWTUtils.signWith(builder, secretKey).compact();
+    }
+
+    @Benchmark
+    public String jwtBuilder() {
+        return JWTUtils.jwtBuilder(BenchmarkFixtures.ISSUER, BenchmarkFixtures.SUBJECT, issuedAtSeconds,
+                                   expirySeconds, customClaims, secretBytes);
+    }
+
+    /**
+     * The same benchmarks with one thread per core, sharing the keys and the deflater pool.
+     */
+    @Threads(Threads.MAX)
+    public static class Contended extends JWTSigningBenchmark {
+    }
+}
@@ -0,0 +1,118 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.benchmark;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.VerifiedClaimsCache;
+import com.rslakra.springsecurity.jwtbasedsecurity.compression.PooledDeflateAlgorithm;
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the JWTUtils and SecretsService verification methods, single-threaded; see {@link Contended} for the
+ * same on all cores.
+ *
+ * @author Rohtash Lakra
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class JWTVerificationBenchmark {
+
+    @Param({"HS256", "HS384", "HS512"})
+    public String algorithm;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public String payloadSize;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    private String secret;
+    private SecretKey secretKey;
+    private String token;
+    // verifies every call
+    private SecretsService secretsService;
+    // serves repeated tokens from the verified claims cache
+    private SecretsService cachingSecretsService;
+
+    @Setup
+    public void setUp() {
+        secret = BenchmarkFixtures.secretOf(algorithm);
+        final byte[] secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        secretKey = Keys.hmacShaKeyFor(secretBytes);
+
+        var builder = JWTUtils.builderWithClaims(BenchmarkFixtures.claimsOf(payloadSize));
+        if (compressed) {
+            builder.compressWith(PooledDeflateAlgorithm.DEFAULT);
+        }
+        token = JWTUtils.signWith(builder, secretKey).compact();
+
+        // every algorithm gets the benchmark key, so the token's kid resolves whatever its algorithm
+        final Map<String, String> secrets = new HashMap<>();
+        for (String alg : new String[]{JWTHeaderUtils.HS256, JWTHeaderUtils.HS384, JWTHeaderUtils.HS512}) {
+            secrets.put(alg, Base64.getEncoder().encodeToString(
+                alg.equals(algorithm) ? secretBytes : BenchmarkFixtures.secretOf(alg).getBytes(StandardCharsets.UTF_8)));
+        }
+        secretsService = new SecretsService(new VerifiedClaimsCache(0, 0), SecretsService.DEFAULT_KEY_OVERLAP_MILLIS);
+        secretsService.setSecrets(secrets);
+        cachingSecretsService = new SecretsService();
+        cachingSecretsService.setSecrets(secrets);
+    }
+
+    @Benchmark
+    public Jws<Claims> parseJWTToken() {
+        return JWTUtils.parseJWTToken(token, secretKey);
+    }
+
+    @Benchmark
+    public String decodeJWTToken() {
+        return JWTUtils.decodeJWTToken(token);
+    }
+
+    @Benchmark
+    public String decodeJWTTokenVerified() throws Exception {
+        return JWTUtils.decodeJWTToken(token, secret);
+    }
+
+    @Benchmark
+    public Claims parseToken() {
+        return secretsService.parseToken(token);
+    }
+
+    @Benchmark
+    public Claims parseTokenCached() {
+        return cachingSecretsService.parseToken(token);
+    }
+
+    /**
+     * The same benchmarks with one thread per core, sharing the parsers, the keyring and the claims cache.
+     */
+    @Threads(Threads.MAX)
+    public static class Contended extends JWTVerificationBenchmark {
+    }
+}
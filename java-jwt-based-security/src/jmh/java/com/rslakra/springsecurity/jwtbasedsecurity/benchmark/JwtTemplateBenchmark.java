@@ -0,0 +1,63 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.benchmark;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.security.JwtTemplate;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and allocation (<code>gc.alloc.rate.norm</code> of the GC profiler) of issuing the /static-builder token
+ * from a pre-encoded {@link JwtTemplate} against building it with jjwt.
+ *
+ * @author Rohtash Lakra
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class JwtTemplateBenchmark {
+
+    private static final Map<String, Object> CUSTOM_CLAIMS = Map.of("scope", "admin");
+
+    private byte[] secretBytes;
+    private JwtTemplate template;
+    private long issuedAt;
+    private long expiry;
+
+    @Setup
+    public void setUp() {
+        secretBytes = BenchmarkFixtures.secretOf("HS256").getBytes(StandardCharsets.UTF_8);
+        template = JwtTemplate.register("benchmark", Map.of("typ", "JWT"),
+                                        Map.of("iss", "Rohtash Lakra", "scope", "admin"));
+        issuedAt = Instant.now().getEpochSecond();
+        expiry = Instant.now().plus(1, ChronoUnit.HOURS).getEpochSecond();
+    }
+
+    @Benchmark
+    public String builder() {
+        return JWTUtils.jwtBuilder("Rohtash Lakra", "rslakra", issuedAt, expiry, CUSTOM_CLAIMS, secretBytes);
+    }
+
+    @Benchmark
+    public String template() {
+        return JWTUtils.jwtBuilder(template, "rslakra", issuedAt, expiry, secretBytes);
+    }
+}
@@ -0,0 +1,72 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.benchmark;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.VerifiedClaimsCache;
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and allocation (<code>gc.alloc.rate.norm</code> of the GC profiler) of sniffing the algorithm from the
+ * raw header bytes, and of verifying with the parsers SecretsService builds once against a parser built per call.
+ *
+ * @author Rohtash Lakra
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class ParserReuseBenchmark {
+
+    private String token;
+    // verifies every call
+    private SecretsService secretsService;
+
+    @Setup
+    public void setUp() {
+        secretsService = new SecretsService(new VerifiedClaimsCache(0, 0), SecretsService.DEFAULT_KEY_OVERLAP_MILLIS);
+        secretsService.initObject();
+        token = JWTUtils.jwtBuilder("Rohtash Lakra", "rslakra", Instant.now().getEpochSecond(),
+                                    Instant.now().plus(1, ChronoUnit.DAYS).getEpochSecond(),
+                                    Map.of("scope", "ADMIN"), secretsService.getHS384SecretBytes());
+    }
+
+    @Benchmark
+    public String sniffAlgorithm() {
+        return JWTHeaderUtils.sniffAlgorithm(token);
+    }
+
+    @Benchmark
+    public Jws<Claims> prebuiltParser() {
+        return secretsService.parseSignedClaims(token);
+    }
+
+    @Benchmark
+    public Jws<Claims> rebuiltParser() {
+        return Jwts.parser()
+            .keyLocator(secretsService.getKeyLocator())
+            .build()
+            .parseSignedClaims(token);
+    }
+}
@@ -0,0 +1,81 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.benchmark;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.VerifiedClaimsCache;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.KeyRing;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.SigningEngine;
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of signing and verifying with jjwt's HMAC algorithms against the pooled ones, single-threaded; see
+ * {@link Contended} for the same on all cores.
+ *
+ * @author Rohtash Lakra
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class SigningEngineBenchmark {
+
+    @Param({"JJWT", "POOLED"})
+    public SigningEngine engine;
+
+    @Param({"HS256", "HS512"})
+    public String algorithm;
+
+    @Param({"SMALL", "MEDIUM"})
+    public String payloadSize;
+
+    private KeyRing.Entry signingKey;
+    private Map<String, Object> claims;
+    private String token;
+    // verifies every call
+    private SecretsService secretsService;
+
+    @Setup
+    public void setUp() {
+        secretsService = new SecretsService(new VerifiedClaimsCache(0, 0), SecretsService.DEFAULT_KEY_OVERLAP_MILLIS,
+                                            null, engine);
+        secretsService.initObject();
+        signingKey = secretsService.getSigningKey(algorithm);
+        claims = BenchmarkFixtures.claimsOf(payloadSize);
+        token = JWTUtils.jwtCompactBuilderWithClaims(claims, signingKey, engine);
+    }
+
+    @Benchmark
+    public String sign() {
+        return JWTUtils.jwtCompactBuilderWithClaims(claims, signingKey, engine);
+    }
+
+    @Benchmark
+    public Claims verify() {
+        return secretsService.parseToken(token);
+    }
+
+    /**
+     * The same benchmarks with one thread per core, sharing the key and its Mac pool.
+     */
+    @Threads(Threads.MAX)
+    public static class Contended extends SigningEngineBenchmark {
+    }
+}
@@ -0,0 +1,89 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.benchmark;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.VerifiedClaimsCache;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.KeyRing;
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode throughput of compact JWS tokens against CWT tokens of the same claims, single-threaded. The length
+ * of the token is reported as the <code>tokenLength</code> secondary result of each run.
+ *
+ * @author Rohtash Lakra
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class TokenFormatBenchmark {
+
+    @Param({"JWS", "CWT"})
+    public String format;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public String payloadSize;
+
+    private KeyRing.Entry signingKey;
+    private Map<String, Object> claims;
+    private String token;
+    // verifies every call
+    private SecretsService secretsService;
+
+    @Setup
+    public void setUp() {
+        secretsService = new SecretsService(new VerifiedClaimsCache(0, 0), SecretsService.DEFAULT_KEY_OVERLAP_MILLIS);
+        secretsService.initObject();
+        signingKey = secretsService.getHS256SigningKey();
+        claims = BenchmarkFixtures.claimsOf(payloadSize);
+        token = encodeToken();
+    }
+
+    @Benchmark
+    public String encode(TokenSize tokenSize) {
+        final String encoded = encodeToken();
+        tokenSize.tokenLength = encoded.length();
+        return encoded;
+    }
+
+    @Benchmark
+    public Claims decode(TokenSize tokenSize) {
+        tokenSize.tokenLength = token.length();
+        return secretsService.parseToken(token);
+    }
+
+    private String encodeToken() {
+        return ("CWT".equals(format) ? JWTUtils.cwtCompactBuilderWithClaims(claims, signingKey)
+                                     : JWTUtils.jwtCompactBuilderWithClaims(claims, signingKey));
+    }
+
+    /**
+     * Reports the token length next to the throughput, so the JWS and CWT sizes end up in the benchmark results.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class TokenSize {
+
+        // the length of the token in chars, set by every call
+        public long tokenLength;
+    }
+}
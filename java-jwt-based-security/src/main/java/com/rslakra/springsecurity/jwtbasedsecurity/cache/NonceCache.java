@@ -0,0 +1,161 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.cache;
+
+import java.time.Clock;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A memory-bounded set of seen token ids (<code>jti</code>) used to reject replayed tokens.
+ * <p>
+ * Ids are grouped into time buckets by the expiry of their token. The buckets live in a fixed ring sized to cover one
+ * token lifetime, and a bucket is replaced as a whole once all the tokens in it have expired, so there is never a
+ * per-entry sweep. Lookups and inserts are lock-free: the ring slots are swapped with CAS and each bucket is a
+ * concurrent set.
+ *
+ * @author Rohtash Lakra
+ */
+public final class NonceCache {
+
+    public static final int DEFAULT_BUCKETS_PER_LIFETIME = 2;
+    public static final int DEFAULT_MAX_ENTRIES = 1_000_000;
+
+    /**
+     * The outcome of {@link #register(String, long)}.
+     */
+    public enum Result {
+        // first time the id is seen
+        ACCEPTED,
+        // the id was already used
+        REPLAYED,
+        // the token has already expired, so there is no bucket for it
+        EXPIRED,
+        // the cache is full, or the token outlives the tracked window; fail closed rather than forget ids
+        REJECTED
+    }
+
+    private final AtomicReferenceArray<Bucket> ring;
+    private final long bucketWidthMillis;
+    private final int maxEntries;
+    private final Clock clock;
+
+    /**
+     * @param tokenLifetimeMillis the lifetime of the tokens whose ids are recorded
+     * @param bucketsPerLifetime  how many buckets one token lifetime is split into
+     * @param maxEntries          the maximum number of ids held at once
+     * @param clock               the clock used to expire buckets
+     */
+    public NonceCache(long tokenLifetimeMillis, int bucketsPerLifetime, int maxEntries, Clock clock) {
+        if (tokenLifetimeMillis <= 0 || bucketsPerLifetime <= 0) {
+            throw new IllegalArgumentException("tokenLifetimeMillis and bucketsPerLifetime must be positive");
+        }
+        this.bucketWidthMillis = Math.max(1, tokenLifetimeMillis / bucketsPerLifetime);
+        // the live buckets span [now, now + lifetime], plus one slot so the current bucket is never reused early
+        final int slots = (int) ((tokenLifetimeMillis + bucketWidthMillis - 1) / bucketWidthMillis) + 2;
+        this.ring = new AtomicReferenceArray<>(slots);
+        this.maxEntries = maxEntries;
+        this.clock = Objects.requireNonNull(clock, "clock");
+    }
+
+    /**
+     * @param tokenLifetimeMillis the lifetime of the tokens whose ids are recorded
+     */
+    public NonceCache(long tokenLifetimeMillis) {
+        this(tokenLifetimeMillis, DEFAULT_BUCKETS_PER_LIFETIME, DEFAULT_MAX_ENTRIES, Clock.systemUTC());
+    }
+
+    /**
+     * Records the id of a token, unless it was already seen.
+     *
+     * @param tokenId          the jti of the token
+     * @param expiresAtMillis  the exp of the token
+     * @return the outcome; only {@link Result#ACCEPTED} means the token may be used
+     */
+    public Result register(String tokenId, long expiresAtMillis) {
+        Objects.requireNonNull(tokenId, "tokenId");
+        final long now = clock.millis();
+        if (expiresAtMillis <= now) {
+            return Result.EXPIRED;
+        }
+
+        final long epoch = expiresAtMillis / bucketWidthMillis;
+        if (epoch - now / bucketWidthMillis >= ring.length() - 1) {
+            // expires beyond the configured lifetime; can't be tracked without evicting live ids
+            return Result.REJECTED;
+        }
+
+        final Bucket bucket = bucketFor(epoch);
+        if (bucket == null) {
+            return Result.EXPIRED;
+        }
+
+        if (bucket.ids.contains(tokenId)) {
+            return Result.REPLAYED;
+        }
+        if (size() >= maxEntries) {
+            return Result.REJECTED;
+        }
+        if (!bucket.ids.add(tokenId)) {
+            return Result.REPLAYED;
+        }
+
+        bucket.size.incrementAndGet();
+        return Result.ACCEPTED;
+    }
+
+    /**
+     * @return the number of ids held by the live buckets
+     */
+    public int size() {
+        final long nowEpoch = clock.millis() / bucketWidthMillis;
+        int size = 0;
+        for (int i = 0; i < ring.length(); i++) {
+            final Bucket bucket = ring.get(i);
+            if (bucket != null && bucket.epoch >= nowEpoch) {
+                size += bucket.size.get();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the bucket of the epoch, replacing the expired bucket that occupies its slot.
+     *
+     * @param epoch the bucket epoch
+     * @return the bucket, or null if the slot already moved on to a later epoch
+     */
+    private Bucket bucketFor(long epoch) {
+        final int slot = (int) (epoch % ring.length());
+        while (true) {
+            final Bucket current = ring.get(slot);
+            if (current != null && current.epoch == epoch) {
+                return current;
+            }
+            if (current != null && current.epoch > epoch) {
+                return null;
+            }
+
+            // the slot is empty or holds a bucket whose tokens have all expired: drop it as a whole
+            final Bucket replacement = new Bucket(epoch);
+            if (ring.compareAndSet(slot, current, replacement)) {
+                return replacement;
+            }
+        }
+    }
+
+    /**
+     * The ids of the tokens expiring within one bucket width.
+     */
+    private static final class Bucket {
+
+        private final long epoch;
+        private final Set<String> ids = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
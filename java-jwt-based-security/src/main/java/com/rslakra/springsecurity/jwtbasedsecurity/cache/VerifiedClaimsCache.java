@@ -0,0 +1,243 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.cache;
+
+import io.jsonwebtoken.Claims;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of already verified JWT claims, keyed by the SHA-256 digest of the compact token.
+ * <p>
+ * Each entry expires at the token's own <code>exp</code> (capped by <code>maxTtlMillis</code>). When the cache is
+ * full, a small sample of entries is inspected and the expired (or soonest to expire) one is evicted, so a put never
+ * scans the whole map.
+ * <p>
+ * The cache is generation-stamped: callers capture {@link #generation()} before verifying a token and pass it back
+ * on {@link #put(String, Claims, long)}, so a verification racing with {@link #invalidateAll()} (key rotation) never
+ * re-populates the cache with claims verified by a retired key.
+ *
+ * @author Rohtash Lakra
+ */
+public final class VerifiedClaimsCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+    public static final long DEFAULT_MAX_TTL_MILLIS = 5 * 60 * 1000L;
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    private final ConcurrentHashMap<TokenDigest, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final int maxSize;
+    private final long maxTtlMillis;
+    private final Clock clock;
+
+    /**
+     * @param maxSize      the maximum number of cached tokens
+     * @param maxTtlMillis the maximum time an entry may live, even if the token expires later (or never)
+     * @param clock        the clock used to expire entries
+     */
+    public VerifiedClaimsCache(int maxSize, long maxTtlMillis, Clock clock) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative");
+        }
+        this.maxSize = maxSize;
+        this.maxTtlMillis = maxTtlMillis;
+        this.clock = Objects.requireNonNull(clock, "clock");
+    }
+
+    /**
+     * @param maxSize      the maximum number of cached tokens
+     * @param maxTtlMillis the maximum time an entry may live
+     */
+    public VerifiedClaimsCache(int maxSize, long maxTtlMillis) {
+        this(maxSize, maxTtlMillis, Clock.systemUTC());
+    }
+
+    public VerifiedClaimsCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_TTL_MILLIS);
+    }
+
+    /**
+     * @return the current generation, to be passed back to {@link #put(String, Claims, long)}
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * @param token the compact JWT
+     * @return the verified claims, or null if the token is not cached or has expired
+     */
+    public Claims get(String token) {
+        if (maxSize == 0) {
+            return null;
+        }
+
+        final TokenDigest key = TokenDigest.of(token);
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        if (entry.isExpired(clock.millis())) {
+            if (entries.remove(key, entry)) {
+                evictions.increment();
+            }
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.claims;
+    }
+
+    /**
+     * Caches the verified claims of the token, unless the cache was invalidated since <code>generation</code>.
+     *
+     * @param token      the compact JWT
+     * @param claims     the verified claims
+     * @param generation the generation observed before the token was verified
+     */
+    public void put(String token, Claims claims, long generation) {
+        if (maxSize == 0 || generation != this.generation.get()) {
+            return;
+        }
+
+        final long now = clock.millis();
+        long expiresAt = now + maxTtlMillis;
+        final Date expiration = claims.getExpiration();
+        if (expiration != null) {
+            expiresAt = Math.min(expiresAt, expiration.getTime());
+        }
+        if (expiresAt <= now) {
+            return;
+        }
+
+        while (entries.size() >= maxSize) {
+            evictOne(now);
+        }
+        entries.put(TokenDigest.of(token), new Entry(claims, expiresAt));
+
+        // a rotation may have slipped in between the check above and the put
+        if (generation != this.generation.get()) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Drops every cached entry; called whenever the signing keys are rotated.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * @return the number of cached tokens
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return hit/miss/eviction counters and the current size
+     */
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) entries.size());
+        stats.put("maxSize", (long) maxSize);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    /**
+     * Samples a few entries and evicts an expired one, or the one closest to expiry.
+     *
+     * @param now the current time in millis
+     */
+    private void evictOne(long now) {
+        final Iterator<Map.Entry<TokenDigest, Entry>> iterator = entries.entrySet().iterator();
+        Map.Entry<TokenDigest, Entry> victim = null;
+        for (int i = 0; i < EVICTION_SAMPLE_SIZE && iterator.hasNext(); i++) {
+            final Map.Entry<TokenDigest, Entry> candidate = iterator.next();
+            if (candidate.getValue().isExpired(now)) {
+                victim = candidate;
+                break;
+            }
+            if (victim == null || candidate.getValue().expiresAt < victim.getValue().expiresAt) {
+                victim = candidate;
+            }
+        }
+
+        if (victim != null && entries.remove(victim.getKey(), victim.getValue())) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * The cached claims with their expiry.
+     */
+    private static final class Entry {
+
+        private final Claims claims;
+        private final long expiresAt;
+
+        private Entry(Claims claims, long expiresAt) {
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    /**
+     * The SHA-256 digest of a compact token; keeps keys small and fixed-size regardless of the token length.
+     */
+    private static final class TokenDigest {
+
+        private final byte[] digest;
+        private final int hashCode;
+
+        private TokenDigest(byte[] digest) {
+            this.digest = digest;
+            this.hashCode = Arrays.hashCode(digest);
+        }
+
+        private static TokenDigest of(String token) {
+            try {
+                final MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+                return new TokenDigest(messageDigest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException("SHA-256 is not available", ex);
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return this == other || (other instanceof TokenDigest && Arrays.equals(digest, ((TokenDigest) other).digest));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.compression;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtVisitor;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Maps long custom claim names, and common values of given claims, to short codes when a token is issued, and back
+ * when it is parsed.
+ * <p>
+ * The dictionary is versioned: tokens name the version they were compressed with in their <code>cdv</code> header, and
+ * every version stays loaded, so tokens issued before a new version was rolled out keep decoding. Registered claims
+ * (<code>iss</code>, <code>exp</code>, ...) are never mapped. A token whose claims already use a code as a name or as a
+ * mapped value would decode ambiguously, so it is issued uncompressed instead.
+ * <p>
+ * The versions are read from a JSON file:
+ * <pre>
+ * {
+ *   "1": {
+ *     "names": {"permissions": "prm", "tenantId": "tid"},
+ *     "values": {"permissions": {"resource:read": "r"}}
+ *   }
+ * }
+ * </pre>
+ * Values are mapped when the claim is a string, or a list of strings.
+ *
+ * @author Rohtash Lakra
+ */
+@Service
+public class ClaimDictionary {
+
+    public static final String HEADER = "cdv";
+    public static final ClaimDictionary EMPTY = new ClaimDictionary(Map.of(), 0);
+
+    private static final Set<String> REGISTERED_CLAIMS = Set.of("iss", "sub", "aud", "exp", "nbf", "iat", "jti");
+
+    private final Map<Integer, Version> versions;
+    // the version new tokens are compressed with, or null if disabled
+    private final Version current;
+
+    /**
+     * @param objectMapper   the JSON mapper
+     * @param resourceLoader the loader of the dictionary file
+     * @param location       the dictionary file, or empty to disable the dictionary
+     * @param currentVersion the version new tokens are compressed with, 0 for the highest one
+     */
+    @Autowired
+    public ClaimDictionary(ObjectMapper objectMapper, ResourceLoader resourceLoader,
+                           @Value("${jwt.claims.dictionary.location:}") String location,
+                           @Value("${jwt.claims.dictionary.version:0}") int currentVersion) {
+        this(location.isBlank() ? Map.of() : read(objectMapper, resourceLoader.getResource(location)),
+             currentVersion);
+    }
+
+    /**
+     * @param definitions    the names and values maps by version
+     * @param currentVersion the version new tokens are compressed with, 0 for the highest one
+     * @throws IllegalArgumentException if a version is invalid or the current version doesn't exist
+     */
+    public ClaimDictionary(Map<Integer, Definition> definitions, int currentVersion) {
+        final Map<Integer, Version> loaded = new HashMap<>();
+        definitions.forEach((version, definition) -> loaded.put(version, new Version(version, definition)));
+        this.versions = Map.copyOf(loaded);
+
+        final int selected = (currentVersion > 0 ? currentVersion
+                                                 : definitions.keySet().stream().max(Integer::compare).orElse(0));
+        if (selected > 0 && !versions.containsKey(selected)) {
+            throw new IllegalArgumentException("Unknown claim dictionary version: " + selected);
+        }
+        this.current = versions.get(selected);
+    }
+
+    /**
+     * @return the version new tokens are compressed with, or 0 if the dictionary is disabled
+     */
+    public int getCurrentVersion() {
+        return (current == null ? 0 : current.version);
+    }
+
+    /**
+     * Compresses the claims with the current version.
+     *
+     * @param claims the claims
+     * @return the compressed claims, or null if the dictionary is disabled, shortens nothing or would be ambiguous
+     */
+    public Map<String, Object> compress(Map<String, Object> claims) {
+        return (current == null ? null : current.compress(claims));
+    }
+
+    /**
+     * Expands claims compressed with the version named by the <code>cdv</code> header.
+     *
+     * @param claims  the verified claims
+     * @param version the value of the <code>cdv</code> header
+     * @return the expanded claims
+     * @throws MalformedJwtException if the version is unknown
+     */
+    public Claims expand(Claims claims, Object version) {
+        final Version dictionary = (version instanceof Integer ? versions.get(version) : null);
+        if (dictionary == null) {
+            throw new MalformedJwtException("Unknown claim dictionary version: " + version);
+        }
+        return Jwts.claims().add(dictionary.expand(claims)).build();
+    }
+
+    /**
+     * Expands the claims of a verified token if its <code>cdv</code> header names the version they were compressed
+     * with.
+     *
+     * @param jws the verified token
+     * @return the token itself if it has no <code>cdv</code> header, otherwise the token with its claims expanded
+     * @throws MalformedJwtException if the version is unknown
+     */
+    public Jws<Claims> expand(Jws<Claims> jws) {
+        final Object version = jws.getHeader().get(HEADER);
+        return (version == null ? jws : new ExpandedJws(jws, expand(jws.getPayload(), version)));
+    }
+
+    /**
+     * @param objectMapper the JSON mapper
+     * @param resource     the dictionary file
+     * @return the definitions by version
+     */
+    private static Map<Integer, Definition> read(ObjectMapper objectMapper, Resource resource) {
+        try (InputStream input = resource.getInputStream()) {
+            return new TreeMap<>(objectMapper.readValue(input, new TypeReference<Map<Integer, Definition>>() {
+            }));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read claim dictionary: " + resource, ex);
+        }
+    }
+
+    /**
+     * The names and values maps of a version, as written in the dictionary file.
+     */
+    public static class Definition {
+
+        private Map<String, String> names = Map.of();
+        private Map<String, Map<String, String>> values = Map.of();
+
+        public Definition() {
+        }
+
+        /**
+         * @param names  the codes by claim name
+         * @param values the codes by value, by claim name
+         */
+        public Definition(Map<String, String> names, Map<String, Map<String, String>> values) {
+            setNames(names);
+            setValues(values);
+        }
+
+        public Map<String, String> getNames() {
+            return names;
+        }
+
+        public void setNames(Map<String, String> names) {
+            this.names = (names == null ? Map.of() : names);
+        }
+
+        public Map<String, Map<String, String>> getValues() {
+            return values;
+        }
+
+        public void setValues(Map<String, Map<String, String>> values) {
+            this.values = (values == null ? Map.of() : values);
+        }
+    }
+
+    /**
+     * A version with the lookups of both directions.
+     */
+    private static final class Version {
+
+        private final int version;
+        private final Map<String, String> nameCodes;
+        private final Map<String, String> names;
+        // by the long claim name
+        private final Map<String, Map<String, String>> valueCodes;
+        private final Map<String, Map<String, String>> values;
+
+        private Version(int version, Definition definition) {
+            if (version <= 0) {
+                throw new IllegalArgumentException("Claim dictionary versions start at 1: " + version);
+            }
+            this.version = version;
+            this.nameCodes = Map.copyOf(definition.getNames());
+            this.names = inverse(nameCodes, "name of version " + version);
+            final Set<String> claimNames = new HashSet<>(nameCodes.keySet());
+            claimNames.addAll(names.keySet());
+            for (String claimName : claimNames) {
+                if (REGISTERED_CLAIMS.contains(claimName)) {
+                    throw new IllegalArgumentException("Registered claim: " + claimName + " can't be mapped");
+                }
+            }
+            for (String code : names.keySet()) {
+                if (nameCodes.containsKey(code)) {
+                    throw new IllegalArgumentException("Claim code: " + code + " is also a mapped claim name");
+                }
+            }
+
+            final Map<String, Map<String, String>> valueCodes = new HashMap<>();
+            final Map<String, Map<String, String>> values = new HashMap<>();
+            definition.getValues().forEach((claimName, codes) -> {
+                valueCodes.put(claimName, Map.copyOf(codes));
+                values.put(claimName, inverse(codes, "value of claim " + claimName + " in version " + version));
+            });
+            this.valueCodes = Map.copyOf(valueCodes);
+            this.values = Map.copyOf(values);
+        }
+
+        /**
+         * @param claims the claims
+         * @return the compressed claims, or null if nothing is shortened or a name or value is already a code
+         */
+        private Map<String, Object> compress(Map<String, Object> claims) {
+            final Map<String, Object> compressed = new LinkedHashMap<>(claims.size() * 2);
+            boolean shortened = false;
+            for (Map.Entry<String, Object> entry : claims.entrySet()) {
+                final String claimName = entry.getKey();
+                final String code = nameCodes.get(claimName);
+                if (code == null && names.containsKey(claimName)) {
+                    return null;
+                }
+
+                Object value = entry.getValue();
+                final Map<String, String> codes = valueCodes.get(claimName);
+                if (codes != null) {
+                    final Object compressedValue = replace(value, codes, values.get(claimName).keySet());
+                    if (compressedValue == null && value != null) {
+                        return null;
+                    }
+                    shortened |= (compressedValue != value);
+                    value = compressedValue;
+                }
+
+                shortened |= (code != null);
+                compressed.put(code != null ? code : claimName, value);
+            }
+            return (shortened ? compressed : null);
+        }
+
+        /**
+         * @param claims the compressed claims
+         * @return the claims under their long names, with their long values
+         */
+        private Map<String, Object> expand(Map<String, Object> claims) {
+            final Map<String, Object> expanded = new LinkedHashMap<>(claims.size() * 2);
+            for (Map.Entry<String, Object> entry : claims.entrySet()) {
+                final String claimName = names.getOrDefault(entry.getKey(), entry.getKey());
+                Object value = entry.getValue();
+                final Map<String, String> claimValues = values.get(claimName);
+                if (claimValues != null) {
+                    value = replace(value, claimValues, Set.of());
+                }
+                expanded.put(claimName, value);
+            }
+            return expanded;
+        }
+
+        /**
+         * @param value        a string, a list or any other value
+         * @param replacements the replacements of strings
+         * @param reserved     strings that may not appear unreplaced
+         * @return the value with its strings replaced, the value itself if nothing was replaced, or null if a reserved
+         * string was found
+         */
+        private static Object replace(Object value, Map<String, String> replacements, Set<String> reserved) {
+            if (value instanceof String) {
+                final String replacement = replacements.get(value);
+                if (replacement != null) {
+                    return replacement;
+                }
+                return (reserved.contains(value) ? null : value);
+            }
+            if (!(value instanceof List<?> list)) {
+                return value;
+            }
+
+            List<Object> replaced = null;
+            for (int i = 0; i < list.size(); i++) {
+                final Object element = list.get(i);
+                final Object replacement = replace(element, replacements, reserved);
+                if (replacement == null && element != null) {
+                    return null;
+                }
+                if (replacement != element && replaced == null) {
+                    replaced = new ArrayList<>(list.subList(0, i));
+                }
+                if (replaced != null) {
+                    replaced.add(replacement);
+                }
+            }
+            return (replaced == null ? value : Collections.unmodifiableList(replaced));
+        }
+
+        /**
+         * @param codes the codes by name or value
+         * @param what  what is mapped, for the error message
+         * @return the names or values by code
+         */
+        private static Map<String, String> inverse(Map<String, String> codes, String what) {
+            final Map<String, String> inverse = new HashMap<>();
+            codes.forEach((name, code) -> {
+                if (code == null || code.isEmpty() || inverse.put(code, name) != null) {
+                    throw new IllegalArgumentException("Duplicate or empty code: " + code + " of a " + what);
+                }
+            });
+            return Map.copyOf(inverse);
+        }
+    }
+
+    /**
+     * A verified token with its claims expanded; the header, digest and signature are the token's.
+     */
+    private static final class ExpandedJws implements Jws<Claims> {
+
+        private final Jws<Claims> jws;
+        private final Claims claims;
+
+        private ExpandedJws(Jws<Claims> jws, Claims claims) {
+            this.jws = jws;
+            this.claims = claims;
+        }
+
+        @Override
+        public JwsHeader getHeader() {
+            return jws.getHeader();
+        }
+
+        @Override
+        public Claims getPayload() {
+            return claims;
+        }
+
+        @Deprecated
+        @Override
+        public Claims getBody() {
+            return claims;
+        }
+
+        @Override
+        public byte[] getDigest() {
+            return jws.getDigest();
+        }
+
+        @Deprecated
+        @Override
+        public String getSignature() {
+            return jws.getSignature();
+        }
+
+        @Override
+        public <T> T accept(JwtVisitor<T> visitor) {
+            return visitor.visit(this);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.compression;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.io.CompressionAlgorithm;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides per token whether compressing the claims pays off, and keeps the compression ratio and time per claim shape.
+ * <p>
+ * Payloads below the size threshold are never compressed: DEFLATE adds a header and a checksum, so small payloads come
+ * out bigger. Above it, the ratio observed so far for the shape of the claims (their sorted names) decides: once a
+ * shape has enough samples and doesn't shrink, it's left uncompressed, except for one probe every
+ * {@link #PROBE_INTERVAL} tokens, so the decision follows changes in the claim values.
+ *
+ * @author Rohtash Lakra
+ */
+@Service
+public class CompressionPolicy {
+
+    public static final int DEFAULT_THRESHOLD_BYTES = 256;
+    public static final String NONE = "none";
+    public static final int MIN_SAMPLES = 32;
+    public static final int PROBE_INTERVAL = 1024;
+    // distinct shapes tracked; any further shape shares one bucket
+    public static final int MAX_SHAPES = 64;
+    public static final String OTHER_SHAPE = "*";
+
+    private final ObjectMapper objectMapper;
+    private final PooledDeflateAlgorithm deflate;
+    private final int thresholdBytes;
+    private final Map<String, ShapeStats> shapes = new ConcurrentHashMap<>();
+
+    /**
+     * @param objectMapper   the JSON mapper used to measure the claims
+     * @param thresholdBytes the serialized claims size from which compression is considered
+     */
+    @Autowired
+    public CompressionPolicy(ObjectMapper objectMapper,
+                             @Value("${jwt.compression.threshold-bytes:" + DEFAULT_THRESHOLD_BYTES + "}")
+                             int thresholdBytes) {
+        this(objectMapper, PooledDeflateAlgorithm.DEFAULT, thresholdBytes);
+    }
+
+    /**
+     * @param objectMapper   the JSON mapper used to measure the claims
+     * @param deflate        the pooled DEF codec
+     * @param thresholdBytes the serialized claims size from which compression is considered
+     */
+    public CompressionPolicy(ObjectMapper objectMapper, PooledDeflateAlgorithm deflate, int thresholdBytes) {
+        this.objectMapper = objectMapper;
+        this.deflate = deflate;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    /**
+     * Returns the codec to compress the claims with. The returned codec records the ratio and the time of the
+     * compression under the shape of the claims.
+     *
+     * @param claims the claims to be signed
+     * @return the codec, or null to leave the payload uncompressed
+     */
+    public CompressionAlgorithm select(Map<String, Object> claims) {
+        final ShapeStats stats = statsOf(claims);
+        stats.tokens.increment();
+
+        final long rawBytes = serializedSize(claims);
+        if (rawBytes < thresholdBytes || !stats.paysOff()) {
+            stats.skipped.increment();
+            stats.skippedBytes.add(rawBytes);
+            return null;
+        }
+
+        return new MeasuredAlgorithm(stats);
+    }
+
+    /**
+     * @param codec the codec returned by {@link #select(Map)}
+     * @return the id of the codec, or {@link #NONE}
+     */
+    public static String codecId(CompressionAlgorithm codec) {
+        return (codec == null ? NONE : codec.getId());
+    }
+
+    /**
+     * @return the threshold, the pool state, and per claim shape: tokens, compressed and skipped counts, raw and
+     * compressed bytes, the compression ratio in percent and the mean compression time in nanoseconds
+     */
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("thresholdBytes", thresholdBytes);
+        stats.put("pool", deflate.getStats());
+        final Map<String, Map<String, Long>> byShape = new LinkedHashMap<>();
+        shapes.forEach((shape, shapeStats) -> byShape.put(shape, shapeStats.toMap()));
+        stats.put("shapes", byShape);
+        return stats;
+    }
+
+    /**
+     * @param claims the claims
+     * @return the stats of the shape of the claims
+     */
+    private ShapeStats statsOf(Map<String, Object> claims) {
+        final String shape = String.join(",", new TreeSet<>(claims.keySet()));
+        ShapeStats stats = shapes.get(shape);
+        if (stats == null) {
+            final String key = shapes.size() < MAX_SHAPES ? shape : OTHER_SHAPE;
+            stats = shapes.computeIfAbsent(key, ignored -> new ShapeStats());
+        }
+        return stats;
+    }
+
+    /**
+     * @param claims the claims
+     * @return the size of the claims serialized as JSON, counted without buffering them
+     */
+    private long serializedSize(Map<String, Object> claims) {
+        final CountingOutputStream counter = new CountingOutputStream(OutputStream.nullOutputStream());
+        try {
+            objectMapper.writeValue(counter, claims);
+        } catch (IOException ex) {
+            throw new JwtException("Unable to serialize claims", ex);
+        }
+        return counter.count;
+    }
+
+    /**
+     * The pooled DEF codec, measuring every payload it compresses.
+     */
+    private final class MeasuredAlgorithm implements CompressionAlgorithm {
+
+        private final ShapeStats stats;
+
+        private MeasuredAlgorithm(ShapeStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public String getId() {
+            return deflate.getId();
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) {
+            final long start = System.nanoTime();
+            final CountingOutputStream compressed = new CountingOutputStream(out);
+            return new CountingOutputStream(deflate.compress(compressed)) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    super.close();
+                    stats.record(count, compressed.count, System.nanoTime() - start);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return deflate.decompress(in);
+        }
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        protected long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * The counters of one claim shape.
+     */
+    private static final class ShapeStats {
+
+        private final LongAdder tokens = new LongAdder();
+        private final LongAdder compressed = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder skippedBytes = new LongAdder();
+        private final LongAdder rawBytes = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder compressNanos = new LongAdder();
+
+        /**
+         * @return true until the shape has enough samples that don't shrink, and then on every probe
+         */
+        private boolean paysOff() {
+            final long samples = compressed.sum();
+            if (samples < MIN_SAMPLES || tokens.sum() % PROBE_INTERVAL == 0) {
+                return true;
+            }
+            return compressedBytes.sum() < rawBytes.sum();
+        }
+
+        private void record(long raw, long compressedSize, long nanos) {
+            compressed.increment();
+            rawBytes.add(raw);
+            compressedBytes.add(compressedSize);
+            compressNanos.add(nanos);
+        }
+
+        private Map<String, Long> toMap() {
+            final Map<String, Long> map = new LinkedHashMap<>();
+            final long samples = compressed.sum();
+            final long raw = rawBytes.sum();
+            map.put("tokens", tokens.sum());
+            map.put("compressed", samples);
+            map.put("skipped", skipped.sum());
+            map.put("skippedBytes", skippedBytes.sum());
+            map.put("rawBytes", raw);
+            map.put("compressedBytes", compressedBytes.sum());
+            map.put("ratioPercent", raw == 0 ? 0 : compressedBytes.sum() * 100 / raw);
+            map.put("meanCompressNanos", samples == 0 ? 0 : compressNanos.sum() / samples);
+            return map;
+        }
+    }
+}
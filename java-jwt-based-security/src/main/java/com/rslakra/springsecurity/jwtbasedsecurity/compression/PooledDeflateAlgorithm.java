@@ -0,0 +1,137 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.compression;
+
+import io.jsonwebtoken.io.CompressionAlgorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The JWA <code>DEF</code> compression algorithm, backed by pools of reusable {@link Deflater} and
+ * {@link Inflater} instances.
+ * <p>
+ * Each Deflater/Inflater holds native zlib memory that is only released by <code>end()</code>, so creating one per
+ * token is costly. Here a stream borrows an instance from the pool and hands it back, reset, when it is closed. When
+ * the pool is empty a new instance is created, and an instance that doesn't fit back into a full pool is ended. Tokens
+ * are byte-for-byte what jjwt's own <code>DEF</code> writes and reads.
+ *
+ * @author Rohtash Lakra
+ */
+public final class PooledDeflateAlgorithm implements CompressionAlgorithm {
+
+    public static final String ID = "DEF";
+
+    public static final PooledDeflateAlgorithm DEFAULT =
+        new PooledDeflateAlgorithm(Runtime.getRuntime().availableProcessors() * 2);
+
+    private final BlockingQueue<Deflater> deflaters;
+    private final BlockingQueue<Inflater> inflaters;
+    private final LongAdder deflatersCreated = new LongAdder();
+    private final LongAdder inflatersCreated = new LongAdder();
+
+    /**
+     * @param poolSize the maximum number of idle instances kept of each kind
+     */
+    public PooledDeflateAlgorithm(int poolSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize must be positive");
+        }
+        this.deflaters = new ArrayBlockingQueue<>(poolSize);
+        this.inflaters = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            // zlib-wrapped, like jjwt, so either implementation reads the other's tokens
+            deflater = new Deflater();
+            deflatersCreated.increment();
+        }
+
+        final Deflater borrowed = deflater;
+        return new DeflaterOutputStream(out, borrowed) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    release(borrowed);
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+            inflatersCreated.increment();
+        }
+
+        final Inflater borrowed = inflater;
+        return new InflaterInputStream(in, borrowed) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    release(borrowed);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return how many Deflater/Inflater instances were created and are idle in the pools
+     */
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("deflatersCreated", deflatersCreated.sum());
+        stats.put("deflatersIdle", (long) deflaters.size());
+        stats.put("inflatersCreated", inflatersCreated.sum());
+        stats.put("inflatersIdle", (long) inflaters.size());
+        return stats;
+    }
+
+    private void release(Deflater deflater) {
+        deflater.reset();
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private void release(Inflater inflater) {
+        inflater.reset();
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+}
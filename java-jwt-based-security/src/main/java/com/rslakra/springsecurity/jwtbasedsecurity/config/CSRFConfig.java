@@ -1,6 +1,8 @@
 package com.rslakra.springsecurity.jwtbasedsecurity.config;
 
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.NonceCache;
 import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,17 +12,31 @@ import org.springframework.security.web.csrf.CsrfTokenRepository;
 public class CSRFConfig {
 
     private final SecretsService secretsService;
+    private final JWTCsrfTokenRepository.Storage storage;
 
     /**
      * @param secretsService the secrets service
+     * @param storage        where CSRF tokens are kept (session or cookie)
      */
-    public CSRFConfig(SecretsService secretsService) {
+    public CSRFConfig(SecretsService secretsService,
+                      @Value("${jwt.csrf.storage:session}") JWTCsrfTokenRepository.Storage storage) {
         this.secretsService = secretsService;
+        this.storage = storage;
     }
 
     @Bean
     @ConditionalOnMissingBean
     public CsrfTokenRepository jwtCsrfTokenRepository() {
-        return new JWTCsrfTokenRepository(secretsService.getHS256SecretKey());
+        return new JWTCsrfTokenRepository(secretsService::getHS256SigningKey, storage,
+                                          secretsService.getSigningEngine());
+    }
+
+    /**
+     * @return the seen jti values of CSRF tokens, bucketed by the CSRF token lifetime
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public NonceCache csrfNonceCache() {
+        return new NonceCache(JWTCsrfTokenRepository.TOKEN_VALIDITY_MILLIS);
     }
 }
@@ -1,32 +1,94 @@
 package com.rslakra.springsecurity.jwtbasedsecurity.config;
 
+import com.rslakra.springsecurity.jwtbasedsecurity.security.KeyRing;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.SigningEngine;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
 import io.jsonwebtoken.Jwts;
+import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
 import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.security.web.csrf.CsrfTokenRepository;
 import org.springframework.security.web.csrf.DefaultCsrfToken;
 
 import javax.crypto.SecretKey;
+import java.time.Duration;
 import java.util.Date;
 import java.util.UUID;
+import java.util.function.Supplier;
 
+/**
+ * Issues short-lived, self-validating JWTs as CSRF tokens.
+ * <p>
+ * With {@link Storage#SESSION} the token is kept in the <code>HttpSession</code>. With {@link Storage#COOKIE} it is
+ * written to an HttpOnly cookie (and echoed in the <code>X-CSRF-TOKEN</code> response header) and read back from the
+ * cookie, so anonymous visitors cost no server-side session. In both modes Spring Security defers loading the token,
+ * so one is only minted and stored when a view actually reads <code>_csrf</code>.
+ */
 public class JWTCsrfTokenRepository implements CsrfTokenRepository {
 
+    /**
+     * Where the issued token is kept between the form render and the POST.
+     */
+    public enum Storage {
+        SESSION, COOKIE
+    }
+
+    // how long a CSRF token stays valid; also sizes the replay-protection buckets
+    public static final long TOKEN_VALIDITY_MILLIS = 1000 * 30; // 30 seconds
+
     private static final Logger LOGGER = LoggerFactory.getLogger(JWTCsrfTokenRepository.class);
     private static final String DEFAULT_CSRF_TOKEN_ATTR_NAME = CSRFConfig.class.getName()
         .concat(".CSRF_TOKEN");
+    public static final String CSRF_HEADER_NAME = "X-CSRF-TOKEN";
+    public static final String CSRF_PARAMETER_NAME = "_csrf";
+    public static final String CSRF_COOKIE_NAME = "XSRF-TOKEN";
 
+    private final Supplier<KeyRing.Entry> signingKey;
     private final SecretKey secretKey;
+    private final Storage storage;
+    private final SigningEngine signingEngine;
 
     /**
      * @param secretKey the secret key for signing
      */
     public JWTCsrfTokenRepository(SecretKey secretKey) {
+        this.signingKey = null;
         this.secretKey = secretKey;
+        this.storage = Storage.SESSION;
+        this.signingEngine = SigningEngine.DEFAULT;
+    }
+
+    /**
+     * @param signingKey supplies the current keyring entry, so tokens follow key rotations
+     */
+    public JWTCsrfTokenRepository(Supplier<KeyRing.Entry> signingKey) {
+        this(signingKey, Storage.SESSION);
+    }
+
+    /**
+     * @param signingKey supplies the current keyring entry, so tokens follow key rotations
+     * @param storage    where issued tokens are kept
+     */
+    public JWTCsrfTokenRepository(Supplier<KeyRing.Entry> signingKey, Storage storage) {
+        this(signingKey, storage, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * @param signingKey    supplies the current keyring entry, so tokens follow key rotations
+     * @param storage       where issued tokens are kept
+     * @param signingEngine the HMAC implementation tokens are signed with
+     */
+    public JWTCsrfTokenRepository(Supplier<KeyRing.Entry> signingKey, Storage storage, SigningEngine signingEngine) {
+        this.signingKey = signingKey;
+        this.secretKey = null;
+        this.storage = storage;
+        this.signingEngine = signingEngine;
     }
 
     /**
@@ -40,17 +102,17 @@ public class JWTCsrfTokenRepository implements CsrfTokenRepository {
             .replace("-", "");
 
         Date now = new Date();
-        Date exp = new Date(System.currentTimeMillis() + (1000 * 30)); // 30 seconds
+        Date exp = new Date(now.getTime() + TOKEN_VALIDITY_MILLIS);
 
-        String token = Jwts.builder()
+        var builder = Jwts.builder()
             .id(id)
             .issuedAt(now)
             .notBefore(now)
-            .expiration(exp)
-            .signWith(secretKey)
-            .compact();
+            .expiration(exp);
+        String token = (signingKey == null ? JWTUtils.compact(builder, secretKey, signingEngine)
+                                           : JWTUtils.compact(builder, signingKey.get(), signingEngine));
 
-        return new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", token);
+        return new DefaultCsrfToken(CSRF_HEADER_NAME, CSRF_PARAMETER_NAME, token);
     }
 
     /**
@@ -60,7 +122,9 @@ public class JWTCsrfTokenRepository implements CsrfTokenRepository {
      */
     @Override
     public void saveToken(CsrfToken token, HttpServletRequest request, HttpServletResponse response) {
-        if (token == null) {
+        if (storage == Storage.COOKIE) {
+            saveTokenInCookie(token, request, response);
+        } else if (token == null) {
             HttpSession session = request.getSession(false);
             if (session != null) {
                 session.removeAttribute(DEFAULT_CSRF_TOKEN_ATTR_NAME);
@@ -77,10 +141,64 @@ public class JWTCsrfTokenRepository implements CsrfTokenRepository {
      */
     @Override
     public CsrfToken loadToken(HttpServletRequest request) {
+        // a GET always gets a freshly minted token
+        if ("GET".equals(request.getMethod())) {
+            return null;
+        }
+
+        if (storage == Storage.COOKIE) {
+            return loadTokenFromCookie(request);
+        }
+
         HttpSession session = request.getSession(false);
-        if (session == null || "GET".equals(request.getMethod())) {
+        if (session == null) {
             return null;
         }
         return (CsrfToken) session.getAttribute(DEFAULT_CSRF_TOKEN_ATTR_NAME);
     }
+
+    /**
+     * Writes the token to an HttpOnly cookie that lives as long as the token, or clears the cookie.
+     *
+     * @param token    the CSRF token, null to clear
+     * @param request  the HTTP request
+     * @param response the HTTP response
+     */
+    private void saveTokenInCookie(CsrfToken token, HttpServletRequest request, HttpServletResponse response) {
+        if (response.isCommitted()) {
+            LOGGER.warn("Response already committed, the CSRF cookie cannot be written for {}",
+                        request.getRequestURI());
+            return;
+        }
+
+        String path = request.getContextPath().isEmpty() ? "/" : request.getContextPath();
+        ResponseCookie cookie = ResponseCookie.from(CSRF_COOKIE_NAME, (token == null ? "" : token.getToken()))
+            .path(path)
+            .httpOnly(true)
+            .secure(request.isSecure())
+            .sameSite("Strict")
+            .maxAge(token == null ? Duration.ZERO : Duration.ofMillis(TOKEN_VALIDITY_MILLIS))
+            .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+        if (token != null) {
+            response.setHeader(token.getHeaderName(), token.getToken());
+        }
+    }
+
+    /**
+     * @param request the HTTP request
+     * @return the token of the CSRF cookie, or null
+     */
+    private CsrfToken loadTokenFromCookie(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (CSRF_COOKIE_NAME.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                    return new DefaultCsrfToken(CSRF_HEADER_NAME, CSRF_PARAMETER_NAME, cookie.getValue());
+                }
+            }
+        }
+
+        return null;
+    }
 }
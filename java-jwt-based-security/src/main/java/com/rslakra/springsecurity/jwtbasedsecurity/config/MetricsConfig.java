@@ -0,0 +1,27 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.config;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.metrics.JwtMetrics;
+import com.rslakra.springsecurity.jwtbasedsecurity.metrics.JwtMetricsEndpoint;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Installs the JWT timers when <code>jwt.metrics.enabled</code> is true (the default). When it is false nothing is
+ * installed, and the instrumented sign/verify paths skip even the clock reads.
+ */
+@Configuration
+@ConditionalOnProperty(name = "jwt.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class MetricsConfig {
+
+    @Bean(destroyMethod = "close")
+    public JwtMetrics jwtMetrics(MeterRegistry meterRegistry) {
+        return JwtMetrics.install(meterRegistry);
+    }
+
+    @Bean
+    public JwtMetricsEndpoint jwtMetricsEndpoint(JwtMetrics jwtMetrics) {
+        return new JwtMetricsEndpoint(jwtMetrics);
+    }
+}
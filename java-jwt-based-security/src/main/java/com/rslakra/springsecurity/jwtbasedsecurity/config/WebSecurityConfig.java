@@ -1,7 +1,10 @@
 package com.rslakra.springsecurity.jwtbasedsecurity.config;
 
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.NonceCache;
 import com.rslakra.springsecurity.jwtbasedsecurity.filter.JwtCsrfValidatorFilter;
+import com.rslakra.springsecurity.jwtbasedsecurity.filter.PathRuleMatcher;
 import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -15,17 +18,31 @@ import org.springframework.security.web.csrf.CsrfTokenRequestAttributeHandler;
 @EnableWebSecurity
 public class WebSecurityConfig {
 
+    public static final String DEFAULT_IGNORED_CSRF_PATHS =
+        "/dynamic-builder-batch,/dynamic-builder-compress,/dynamic-builder-general,/dynamic-builder-specific,"
+        + "/parser-bulk,/set-secrets";
+
     private final CsrfTokenRepository jwtCsrfTokenRepository;
     private final SecretsService secretsService;
+    private final NonceCache csrfNonceCache;
 
-    // ordered so we can use binary search below
-    private final String[] ignoreCsrfAntMatchers = {
-        "/dynamic-builder-compress", "/dynamic-builder-general", "/dynamic-builder-specific", "/set-secrets"
-    };
+    // compiled once; shared by the CsrfFilter and the JwtCsrfValidatorFilter
+    private final PathRuleMatcher ignoredCsrfPaths;
 
-    public WebSecurityConfig(CsrfTokenRepository jwtCsrfTokenRepository, SecretsService secretsService) {
+    /**
+     * @param jwtCsrfTokenRepository the CSRF token repository
+     * @param secretsService         the secrets service
+     * @param csrfNonceCache         the seen CSRF token ids
+     * @param ignoredCsrfPaths       the CSRF-exempt path rules, e.g. <code>POST /api/**</code>
+     */
+    public WebSecurityConfig(CsrfTokenRepository jwtCsrfTokenRepository, SecretsService secretsService,
+                             NonceCache csrfNonceCache,
+                             @Value("${jwt.csrf.ignored-paths:" + DEFAULT_IGNORED_CSRF_PATHS + "}")
+                             String[] ignoredCsrfPaths) {
         this.jwtCsrfTokenRepository = jwtCsrfTokenRepository;
         this.secretsService = secretsService;
+        this.csrfNonceCache = csrfNonceCache;
+        this.ignoredCsrfPaths = PathRuleMatcher.compile(ignoredCsrfPaths);
     }
 
     /**
@@ -39,11 +56,11 @@ public class WebSecurityConfig {
         requestHandler.setCsrfRequestAttributeName("_csrf");
 
         http
-            .addFilterAfter(new JwtCsrfValidatorFilter(secretsService, ignoreCsrfAntMatchers), CsrfFilter.class)
+            .addFilterAfter(new JwtCsrfValidatorFilter(secretsService, csrfNonceCache, ignoredCsrfPaths), CsrfFilter.class)
             .csrf(csrf -> csrf
                 .csrfTokenRepository(jwtCsrfTokenRepository)
                 .csrfTokenRequestHandler(requestHandler)
-                .ignoringRequestMatchers(ignoreCsrfAntMatchers)
+                .ignoringRequestMatchers(ignoredCsrfPaths)
             )
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers("/**").permitAll()
@@ -8,6 +8,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class BaseController {
 
     /**
@@ -17,6 +20,14 @@ public class BaseController {
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler({SignatureException.class, MalformedJwtException.class, JwtException.class})
     public JwtResponse exception(Exception ex) {
+        return errorResponse(ex);
+    }
+
+    /**
+     * @param ex the exception
+     * @return JwtResponse with error details
+     */
+    protected static JwtResponse errorResponse(Exception ex) {
         JwtResponse response = new JwtResponse();
         response.setStatus(JwtResponse.Status.ERROR);
         response.setMessage(ex.getMessage());
@@ -24,4 +35,17 @@ public class BaseController {
 
         return response;
     }
+
+    /**
+     * @param prefix the thread name prefix
+     * @return a factory of daemon threads named after the prefix
+     */
+    protected static ThreadFactory newDaemonThreadFactory(String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 }
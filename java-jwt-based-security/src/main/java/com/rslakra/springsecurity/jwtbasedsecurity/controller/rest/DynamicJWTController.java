@@ -1,59 +1,157 @@
 package com.rslakra.springsecurity.jwtbasedsecurity.controller.rest;
 
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rslakra.springsecurity.jwtbasedsecurity.compression.ClaimDictionary;
+import com.rslakra.springsecurity.jwtbasedsecurity.compression.CompressionPolicy;
 import com.rslakra.springsecurity.jwtbasedsecurity.controller.BaseController;
 import com.rslakra.springsecurity.jwtbasedsecurity.model.JwtResponse;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.KeyRing;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.SigningEngine;
 import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.CompressionAlgorithm;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 public class DynamicJWTController extends BaseController {
 
+    public static final String JWS_FORMAT = "jws";
+    public static final String CWT_FORMAT = "cwt";
+
     private final SecretsService secretsService;
+    private final CompressionPolicy compressionPolicy;
+    private final ClaimDictionary claimDictionary;
+    private final ObjectWriter batchWriter;
+    private final int maxBatchSize;
+    private final ExecutorService batchExecutor;
+    // how many tokens of a batch are signed ahead of the one being written
+    private final int batchWindow;
 
     /**
-     * @param secretsService the secrets service
+     * @param secretsService    the secrets service
+     * @param compressionPolicy decides whether compressing the claims pays off
+     * @param claimDictionary   shortens the claim names and values of /dynamic-builder-general tokens
+     * @param objectMapper      the JSON mapper
+     * @param maxBatchSize      the maximum number of claim maps per batch
+     * @param batchWorkers      the number of threads signing /dynamic-builder-batch tokens (0 = available processors)
      */
     @Autowired
-    public DynamicJWTController(SecretsService secretsService) {
+    public DynamicJWTController(SecretsService secretsService, CompressionPolicy compressionPolicy,
+                               ClaimDictionary claimDictionary, ObjectMapper objectMapper,
+                               @Value("${jwt.batch.max-size:10000}") int maxBatchSize,
+                               @Value("${jwt.batch.workers:0}") int batchWorkers) {
         this.secretsService = secretsService;
+        this.compressionPolicy = compressionPolicy;
+        this.claimDictionary = claimDictionary;
+        // flushed explicitly, only when the next token is not signed yet
+        this.batchWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.maxBatchSize = maxBatchSize;
+
+        final int workers = batchWorkers > 0 ? batchWorkers : Runtime.getRuntime().availableProcessors();
+        this.batchWindow = workers * 4;
+        // a full queue makes the writing request sign the token itself, which only delays its next write
+        this.batchExecutor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                                                    new LinkedBlockingQueue<>(batchWindow * 4),
+                                                    newDaemonThreadFactory("jwt-batch-sign-"),
+                                                    new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdownNow();
     }
 
     /**
+     * Shortens the claim names and values found in the claim dictionary, and names its version in the
+     * <code>cdv</code> header, so SecretsService.parseToken expands them again.
+     *
      * @param claims the claims map
+     * @param format jws for a compact JWS, or cwt for a CBOR Web Token, which is smaller on the wire
      * @return JwtResponse
      */
     @RequestMapping(value = "/dynamic-builder-general", method = POST)
-    public JwtResponse dynamicBuilderGeneric(@RequestBody Map<String, Object> claims) {
-        String jws = Jwts.builder()
-            .claims(claims)
-            .signWith(secretsService.getHS256SecretKey())
-            .compact();
+    public JwtResponse dynamicBuilderGeneric(@RequestBody Map<String, Object> claims,
+                                             @RequestParam(defaultValue = JWS_FORMAT) String format) {
+        final Map<String, Object> compressed = claimDictionary.compress(claims);
+        final int dictionaryVersion = (compressed == null ? 0 : claimDictionary.getCurrentVersion());
+        final Map<String, Object> payload = (compressed == null ? claims : compressed);
+        if (CWT_FORMAT.equalsIgnoreCase(format)) {
+            return new JwtResponse(JWTUtils.cwtCompactBuilderWithClaims(payload, secretsService.getHS256SigningKey(),
+                                                                        dictionaryVersion,
+                                                                        secretsService.getSigningEngine()));
+        } else if (!JWS_FORMAT.equalsIgnoreCase(format)) {
+            throw new JwtException("Unsupported token format: " + format);
+        }
+
+        var builder = Jwts.builder()
+            .claims(payload);
+        if (dictionaryVersion > 0) {
+            builder.header().add(ClaimDictionary.HEADER, dictionaryVersion);
+        }
+        String jws = JWTUtils.compact(builder, secretsService.getHS256SigningKey(),
+                                      secretsService.getSigningEngine());
         return new JwtResponse(jws);
     }
 
     /**
+     * Compresses the claims when the compression policy expects it to pay off; small payloads stay uncompressed.
+     *
      * @param claims the claims map
-     * @return JwtResponse with compressed token
+     * @return JwtResponse with the token and the codec it was compressed with
      */
     @RequestMapping(value = "/dynamic-builder-compress", method = POST)
     public JwtResponse dynamicBuilderCompress(@RequestBody Map<String, Object> claims) {
-        String jws = Jwts.builder()
-            .claims(claims)
-            .compressWith(Jwts.ZIP.DEF)
-            .signWith(secretsService.getHS256SecretKey())
-            .compact();
-        return new JwtResponse(jws);
+        var builder = Jwts.builder()
+            .claims(claims);
+        final CompressionAlgorithm codec = compressionPolicy.select(claims);
+        if (codec != null) {
+            builder.compressWith(codec);
+        }
+        String jws = JWTUtils.compact(builder, secretsService.getHS256SigningKey(),
+                                      secretsService.getSigningEngine());
+
+        JwtResponse response = new JwtResponse(jws);
+        response.setCodec(CompressionPolicy.codecId(codec));
+        return response;
+    }
+
+    /**
+     * @return the compression ratio and time per claim shape of /dynamic-builder-compress
+     */
+    @RequestMapping(value = "/compression-stats", method = GET)
+    public Map<String, Object> getCompressionStats() {
+        return compressionPolicy.getStats();
     }
 
     /**
@@ -99,9 +197,83 @@ public class DynamicJWTController extends BaseController {
             }
         });
 
-        builder.signWith(secretsService.getHS256SecretKey());
+        return new JwtResponse(JWTUtils.compact(builder, secretsService.getHS256SigningKey(),
+                                                secretsService.getSigningEngine()));
+    }
+
+    /**
+     * Signs every claim map of the batch in parallel, with the same rules as
+     * {@link JWTUtils#jwtCompactBuilderWithClaims(Map, byte[])}, and streams the results back as a JSON array in input
+     * order. A claim map that fails validation yields an error item instead of failing the batch.
+     *
+     * @param claimsList the claim maps
+     * @return the streamed JwtResponse array
+     */
+    @RequestMapping(value = "/dynamic-builder-batch", method = POST)
+    public ResponseEntity<StreamingResponseBody> dynamicBuilderBatch(
+        @RequestBody List<Map<String, Object>> claimsList) {
+        if (claimsList.size() > maxBatchSize) {
+            throw new JwtException("Batch size: " + claimsList.size() + " exceeds the maximum of: " + maxBatchSize);
+        }
+
+        // the whole batch is signed with the key current at the time of the request
+        final KeyRing.Entry signingKey = secretsService.getHS256SigningKey();
+        StreamingResponseBody body = outputStream -> writeBatch(claimsList, signingKey, outputStream);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Keeps up to batchWindow tokens signing on the batch executor while the finished ones are written in order.
+     *
+     * @param claimsList   the claim maps
+     * @param signingKey   the signing key
+     * @param outputStream the response stream
+     * @throws IOException if the response can't be written
+     */
+    private void writeBatch(List<Map<String, Object>> claimsList, KeyRing.Entry signingKey,
+                            OutputStream outputStream) throws IOException {
+        final SigningEngine signingEngine = secretsService.getSigningEngine();
+        final ArrayDeque<CompletableFuture<JwtResponse>> inFlight = new ArrayDeque<>(batchWindow);
+        final Iterator<Map<String, Object>> pending = claimsList.iterator();
+        try (JsonGenerator generator = batchWriter.createGenerator(outputStream)) {
+            generator.writeStartArray();
+            while (pending.hasNext() || !inFlight.isEmpty()) {
+                while (inFlight.size() < batchWindow && pending.hasNext()) {
+                    final Map<String, Object> claims = pending.next();
+                    inFlight.add(CompletableFuture.supplyAsync(() -> signClaims(claims, signingKey, signingEngine),
+                                                               batchExecutor));
+                }
 
-        return new JwtResponse(builder.compact());
+                final CompletableFuture<JwtResponse> next = inFlight.poll();
+                if (!next.isDone()) {
+                    // hand over what we have before waiting
+                    generator.flush();
+                }
+                batchWriter.writeValue(generator, next.join());
+            }
+            generator.writeEndArray();
+        } finally {
+            // the client went away; don't keep signing for nobody
+            inFlight.forEach(future -> future.cancel(false));
+        }
+    }
+
+    /**
+     * @param claims        the claims map
+     * @param signingKey    the signing key
+     * @param signingEngine the HMAC implementation
+     * @return the signed token, or the error of this claim map
+     */
+    private static JwtResponse signClaims(Map<String, Object> claims, KeyRing.Entry signingKey,
+                                          SigningEngine signingEngine) {
+        try {
+            if (claims == null) {
+                throw new JwtException("Claims must not be null");
+            }
+            return new JwtResponse(JWTUtils.jwtCompactBuilderWithClaims(claims, signingKey, signingEngine));
+        } catch (RuntimeException ex) {
+            return errorResponse(ex);
+        }
     }
 
     /**
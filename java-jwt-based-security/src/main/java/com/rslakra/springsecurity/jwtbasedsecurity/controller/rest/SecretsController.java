@@ -40,4 +40,9 @@ public class SecretsController extends BaseController {
         secretsService.setSecrets(secrets);
         return secretsService.getSecrets();
     }
+
+    @RequestMapping(value = "/claims-cache-stats", method = GET)
+    public Map<String, Long> getClaimsCacheStats() {
+        return secretsService.getClaimsCacheStats();
+    }
 }
@@ -1,65 +1,258 @@
 package com.rslakra.springsecurity.jwtbasedsecurity.controller.rest;
 
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rslakra.springsecurity.jwtbasedsecurity.compression.ClaimDictionary;
 import com.rslakra.springsecurity.jwtbasedsecurity.controller.BaseController;
 import com.rslakra.springsecurity.jwtbasedsecurity.model.JwtResponse;
+import com.rslakra.springsecurity.jwtbasedsecurity.model.JwtVerifyResult;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.JwtTemplate;
 import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
-import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.CompactToken;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
-import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.time.Instant;
-import java.util.Date;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 public class StaticJWTController extends BaseController {
 
+    // longer lines are reported as errors without being held in memory
+    public static final int MAX_BULK_TOKEN_LENGTH = 16 * 1024;
+
     private final SecretsService secretsService;
 
+    // built once on top of the parser setup of SecretsService; the key locator follows key rotations
+    private final JwtParser enforceParser;
+    // the header, iss, name and scope of /static-builder tokens, pre-encoded
+    private final JwtTemplate fixedTemplate;
+
+    private final ObjectWriter bulkWriter;
+    private final ExecutorService bulkExecutor;
+    // how many tokens of one request are verified ahead of the writer
+    private final int bulkWindow;
+    // /parser and /parser-enforce echo the payload JSON of the token instead of serializing its claims
+    private final boolean rawPayload;
+
     /**
      * @param secretsService the secrets service
+     * @param objectMapper   the JSON mapper
+     * @param bulkWorkers    the number of threads verifying /parser-bulk tokens (0 = available processors)
+     * @param rawPayload     whether parsed tokens are answered with their payload JSON as is
      */
     @Autowired
-    public StaticJWTController(SecretsService secretsService) {
+    public StaticJWTController(SecretsService secretsService, ObjectMapper objectMapper,
+                               @Value("${jwt.bulk.workers:0}") int bulkWorkers,
+                               @Value("${jwt.response.raw-payload:false}") boolean rawPayload) {
         this.secretsService = secretsService;
+        this.rawPayload = rawPayload;
+        this.enforceParser = secretsService.parserBuilder()
+            .requireIssuer("Rohtash Lakra")
+            .require("hasAutomobile", true)
+            .build();
+        this.fixedTemplate = JwtTemplate.register("static-builder", Map.of(),
+                                                  Map.of("iss", "Rohtash Lakra",
+                                                         "name", "Rohtash Lakra",
+                                                         "scope", "admin"));
+        // one result per line; flushed explicitly, only before waiting on a worker
+        this.bulkWriter = objectMapper.writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+            .withRootValueSeparator("\n");
+        final int workers = bulkWorkers > 0 ? bulkWorkers : Runtime.getRuntime().availableProcessors();
+        this.bulkWindow = workers * 4;
+        // a full queue makes the submitting request verify the token itself, which slows down its reading
+        this.bulkExecutor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                                                   new LinkedBlockingQueue<>(bulkWindow * 4),
+                                                   newDaemonThreadFactory("jwt-bulk-verify-"),
+                                                   new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bulkExecutor.shutdownNow();
     }
 
     @RequestMapping(value = "/static-builder", method = GET)
     public JwtResponse fixedBuilder() {
-        String jws = Jwts.builder()
-            .issuer("Rohtash Lakra")
-            .subject("rslakra")
-            .claim("name", "Rohtash Lakra")
-            .claim("scope", "admin")
-            .issuedAt(Date.from(Instant.ofEpochSecond(1466796822L))) // Fri Jun 24 2016 15:33:42 GMT-0400 (EDT)
-            .expiration(Date.from(Instant.ofEpochSecond(4622470422L))) // Sat Jun 24 2116 15:33:42 GMT-0400 (EDT)
-            .signWith(secretsService.getHS256SecretKey())
-            .compact();
+        String jws = fixedTemplate.issue(secretsService.getHS256SigningKey(), "rslakra",
+                                         1466796822L, // Fri Jun 24 2016 15:33:42 GMT-0400 (EDT)
+                                         4622470422L, // Sat Jun 24 2116 15:33:42 GMT-0400 (EDT)
+                                         null, secretsService.getSigningEngine());
 
         return new JwtResponse(jws);
     }
 
     @RequestMapping(value = "/parser", method = GET)
     public JwtResponse parser(@RequestParam String jwt) {
-        Jws<Claims> jws = JWTUtils.parseJWTToken(jwt, secretsService.getHS256SecretKey());
-        return new JwtResponse(jws);
+        Jws<Claims> jws = secretsService.parseSignedClaims(jwt);
+        return parsedResponse(jwt, jws);
     }
 
     @RequestMapping(value = "/parser-enforce", method = GET)
     public JwtResponse parserEnforce(@RequestParam String jwt) {
-        Jws<Claims> jws = Jwts.parser()
-            .requireIssuer("Rohtash Lakra")
-            .require("hasAutomobile", true)
-            .verifyWith(secretsService.getHS256SecretKey())
-            .build()
-            .parseSignedClaims(jwt);
+        Jws<Claims> jws = secretsService.parseSignedClaims(jwt, enforceParser);
 
-        return new JwtResponse(jws);
+        return parsedResponse(jwt, jws);
+    }
+
+    /**
+     * @param jwt the token
+     * @param jws the verified token
+     * @return the response, carrying the payload JSON of the token if enabled and neither the payload nor its claims
+     * are compressed
+     */
+    private JwtResponse parsedResponse(String jwt, Jws<Claims> jws) {
+        JwtResponse response = new JwtResponse(jws);
+        if (rawPayload && jws.getHeader().getCompressionAlgorithm() == null
+            && jws.getHeader().get(ClaimDictionary.HEADER) == null) {
+            // the signature was verified over these very bytes, and jjwt has parsed them as a JSON object
+            response.setRawPayload(CompactToken.of(jwt).getPayload());
+        }
+
+        return response;
+    }
+
+    /**
+     * Verifies newline-delimited tokens read from the request body and streams one NDJSON result per token, in the
+     * order they finish. Each result carries the 1-based line of its token; blank lines are skipped. At most a bounded
+     * window of tokens is read ahead of the writer, so memory stays flat whatever the size of the input.
+     *
+     * @param request  the request carrying the tokens
+     * @param response the response receiving the results
+     * @throws IOException if the request can't be read or the response can't be written
+     */
+    @RequestMapping(value = "/parser-bulk", method = POST)
+    public void parserBulk(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        final CompletionService<JwtVerifyResult> completionService = new ExecutorCompletionService<>(bulkExecutor);
+        final StringBuilder token = new StringBuilder();
+        int inFlight = 0;
+        long submitted = 0;
+        try (Reader reader = new BufferedReader(
+            new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+             JsonGenerator generator = bulkWriter.createGenerator(response.getOutputStream())) {
+            long line = 0;
+            int next;
+            do {
+                next = readLine(reader, token);
+                line++;
+                if (!token.isEmpty()) {
+                    if (inFlight == bulkWindow) {
+                        generator.flush();
+                        writeResult(generator, completionService.take());
+                        inFlight--;
+                    }
+
+                    final long tokenLine = line;
+                    final String jwt = token.toString();
+                    completionService.submit(() -> verifyToken(tokenLine, jwt));
+                    inFlight++;
+                    submitted++;
+                }
+
+                // write whatever finished meanwhile, without waiting
+                Future<JwtVerifyResult> done;
+                while ((done = completionService.poll()) != null) {
+                    writeResult(generator, done);
+                    inFlight--;
+                }
+            } while (next != -1);
+
+            generator.flush();
+            for (; inFlight > 0; inFlight--) {
+                writeResult(generator, completionService.take());
+            }
+            if (submitted > 0) {
+                generator.writeRaw('\n');
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying tokens", ex);
+        }
+    }
+
+    /**
+     * Reads the next line into the buffer, without its line terminator and any whitespace. A line longer than
+     * {@link #MAX_BULK_TOKEN_LENGTH} is cut one character past the limit and the rest is skipped.
+     *
+     * @param reader the request reader
+     * @param line   the buffer receiving the line
+     * @return the last character read: '\n', or -1 at the end of the input
+     * @throws IOException if the request can't be read
+     */
+    private static int readLine(Reader reader, StringBuilder line) throws IOException {
+        line.setLength(0);
+        int ch;
+        while ((ch = reader.read()) != -1 && ch != '\n') {
+            if (line.length() <= MAX_BULK_TOKEN_LENGTH && !Character.isWhitespace(ch)) {
+                line.append((char) ch);
+            }
+        }
+        return ch;
+    }
+
+    /**
+     * @param line the 1-based line of the token
+     * @param jwt  the token
+     * @return the claims of the token, or the reason it was rejected
+     */
+    private JwtVerifyResult verifyToken(long line, String jwt) {
+        try {
+            if (jwt.length() > MAX_BULK_TOKEN_LENGTH) {
+                throw new JwtException("Token exceeds the maximum length of: " + MAX_BULK_TOKEN_LENGTH);
+            }
+            // verified directly, so a bulk run doesn't flush the claims cache of the interactive traffic
+            return new JwtVerifyResult(line, secretsService.parseSignedClaims(jwt).getPayload());
+        } catch (RuntimeException ex) {
+            return new JwtVerifyResult(line, ex);
+        }
+    }
+
+    /**
+     * @param generator the response generator
+     * @param done      the finished verification
+     * @throws IOException if the response can't be written
+     */
+    private void writeResult(JsonGenerator generator, Future<JwtVerifyResult> done) throws IOException {
+        try {
+            bulkWriter.writeValue(generator, done.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying tokens", ex);
+        } catch (ExecutionException ex) {
+            // verifyToken reports its own failures; anything else is a bug
+            throw new IllegalStateException(ex.getCause());
+        }
     }
 }
@@ -1,6 +1,8 @@
 package com.rslakra.springsecurity.jwtbasedsecurity.filter;
 
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.NonceCache;
 import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.RequestDispatcher;
@@ -11,7 +13,6 @@ import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Arrays;
 
 /**
  * @author Rohtash Lakra
@@ -20,15 +21,19 @@ import java.util.Arrays;
 public final class JwtCsrfValidatorFilter extends OncePerRequestFilter {
 
     private final SecretsService secretsService;
-    private final String[] ignoredCsrfAntMatchers;
+    private final NonceCache nonceCache;
+    private final PathRuleMatcher ignoredCsrfPaths;
 
     /**
-     * @param secretsService         the secrets service
-     * @param ignoredCsrfAntMatchers the ignored CSRF matchers
+     * @param secretsService   the secrets service
+     * @param nonceCache       the seen CSRF token ids
+     * @param ignoredCsrfPaths the compiled rules of the CSRF-exempt paths
      */
-    public JwtCsrfValidatorFilter(SecretsService secretsService, String[] ignoredCsrfAntMatchers) {
+    public JwtCsrfValidatorFilter(SecretsService secretsService, NonceCache nonceCache,
+                                  PathRuleMatcher ignoredCsrfPaths) {
         this.secretsService = secretsService;
-        this.ignoredCsrfAntMatchers = ignoredCsrfAntMatchers;
+        this.nonceCache = nonceCache;
+        this.ignoredCsrfPaths = ignoredCsrfPaths;
     }
 
     /**
@@ -42,19 +47,17 @@ public final class JwtCsrfValidatorFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest servletRequest, HttpServletResponse servletResponse,
                                     FilterChain filterChain)
         throws ServletException, IOException {
-        /**
-         * NOTE: - A real implementation should have a nonce cache so the csrfToken cannot be reused
-         */
         CsrfToken csrfToken = FilterUtils.getCsrfAttribute(servletRequest);
 
         if (
             // only care if it's a POST
             FilterUtils.isPostRequest(servletRequest) &&
-            // ignore if the servletRequest path is in our list and we have a csrfToken
-            Arrays.binarySearch(ignoredCsrfAntMatchers, servletRequest.getServletPath()) < 0 && csrfToken != null) {
-            // CsrfFilter already made sure the csrfToken matched. Here, we'll make sure it's not expired
+            // ignore if the servletRequest matches an exempt path rule, and only if we have a csrfToken
+            csrfToken != null && !ignoredCsrfPaths.matches(servletRequest)) {
+            // CsrfFilter already made sure the csrfToken matched. Here, we'll make sure it's not expired or replayed
             try {
-                secretsService.parseToken(csrfToken.getToken());
+                Claims claims = secretsService.parseToken(csrfToken.getToken());
+                checkNotReplayed(claims);
             } catch (JwtException e) {
                 // most likely an ExpiredJwtException, but this will handle any
                 servletRequest.setAttribute("exception", e);
@@ -67,4 +70,27 @@ public final class JwtCsrfValidatorFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(servletRequest, servletResponse);
     }
+
+    /**
+     * Records the jti of the token, so the same csrfToken cannot be used twice.
+     *
+     * @param claims the verified claims of the csrfToken
+     */
+    private void checkNotReplayed(Claims claims) {
+        if (claims.getId() == null || claims.getExpiration() == null) {
+            throw new JwtException("CSRF token must have a jti and an exp claim");
+        }
+
+        NonceCache.Result result = nonceCache.register(claims.getId(), claims.getExpiration().getTime());
+        switch (result) {
+            case ACCEPTED:
+                break;
+            case REPLAYED:
+                throw new JwtException("CSRF token has already been used");
+            case EXPIRED:
+                throw new JwtException("CSRF token has expired");
+            default:
+                throw new JwtException("CSRF token could not be recorded");
+        }
+    }
 }
@@ -0,0 +1,223 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.filter;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A set of path rules compiled into a trie of path segments, so a lookup walks the segments of the request path once,
+ * whatever the number of rules.
+ * <p>
+ * A rule is a path pattern, optionally preceded by the HTTP methods it applies to:
+ * <pre>
+ *     /set-secrets
+ *     POST /parser-bulk
+ *     GET|HEAD /api/{version}/status
+ *     /public/**
+ * </pre>
+ * A segment is matched literally, except <code>*</code> and <code>{name}</code>, which match any one segment, and a
+ * trailing <code>**</code>, which matches any number of remaining segments, including none. Wildcards inside a segment
+ * (e.g. <code>/dynamic-*</code>) are rejected rather than silently matched literally.
+ *
+ * @author Rohtash Lakra
+ */
+public final class PathRuleMatcher implements RequestMatcher {
+
+    private static final List<String> METHODS = List.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS",
+                                                        "TRACE");
+    // rules without methods, or requests with a method outside of METHODS
+    private static final int ANY_METHOD = -1;
+    private static final int OTHER_METHOD = 1 << METHODS.size();
+
+    private final Node root = new Node();
+    private final int size;
+
+    /**
+     * @param rules the rules
+     */
+    private PathRuleMatcher(Collection<String> rules) {
+        for (String rule : rules) {
+            add(rule);
+        }
+        this.size = rules.size();
+    }
+
+    /**
+     * @param rules the rules
+     * @return the compiled rules
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    public static PathRuleMatcher compile(String... rules) {
+        return compile(Arrays.asList(rules));
+    }
+
+    /**
+     * @param rules the rules
+     * @return the compiled rules
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    public static PathRuleMatcher compile(Collection<String> rules) {
+        return new PathRuleMatcher(rules);
+    }
+
+    /**
+     * @return the number of rules
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Matches the servlet path (plus the path info, if any) and the method of the request.
+     *
+     * @param servletRequest the HTTP request
+     * @return true if a rule matches the request
+     */
+    @Override
+    public boolean matches(HttpServletRequest servletRequest) {
+        final String pathInfo = servletRequest.getPathInfo();
+        final String path = (pathInfo == null ? servletRequest.getServletPath()
+                                              : servletRequest.getServletPath() + pathInfo);
+        return matches(servletRequest.getMethod(), path);
+    }
+
+    /**
+     * @param method the HTTP method, or null to match rules of any method
+     * @param path   the path, starting with '/'
+     * @return true if a rule matches the method and the path
+     */
+    public boolean matches(String method, String path) {
+        if (path == null || path.isEmpty() || path.charAt(0) != '/') {
+            return false;
+        }
+
+        return matches(root, path, 1, methodBit(method));
+    }
+
+    /**
+     * @param node       the node of the segments matched so far
+     * @param path       the path
+     * @param start      the index of the next segment
+     * @param methodMask the bit of the request method
+     * @return true if a rule below the node matches the rest of the path
+     */
+    private static boolean matches(Node node, String path, int start, int methodMask) {
+        if ((node.remainderMethods & methodMask) != 0) {
+            return true;
+        }
+        if (start > path.length()) {
+            return (node.methods & methodMask) != 0;
+        }
+
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+
+        if (node.literals != null) {
+            final Node literal = node.literals.get(path.substring(start, end));
+            if (literal != null && matches(literal, path, end + 1, methodMask)) {
+                return true;
+            }
+        }
+        // a wildcard matches any segment, but not an empty one
+        return (node.wildcard != null && end > start && matches(node.wildcard, path, end + 1, methodMask));
+    }
+
+    /**
+     * @param rule the rule
+     */
+    private void add(String rule) {
+        if (rule == null || rule.isBlank()) {
+            throw new IllegalArgumentException("Empty path rule");
+        }
+
+        final String trimmed = rule.trim();
+        final int space = trimmed.indexOf(' ');
+        final String pattern = (space < 0 ? trimmed : trimmed.substring(space + 1).trim());
+        final int methods = (space < 0 ? ANY_METHOD : parseMethods(trimmed.substring(0, space), rule));
+        if (!pattern.startsWith("/")) {
+            throw new IllegalArgumentException("Path rule must start with '/': " + rule);
+        }
+
+        Node node = root;
+        final String[] segments = pattern.substring(1).split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            final String segment = segments[i];
+            if ("**".equals(segment)) {
+                if (i != segments.length - 1) {
+                    throw new IllegalArgumentException("'**' is only supported as the last segment: " + rule);
+                }
+                node.remainderMethods |= methods;
+                return;
+            }
+
+            if ("*".equals(segment) || (segment.length() > 2 && segment.startsWith("{") && segment.endsWith("}"))) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node();
+                }
+                node = node.wildcard;
+            } else if (segment.indexOf('*') >= 0 || segment.indexOf('{') >= 0 || segment.indexOf('}') >= 0) {
+                throw new IllegalArgumentException("Wildcards must span a whole segment: " + rule);
+            } else {
+                if (node.literals == null) {
+                    node.literals = new HashMap<>();
+                }
+                node = node.literals.computeIfAbsent(segment, ignored -> new Node());
+            }
+        }
+        node.methods |= methods;
+    }
+
+    /**
+     * @param methods the methods, separated by '|'
+     * @param rule    the rule, for the error message
+     * @return the bit mask of the methods
+     */
+    private static int parseMethods(String methods, String rule) {
+        int mask = 0;
+        for (String method : methods.split("\\|")) {
+            final int index = METHODS.indexOf(method.trim().toUpperCase(Locale.ROOT));
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown HTTP method: '" + method + "' in path rule: " + rule);
+            }
+            mask |= 1 << index;
+        }
+        return mask;
+    }
+
+    /**
+     * @param method the HTTP method
+     * @return the bit of the method; methods outside of {@link #METHODS} only match rules without methods
+     */
+    private static int methodBit(String method) {
+        if (method == null) {
+            return ANY_METHOD;
+        }
+        for (int i = 0; i < METHODS.size(); i++) {
+            if (METHODS.get(i).equalsIgnoreCase(method)) {
+                return 1 << i;
+            }
+        }
+        return OTHER_METHOD;
+    }
+
+    /**
+     * A path segment of the trie.
+     */
+    private static final class Node {
+
+        private Map<String, Node> literals;
+        private Node wildcard;
+        // the methods of the rules ending here
+        private int methods;
+        // the methods of the rules ending here with '**'
+        private int remainderMethods;
+    }
+}
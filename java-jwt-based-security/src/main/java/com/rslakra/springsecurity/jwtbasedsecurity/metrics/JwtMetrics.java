@@ -0,0 +1,247 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.metrics;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import io.jsonwebtoken.ClaimJwtException;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.io.DecodingException;
+import io.jsonwebtoken.security.SignatureException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import javax.crypto.SecretKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Micrometer timers of the JWT sign and verify paths, tagged by operation, algorithm and outcome.
+ * <p>
+ * The call sites are static utilities, so they report to the instance {@link #install(MeterRegistry) installed} for
+ * the application. While none is installed, {@link #start()} is a single volatile read that returns 0 and
+ * <code>record</code> returns straight away, so disabled instrumentation costs neither a clock read nor an allocation.
+ * Timers are registered on first use and then looked up by array index; each publishes its p50, p99 and p999.
+ *
+ * @author Rohtash Lakra
+ */
+public final class JwtMetrics implements AutoCloseable {
+
+    public static final String TIMER_NAME = "jwt.operations";
+    public static final String CACHE_COUNTER_NAME = "jwt.claims.cache";
+    public static final String UNKNOWN_ALGORITHM = "unknown";
+
+    private static final String[] ALGORITHMS = {
+        JWTHeaderUtils.HS256, JWTHeaderUtils.HS384, JWTHeaderUtils.HS512, UNKNOWN_ALGORITHM
+    };
+
+    /**
+     * The instrumented operations.
+     */
+    public enum Operation {
+        // JWTUtils signing methods
+        SIGN,
+        // signature and claims verification
+        VERIFY,
+        // SecretsService.parseToken, including claims cache hits
+        PARSE_TOKEN;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    /**
+     * The outcome of an operation, by the type of its failure.
+     */
+    public enum Outcome {
+        SUCCESS,
+        EXPIRED,
+        // premature, missing or incorrect claims
+        INVALID_CLAIMS,
+        BAD_SIGNATURE,
+        MALFORMED,
+        ERROR;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+         * @param failure the failure of the operation, or null
+         * @return the outcome
+         */
+        public static Outcome of(Throwable failure) {
+            if (failure == null) {
+                return SUCCESS;
+            } else if (failure instanceof ExpiredJwtException) {
+                return EXPIRED;
+            } else if (failure instanceof ClaimJwtException) {
+                return INVALID_CLAIMS;
+            } else if (failure instanceof SignatureException) {
+                return BAD_SIGNATURE;
+            } else if (failure instanceof MalformedJwtException || failure instanceof UnsupportedJwtException
+                       || failure instanceof DecodingException || failure instanceof IllegalArgumentException) {
+                return MALFORMED;
+            }
+            return ERROR;
+        }
+    }
+
+    private static volatile JwtMetrics active;
+
+    private final MeterRegistry registry;
+    // [operation][algorithm][outcome], flattened
+    private final AtomicReferenceArray<Timer> timers;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    /**
+     * @param registry the registry the meters are registered with
+     */
+    private JwtMetrics(MeterRegistry registry) {
+        this.registry = Objects.requireNonNull(registry, "registry");
+        this.timers = new AtomicReferenceArray<>(
+            Operation.values().length * ALGORITHMS.length * Outcome.values().length);
+        this.cacheHits = Counter.builder(CACHE_COUNTER_NAME).tag("result", "hit").register(registry);
+        this.cacheMisses = Counter.builder(CACHE_COUNTER_NAME).tag("result", "miss").register(registry);
+    }
+
+    /**
+     * Starts reporting to the registry, replacing the instance installed before.
+     *
+     * @param registry the registry
+     * @return the installed instance; closing it stops the reporting
+     */
+    public static JwtMetrics install(MeterRegistry registry) {
+        final JwtMetrics metrics = new JwtMetrics(registry);
+        active = metrics;
+        return metrics;
+    }
+
+    /**
+     * Stops the reporting, unless another instance was installed since.
+     */
+    @Override
+    public void close() {
+        if (active == this) {
+            active = null;
+        }
+    }
+
+    /**
+     * @return true while an instance is installed
+     */
+    public static boolean isEnabled() {
+        return active != null;
+    }
+
+    /**
+     * @return the start time of an operation, or 0 while disabled
+     */
+    public static long start() {
+        return (active == null ? 0L : System.nanoTime());
+    }
+
+    /**
+     * Records a signing operation.
+     *
+     * @param startNanos the value of {@link #start()}
+     * @param secretKey  the signing key
+     * @param failure    the failure, or null
+     */
+    public static void recordSign(long startNanos, SecretKey secretKey, Throwable failure) {
+        final JwtMetrics metrics = active;
+        if (metrics != null && startNanos != 0L) {
+            metrics.record(Operation.SIGN, JWTHeaderUtils.algorithmOf(secretKey), startNanos, failure);
+        }
+    }
+
+    /**
+     * Records an operation on a token.
+     *
+     * @param operation  the operation
+     * @param startNanos the value of {@link #start()}
+     * @param token      the token, whose alg header names the algorithm
+     * @param failure    the failure, or null
+     */
+    public static void record(Operation operation, long startNanos, CharSequence token, Throwable failure) {
+        final JwtMetrics metrics = active;
+        if (metrics != null && startNanos != 0L) {
+            metrics.record(operation, JWTHeaderUtils.sniffAlgorithm(token), startNanos, failure);
+        }
+    }
+
+    /**
+     * @param hit true if the claims were served from the cache
+     */
+    public static void recordCacheLookup(boolean hit) {
+        final JwtMetrics metrics = active;
+        if (metrics != null) {
+            (hit ? metrics.cacheHits : metrics.cacheMisses).increment();
+        }
+    }
+
+    /**
+     * @return the timers registered so far
+     */
+    public List<Timer> getTimers() {
+        final List<Timer> registered = new ArrayList<>();
+        for (int i = 0; i < timers.length(); i++) {
+            final Timer timer = timers.get(i);
+            if (timer != null) {
+                registered.add(timer);
+            }
+        }
+        return registered;
+    }
+
+    /**
+     * @return the claims cache hit and miss counts
+     */
+    public double[] getCacheLookups() {
+        return new double[]{cacheHits.count(), cacheMisses.count()};
+    }
+
+    private void record(Operation operation, String algorithm, long startNanos, Throwable failure) {
+        final long elapsed = System.nanoTime() - startNanos;
+        final Outcome outcome = Outcome.of(failure);
+        final int algorithmIndex = indexOf(algorithm);
+        final int index = (operation.ordinal() * ALGORITHMS.length + algorithmIndex) * Outcome.values().length
+                          + outcome.ordinal();
+
+        Timer timer = timers.get(index);
+        if (timer == null) {
+            // the registry returns the existing timer if another thread registered it first
+            timer = Timer.builder(TIMER_NAME)
+                .tag("operation", operation.getTag())
+                .tag("algorithm", ALGORITHMS[algorithmIndex])
+                .tag("outcome", outcome.getTag())
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+            timers.set(index, timer);
+        }
+        timer.record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param algorithm the algorithm, may be null
+     * @return the index of the algorithm tag
+     */
+    private static int indexOf(String algorithm) {
+        for (int i = 0; i < ALGORITHMS.length - 1; i++) {
+            if (ALGORITHMS[i].equals(algorithm)) {
+                return i;
+            }
+        }
+        return ALGORITHMS.length - 1;
+    }
+}
@@ -0,0 +1,70 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The <code>/actuator/jwt</code> endpoint: one entry per operation, algorithm and outcome seen so far, with its count
+ * and its total, max and p50/p99/p999 times in microseconds, plus the claims cache hits and misses.
+ *
+ * @author Rohtash Lakra
+ */
+@Endpoint(id = "jwt")
+public class JwtMetricsEndpoint {
+
+    private final JwtMetrics jwtMetrics;
+
+    /**
+     * @param jwtMetrics the installed metrics
+     */
+    public JwtMetricsEndpoint(JwtMetrics jwtMetrics) {
+        this.jwtMetrics = jwtMetrics;
+    }
+
+    @ReadOperation
+    public Map<String, Object> jwt() {
+        final List<Map<String, Object>> operations = new ArrayList<>();
+        for (Timer timer : jwtMetrics.getTimers()) {
+            final HistogramSnapshot snapshot = timer.takeSnapshot();
+            final Map<String, Object> operation = new LinkedHashMap<>();
+            operation.put("operation", timer.getId().getTag("operation"));
+            operation.put("algorithm", timer.getId().getTag("algorithm"));
+            operation.put("outcome", timer.getId().getTag("outcome"));
+            operation.put("count", snapshot.count());
+            operation.put("totalMicros", snapshot.total(TimeUnit.MICROSECONDS));
+            operation.put("maxMicros", snapshot.max(TimeUnit.MICROSECONDS));
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                operation.put(percentileName(percentile.percentile()), percentile.value(TimeUnit.MICROSECONDS));
+            }
+            operations.add(operation);
+        }
+
+        final double[] cacheLookups = jwtMetrics.getCacheLookups();
+        final Map<String, Object> claimsCache = new LinkedHashMap<>();
+        claimsCache.put("hits", (long) cacheLookups[0]);
+        claimsCache.put("misses", (long) cacheLookups[1]);
+
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("operations", operations);
+        result.put("claimsCache", claimsCache);
+        return result;
+    }
+
+    /**
+     * @param percentile the percentile, e.g. 0.999
+     * @return its name in micros, e.g. p999Micros
+     */
+    private static String percentileName(double percentile) {
+        final String digits = Double.toString(percentile).substring(2);
+        return "p" + (digits.length() == 1 ? digits + "0" : digits) + "Micros";
+    }
+}
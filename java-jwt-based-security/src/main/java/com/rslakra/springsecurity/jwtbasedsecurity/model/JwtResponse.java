@@ -1,10 +1,12 @@
 package com.rslakra.springsecurity.jwtbasedsecurity.model;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonSerialize(using = JwtResponseSerializer.class)
 public class JwtResponse {
 
     private String message;
@@ -12,6 +14,9 @@ public class JwtResponse {
     private String exceptionType;
     private String jwt;
     private Jws<Claims> jws;
+    private String codec;
+    // the payload JSON of the token, written in place of the claims of jws
+    private String rawPayload;
 
     public enum Status {
         SUCCESS, ERROR
@@ -69,4 +74,23 @@ public class JwtResponse {
     public void setJws(Jws<Claims> jws) {
         this.jws = jws;
     }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public String getRawPayload() {
+        return rawPayload;
+    }
+
+    /**
+     * @param rawPayload the decoded payload segment of the token jws was parsed from, written to the response as is
+     */
+    public void setRawPayload(String rawPayload) {
+        this.rawPayload = rawPayload;
+    }
 }
@@ -0,0 +1,142 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.io.Encoders;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes a {@link JwtResponse} field by field to the generator, instead of letting Jackson introspect the
+ * {@link Jws} implementation of jjwt.
+ * <p>
+ * The field names are encoded once, and the header and claims maps are written entry by entry, with strings, numbers
+ * and booleans written directly and only other values handed to Jackson. The output has the same fields, in the same
+ * order, as the bean serialization it replaces. If the response carries the raw payload JSON of the token, it is
+ * written as is in place of the claims.
+ *
+ * @author Rohtash Lakra
+ */
+public class JwtResponseSerializer extends StdSerializer<JwtResponse> {
+
+    private static final SerializableString MESSAGE = new SerializedString("message");
+    private static final SerializableString STATUS = new SerializedString("status");
+    private static final SerializableString EXCEPTION_TYPE = new SerializedString("exceptionType");
+    private static final SerializableString JWT = new SerializedString("jwt");
+    private static final SerializableString JWS = new SerializedString("jws");
+    private static final SerializableString CODEC = new SerializedString("codec");
+    private static final SerializableString HEADER = new SerializedString("header");
+    private static final SerializableString PAYLOAD = new SerializedString("payload");
+    private static final SerializableString DIGEST = new SerializedString("digest");
+    private static final SerializableString SIGNATURE = new SerializedString("signature");
+    // the deprecated alias of payload, kept for the clients reading it
+    private static final SerializableString BODY = new SerializedString("body");
+
+    public JwtResponseSerializer() {
+        super(JwtResponse.class);
+    }
+
+    @Override
+    public void serialize(JwtResponse response, JsonGenerator generator, SerializerProvider provider)
+        throws IOException {
+        generator.writeStartObject(response);
+        writeString(generator, MESSAGE, response.getMessage());
+        if (response.getStatus() != null) {
+            generator.writeFieldName(STATUS);
+            generator.writeString(response.getStatus().name());
+        }
+        writeString(generator, EXCEPTION_TYPE, response.getExceptionType());
+        writeString(generator, JWT, response.getJwt());
+        if (response.getJws() != null) {
+            generator.writeFieldName(JWS);
+            writeJws(generator, provider, response.getJws(), response.getRawPayload());
+        }
+        writeString(generator, CODEC, response.getCodec());
+        generator.writeEndObject();
+    }
+
+    /**
+     * @param generator  the generator
+     * @param provider   the provider, for values of other types than strings, numbers and booleans
+     * @param jws        the parsed token
+     * @param rawPayload the payload JSON of the token, or null to write the claims
+     * @throws IOException if the response can't be written
+     */
+    private static void writeJws(JsonGenerator generator, SerializerProvider provider, Jws<Claims> jws,
+                                 String rawPayload) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(HEADER);
+        writeMap(generator, provider, jws.getHeader());
+        generator.writeFieldName(PAYLOAD);
+        writePayload(generator, provider, jws.getPayload(), rawPayload);
+
+        final byte[] digest = jws.getDigest();
+        if (digest != null) {
+            generator.writeFieldName(DIGEST);
+            generator.writeBinary(digest);
+            generator.writeFieldName(SIGNATURE);
+            generator.writeString(Encoders.BASE64URL.encode(digest));
+        }
+
+        generator.writeFieldName(BODY);
+        writePayload(generator, provider, jws.getPayload(), rawPayload);
+        generator.writeEndObject();
+    }
+
+    private static void writePayload(JsonGenerator generator, SerializerProvider provider, Claims claims,
+                                     String rawPayload) throws IOException {
+        if (rawPayload != null) {
+            generator.writeRawValue(rawPayload);
+        } else {
+            writeMap(generator, provider, claims);
+        }
+    }
+
+    /**
+     * @param generator the generator
+     * @param provider  the provider, for values of other types than strings, numbers and booleans
+     * @param map       the header or claims
+     * @throws IOException if the response can't be written
+     */
+    private static void writeMap(JsonGenerator generator, SerializerProvider provider, Map<String, ?> map)
+        throws IOException {
+        if (map == null) {
+            generator.writeNull();
+            return;
+        }
+
+        generator.writeStartObject();
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            final Object value = entry.getValue();
+            if (value == null) {
+                generator.writeNull();
+            } else if (value instanceof String) {
+                generator.writeString((String) value);
+            } else if (value instanceof Integer) {
+                generator.writeNumber((Integer) value);
+            } else if (value instanceof Long) {
+                generator.writeNumber((Long) value);
+            } else if (value instanceof Boolean) {
+                generator.writeBoolean((Boolean) value);
+            } else {
+                provider.defaultSerializeValue(value, generator);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator generator, SerializableString name, String value)
+        throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeString(value);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Map;
+
+/**
+ * The outcome of verifying one token of a bulk request: either its claims or the type of the failure.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JwtVerifyResult {
+
+    private long line;
+    private JwtResponse.Status status;
+    private Map<String, Object> claims;
+    private String exceptionType;
+    private String message;
+
+    public JwtVerifyResult() {
+    }
+
+    /**
+     * @param line   the 1-based line of the token in the request
+     * @param claims the verified claims
+     */
+    public JwtVerifyResult(long line, Map<String, Object> claims) {
+        this.line = line;
+        this.claims = claims;
+        this.status = JwtResponse.Status.SUCCESS;
+    }
+
+    /**
+     * @param line the 1-based line of the token in the request
+     * @param ex   the verification failure
+     */
+    public JwtVerifyResult(long line, Exception ex) {
+        this.line = line;
+        this.status = JwtResponse.Status.ERROR;
+        this.exceptionType = ex.getClass().getName();
+        this.message = ex.getMessage();
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public void setLine(long line) {
+        this.line = line;
+    }
+
+    public JwtResponse.Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(JwtResponse.Status status) {
+        this.status = status;
+    }
+
+    public Map<String, Object> getClaims() {
+        return claims;
+    }
+
+    public void setClaims(Map<String, Object> claims) {
+        this.claims = claims;
+    }
+
+    public String getExceptionType() {
+        return exceptionType;
+    }
+
+    public void setExceptionType(String exceptionType) {
+        this.exceptionType = exceptionType;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,358 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.security;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rslakra.springsecurity.jwtbasedsecurity.metrics.JwtMetrics;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import io.jsonwebtoken.JwtException;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A named, pre-encoded JWS template.
+ * <p>
+ * The fixed header parameters and the static claims of a template are serialized and Base64URL encoded once, when the
+ * template is registered. The static claims are padded with JSON whitespace to a multiple of 3 bytes, so their encoding
+ * is a valid prefix of the encoding of every payload. Issuing a token then only serializes and encodes the dynamic
+ * claims (<code>sub</code>, <code>iat</code>, <code>exp</code>, <code>jti</code>) and computes the HMAC over the
+ * concatenated segments. The tokens are regular compact JWS and verify with any JWT parser.
+ *
+ * @author Rohtash Lakra
+ */
+public final class JwtTemplate {
+
+    // the claims set per token; everything else is fixed by the template
+    public static final Set<String> DYNAMIC_CLAIMS = Set.of("sub", "iat", "exp", "jti");
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Map<String, JwtTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final Map<String, Object> headers;
+    private final Map<String, Object> claims;
+    // the Base64URL encoded '{' + static claims + padding
+    private final byte[] encodedClaimsPrefix;
+    private final boolean hasStaticClaims;
+    // the header of the last signing key; recomputed on key rotation
+    private volatile EncodedHeader encodedHeader;
+
+    /**
+     * @param name    the template name
+     * @param headers the fixed header parameters, besides alg and kid
+     * @param claims  the static claims
+     */
+    private JwtTemplate(String name, Map<String, Object> headers, Map<String, Object> claims) {
+        this.name = name;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+        this.claims = Collections.unmodifiableMap(new LinkedHashMap<>(claims));
+
+        final String staticClaims = toJsonMembers(this.claims);
+        this.hasStaticClaims = !staticClaims.isEmpty();
+        final StringBuilder prefix = new StringBuilder(staticClaims.length() + 3).append('{').append(staticClaims);
+        final byte[] prefixBytes = prefix.toString().getBytes(StandardCharsets.UTF_8);
+        // whitespace is insignificant in JSON; it keeps the prefix on a Base64 block boundary
+        final int padding = (3 - prefixBytes.length % 3) % 3;
+        this.encodedClaimsPrefix = ENCODER.encode(prefix.append(" ".repeat(padding)).toString()
+                                                      .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Registers a template, replacing any template with the same name.
+     *
+     * @param name    the template name
+     * @param headers the fixed header parameters, besides alg and kid
+     * @param claims  the static claims, none of which may be a {@link #DYNAMIC_CLAIMS dynamic claim}
+     * @return the template
+     */
+    public static JwtTemplate register(String name, Map<String, Object> headers, Map<String, Object> claims) {
+        Objects.requireNonNull(name, "name");
+        Objects.requireNonNull(headers, "headers");
+        Objects.requireNonNull(claims, "claims");
+        if (headers.containsKey("alg") || headers.containsKey("kid")) {
+            throw new IllegalArgumentException("The alg and kid headers are set from the signing key");
+        }
+        for (String claim : claims.keySet()) {
+            if (DYNAMIC_CLAIMS.contains(claim)) {
+                throw new IllegalArgumentException("Claim: '" + claim + "' is set per token, not by the template");
+            }
+        }
+
+        final JwtTemplate template = new JwtTemplate(name, headers, claims);
+        TEMPLATES.put(name, template);
+        return template;
+    }
+
+    /**
+     * @param name the template name
+     * @return the registered template
+     * @throws IllegalArgumentException if no template has this name
+     */
+    public static JwtTemplate get(String name) {
+        final JwtTemplate template = TEMPLATES.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("No JWT template registered with name: " + name);
+        }
+
+        return template;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, Object> getHeaders() {
+        return headers;
+    }
+
+    public Map<String, Object> getClaims() {
+        return claims;
+    }
+
+    /**
+     * Issues a token signed with the keyring entry.
+     *
+     * @param signingKey      the keyring entry
+     * @param subject         the sub claim, may be null
+     * @param issuedAtSeconds the iat claim, may be null
+     * @param expiryInSeconds the exp claim, may be null
+     * @param tokenId         the jti claim, may be null
+     * @return the compact JWS
+     */
+    public String issue(KeyRing.Entry signingKey, String subject, Long issuedAtSeconds, Long expiryInSeconds,
+                        String tokenId) {
+        return issue(signingKey, subject, issuedAtSeconds, expiryInSeconds, tokenId, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * Issues a token signed with the keyring entry by the given HMAC implementation.
+     *
+     * @param signingKey      the keyring entry
+     * @param subject         the sub claim, may be null
+     * @param issuedAtSeconds the iat claim, may be null
+     * @param expiryInSeconds the exp claim, may be null
+     * @param tokenId         the jti claim, may be null
+     * @param signingEngine   the HMAC implementation
+     * @return the compact JWS
+     */
+    public String issue(KeyRing.Entry signingKey, String subject, Long issuedAtSeconds, Long expiryInSeconds,
+                        String tokenId, SigningEngine signingEngine) {
+        return issue(signingKey.getKey(), signingKey.getKeyId(), subject, issuedAtSeconds, expiryInSeconds, tokenId,
+                     signingEngine);
+    }
+
+    /**
+     * Issues a token signed with the key.
+     *
+     * @param secretKey       the HMAC key
+     * @param subject         the sub claim, may be null
+     * @param issuedAtSeconds the iat claim, may be null
+     * @param expiryInSeconds the exp claim, may be null
+     * @param tokenId         the jti claim, may be null
+     * @return the compact JWS
+     */
+    public String issue(SecretKey secretKey, String subject, Long issuedAtSeconds, Long expiryInSeconds,
+                        String tokenId) {
+        return issue(secretKey, subject, issuedAtSeconds, expiryInSeconds, tokenId, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * Issues a token signed with the key by the given HMAC implementation.
+     *
+     * @param secretKey       the HMAC key
+     * @param subject         the sub claim, may be null
+     * @param issuedAtSeconds the iat claim, may be null
+     * @param expiryInSeconds the exp claim, may be null
+     * @param tokenId         the jti claim, may be null
+     * @param signingEngine   the HMAC implementation
+     * @return the compact JWS
+     */
+    public String issue(SecretKey secretKey, String subject, Long issuedAtSeconds, Long expiryInSeconds,
+                        String tokenId, SigningEngine signingEngine) {
+        return issue(secretKey, null, subject, issuedAtSeconds, expiryInSeconds, tokenId, signingEngine);
+    }
+
+    /**
+     * @param secretKey       the HMAC key
+     * @param keyId           the kid of the key, or null to derive it
+     * @param subject         the sub claim, may be null
+     * @param issuedAtSeconds the iat claim, may be null
+     * @param expiryInSeconds the exp claim, may be null
+     * @param tokenId         the jti claim, may be null
+     * @param signingEngine   the HMAC implementation
+     * @return the compact JWS
+     */
+    private String issue(SecretKey secretKey, String keyId, String subject, Long issuedAtSeconds,
+                         Long expiryInSeconds, String tokenId, SigningEngine signingEngine) {
+        final long start = JwtMetrics.start();
+        try {
+            final String token = sign(secretKey, keyId, subject, issuedAtSeconds, expiryInSeconds, tokenId,
+                                      signingEngine);
+            JwtMetrics.recordSign(start, secretKey, null);
+            return token;
+        } catch (RuntimeException ex) {
+            JwtMetrics.recordSign(start, secretKey, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * @param secretKey       the HMAC key
+     * @param keyId           the kid of the key, or null to derive it
+     * @param subject         the sub claim, may be null
+     * @param issuedAtSeconds the iat claim, may be null
+     * @param expiryInSeconds the exp claim, may be null
+     * @param tokenId         the jti claim, may be null
+     * @param signingEngine   the HMAC implementation
+     * @return the compact JWS
+     */
+    private String sign(SecretKey secretKey, String keyId, String subject, Long issuedAtSeconds,
+                        Long expiryInSeconds, String tokenId, SigningEngine signingEngine) {
+        final byte[] header = encodedHeader(secretKey, keyId);
+
+        // the remainder of the payload: the dynamic claims and the closing brace
+        final StringBuilder dynamicClaims = new StringBuilder(96);
+        appendString(dynamicClaims, "sub", subject);
+        appendNumber(dynamicClaims, "iat", issuedAtSeconds);
+        appendNumber(dynamicClaims, "exp", expiryInSeconds);
+        appendString(dynamicClaims, "jti", tokenId);
+        dynamicClaims.append('}');
+        final byte[] encodedClaimsSuffix = ENCODER.encode(dynamicClaims.toString().getBytes(StandardCharsets.UTF_8));
+
+        final String algorithm = algorithmOf(secretKey);
+        final Mac mac = signingEngine.borrowMac(algorithm, secretKey);
+        final byte[] signature;
+        try {
+            mac.update(header);
+            mac.update(encodedClaimsPrefix);
+            mac.update(encodedClaimsSuffix);
+            signature = ENCODER.encode(mac.doFinal());
+        } finally {
+            signingEngine.releaseMac(algorithm, secretKey, mac);
+        }
+
+        final byte[] token = new byte[header.length + encodedClaimsPrefix.length + encodedClaimsSuffix.length + 1
+                                      + signature.length];
+        int offset = 0;
+        System.arraycopy(header, 0, token, offset, header.length);
+        offset += header.length;
+        System.arraycopy(encodedClaimsPrefix, 0, token, offset, encodedClaimsPrefix.length);
+        offset += encodedClaimsPrefix.length;
+        System.arraycopy(encodedClaimsSuffix, 0, token, offset, encodedClaimsSuffix.length);
+        offset += encodedClaimsSuffix.length;
+        token[offset++] = '.';
+        System.arraycopy(signature, 0, token, offset, signature.length);
+
+        return new String(token, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Appends a JSON member, preceded by a comma unless it is the first member of the payload.
+     *
+     * @param json  the dynamic claims
+     * @param claim the claim name
+     */
+    private void appendName(StringBuilder json, String claim) {
+        if (hasStaticClaims || !json.isEmpty()) {
+            json.append(',');
+        }
+        json.append('"').append(claim).append("\":");
+    }
+
+    private void appendString(StringBuilder json, String claim, String value) {
+        if (value != null) {
+            appendName(json, claim);
+            json.append('"');
+            JsonStringEncoder.getInstance().quoteAsString(value, json);
+            json.append('"');
+        }
+    }
+
+    private void appendNumber(StringBuilder json, String claim, Long value) {
+        if (value != null) {
+            appendName(json, claim);
+            json.append(value.longValue());
+        }
+    }
+
+    /**
+     * @param secretKey the signing key
+     * @param keyId     the kid of the key, or null to derive it
+     * @return the Base64URL encoded header of the key, followed by '.'
+     */
+    private byte[] encodedHeader(SecretKey secretKey, String keyId) {
+        EncodedHeader current = encodedHeader;
+        if (current == null || !current.matches(secretKey, keyId)) {
+            final Map<String, Object> header = new LinkedHashMap<>();
+            header.put("alg", algorithmOf(secretKey));
+            header.put("kid", keyId != null ? keyId : KeyRing.keyIdOf(secretKey.getEncoded()));
+            header.putAll(headers);
+            final byte[] encoded = ENCODER.encode(("{" + toJsonMembers(header) + "}").getBytes(StandardCharsets.UTF_8));
+            final byte[] withDot = new byte[encoded.length + 1];
+            System.arraycopy(encoded, 0, withDot, 0, encoded.length);
+            withDot[encoded.length] = '.';
+            current = new EncodedHeader(secretKey, (String) header.get("kid"), withDot);
+            encodedHeader = current;
+        }
+
+        return current.bytes;
+    }
+
+    /**
+     * @param members the JSON members
+     * @return the members serialized without the enclosing braces
+     */
+    private static String toJsonMembers(Map<String, Object> members) {
+        try {
+            final String json = OBJECT_MAPPER.writeValueAsString(members);
+            return json.substring(1, json.length() - 1);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Can't serialize template values", ex);
+        }
+    }
+
+    /**
+     * @param secretKey the HMAC key
+     * @return the JWS algorithm of the key
+     */
+    private static String algorithmOf(SecretKey secretKey) {
+        final String algorithm = JWTHeaderUtils.algorithmOf(secretKey);
+        if (algorithm == null) {
+            throw new JwtException("Unsupported signing key algorithm: " + secretKey.getAlgorithm());
+        }
+        return algorithm;
+    }
+
+    /**
+     * The encoded header of one signing key.
+     */
+    private static final class EncodedHeader {
+
+        private final SecretKey key;
+        private final String keyId;
+        private final byte[] bytes;
+
+        private EncodedHeader(SecretKey key, String keyId, byte[] bytes) {
+            this.key = key;
+            this.keyId = keyId;
+            this.bytes = bytes;
+        }
+
+        private boolean matches(SecretKey secretKey, String secretKeyId) {
+            if (secretKeyId != null) {
+                return secretKeyId.equals(keyId);
+            }
+            return key == secretKey || key.equals(secretKey);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.security;
+
+import javax.crypto.SecretKey;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable, versioned snapshot of the signing keys.
+ * <p>
+ * Every key is identified by a <code>kid</code> derived from its bytes (see {@link #keyIdOf(byte[])}), so a token
+ * carries enough information to find its key in O(1) without trying each one. A rotation never mutates a ring; it
+ * returns a new ring in which the replaced keys stay valid for the configured overlap window, so tokens issued just
+ * before a rotation keep verifying.
+ *
+ * @author Rohtash Lakra
+ */
+public final class KeyRing {
+
+    private static final KeyRing EMPTY = new KeyRing(0, Collections.emptyMap(), Collections.emptyMap());
+
+    private final long version;
+    // algorithm -> the key currently used for signing
+    private final Map<String, Entry> current;
+    // kid -> current and still overlapping previous keys
+    private final Map<String, Entry> byKeyId;
+
+    /**
+     * @param version the ring version
+     * @param current the current key per algorithm
+     * @param byKeyId all usable keys by kid
+     */
+    private KeyRing(long version, Map<String, Entry> current, Map<String, Entry> byKeyId) {
+        this.version = version;
+        this.current = current;
+        this.byKeyId = byKeyId;
+    }
+
+    /**
+     * @return a ring without any key
+     */
+    public static KeyRing empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Rebuilds a persisted ring from its entries. Retired entries whose overlap window has closed are dropped.
+     *
+     * @param version   the ring version
+     * @param entries   the current and retired entries
+     * @param nowMillis the current time
+     * @return the ring
+     */
+    static KeyRing restore(long version, Collection<Entry> entries, long nowMillis) {
+        final Map<String, Entry> current = new HashMap<>();
+        final Map<String, Entry> byKeyId = new HashMap<>();
+        for (Entry entry : entries) {
+            if (!entry.isRetired()) {
+                current.put(entry.algorithm, entry);
+                byKeyId.put(entry.keyId, entry);
+            } else if (entry.isUsable(nowMillis)) {
+                byKeyId.putIfAbsent(entry.keyId, entry);
+            }
+        }
+
+        return new KeyRing(version, Collections.unmodifiableMap(current), Collections.unmodifiableMap(byKeyId));
+    }
+
+    /**
+     * @param algorithm        the algorithm name
+     * @param key              the key
+     * @param validUntilMillis the end of the overlap window, or {@link Long#MAX_VALUE} for a current key
+     * @return the entry, identified by the kid of the key
+     */
+    static Entry entry(String algorithm, SecretKey key, long validUntilMillis) {
+        return new Entry(keyIdOf(key.getEncoded()), algorithm, key, validUntilMillis);
+    }
+
+    /**
+     * Returns the <code>kid</code> of a key, the Base64URL encoded first 8 bytes of the SHA-256 of its bytes.
+     *
+     * @param keyBytes the raw key bytes
+     * @return the key id
+     */
+    public static String keyIdOf(byte[] keyBytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(keyBytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Returns a new ring with the given keys as the current ones. The replaced keys remain usable for verification
+     * until <code>nowMillis + overlapMillis</code>; previous keys whose window already closed are dropped.
+     *
+     * @param keys          the new keys by algorithm
+     * @param nowMillis     the rotation time
+     * @param overlapMillis how long the replaced keys stay valid
+     * @return the rotated ring
+     */
+    public KeyRing rotate(Map<String, SecretKey> keys, long nowMillis, long overlapMillis) {
+        Objects.requireNonNull(keys, "keys");
+        final Map<String, Entry> newCurrent = new HashMap<>(current);
+        final Map<String, Entry> newByKeyId = new HashMap<>();
+
+        // keep the previous keys that are still within their overlap window
+        byKeyId.forEach((kid, entry) -> {
+            if (entry.isRetired() && entry.isUsable(nowMillis)) {
+                newByKeyId.put(kid, entry);
+            }
+        });
+
+        keys.forEach((algorithm, key) -> {
+            final Entry entry = new Entry(keyIdOf(key.getEncoded()), algorithm, key, Long.MAX_VALUE);
+            final Entry replaced = newCurrent.put(algorithm, entry);
+            if (replaced != null && !replaced.keyId.equals(entry.keyId) && overlapMillis > 0) {
+                newByKeyId.put(replaced.keyId, replaced.retire(nowMillis + overlapMillis));
+            }
+        });
+
+        // current keys win over retired ones with the same kid
+        newCurrent.values().forEach(entry -> newByKeyId.put(entry.keyId, entry));
+
+        return new KeyRing(version + 1, Collections.unmodifiableMap(newCurrent),
+                           Collections.unmodifiableMap(newByKeyId));
+    }
+
+    /**
+     * @return the ring version, incremented on every rotation
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param algorithm the algorithm name
+     * @return the key currently used to sign with the algorithm, or null
+     */
+    public Entry current(String algorithm) {
+        return current.get(algorithm);
+    }
+
+    /**
+     * Returns the key to verify a token with. Tokens with a <code>kid</code> resolve to the current or an overlapping
+     * previous key; tokens without one fall back to the current key of their algorithm.
+     *
+     * @param keyId     the kid header, may be null
+     * @param algorithm the alg header
+     * @param nowMillis the current time
+     * @return the key, or null if the kid is unknown or its overlap window has closed
+     */
+    public Entry find(String keyId, String algorithm, long nowMillis) {
+        if (keyId == null) {
+            return current.get(algorithm);
+        }
+
+        final Entry entry = byKeyId.get(keyId);
+        return (entry != null && entry.isUsable(nowMillis)) ? entry : null;
+    }
+
+    /**
+     * @return the current keys by algorithm
+     */
+    public Map<String, SecretKey> getCurrentKeys() {
+        final Map<String, SecretKey> keys = new LinkedHashMap<>();
+        current.forEach((algorithm, entry) -> keys.put(algorithm, entry.getKey()));
+        return keys;
+    }
+
+    /**
+     * @return the current and the still overlapping previous keys
+     */
+    public Collection<Entry> getEntries() {
+        return byKeyId.values();
+    }
+
+    /**
+     * A key of the ring with its id and the end of its validity.
+     */
+    public static final class Entry {
+
+        private final String keyId;
+        private final String algorithm;
+        private final SecretKey key;
+        private final long validUntilMillis;
+
+        private Entry(String keyId, String algorithm, SecretKey key, long validUntilMillis) {
+            this.keyId = keyId;
+            this.algorithm = algorithm;
+            this.key = key;
+            this.validUntilMillis = validUntilMillis;
+        }
+
+        public String getKeyId() {
+            return keyId;
+        }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public SecretKey getKey() {
+            return key;
+        }
+
+        public long getValidUntilMillis() {
+            return validUntilMillis;
+        }
+
+        public boolean isRetired() {
+            return validUntilMillis != Long.MAX_VALUE;
+        }
+
+        private boolean isUsable(long nowMillis) {
+            return nowMillis < validUntilMillis;
+        }
+
+        private Entry retire(long validUntilMillis) {
+            return new Entry(keyId, algorithm, key, validUntilMillis);
+        }
+    }
+}
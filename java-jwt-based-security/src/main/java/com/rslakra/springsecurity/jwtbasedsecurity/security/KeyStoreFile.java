@@ -0,0 +1,270 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.security;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32C;
+
+/**
+ * A keyring persisted to a file, so restarts and other instances on the host keep verifying issued tokens.
+ * <p>
+ * The file is read through a memory mapping and holds a fixed header (magic, format version, payload length and the
+ * CRC32C of the payload) followed by the ring version and its entries. A file whose checksum doesn't match is rejected
+ * as a whole. Writes go to a temporary file in the same directory, are forced to disk and then atomically renamed over
+ * the keystore, so readers only ever see a complete ring. {@link #update(KeyRing, UnaryOperator)} holds an exclusive
+ * lock on a sibling <code>.lock</code> file, so concurrent rotations by several processes apply on top of each other
+ * instead of overwriting each other.
+ *
+ * @author Rohtash Lakra
+ */
+public final class KeyStoreFile {
+
+    // "JWKS"
+    private static final int MAGIC = 0x4A574B53;
+    private static final int FORMAT_VERSION = 1;
+    // magic, format version, payload length, CRC32C
+    private static final int HEADER_BYTES = 16;
+    private static final int MAX_PAYLOAD_BYTES = 1024 * 1024;
+
+    private final Path path;
+    private final Path lockPath;
+
+    /**
+     * @param path the keystore file; its directory is created on the first write
+     */
+    public KeyStoreFile(Path path) {
+        this.path = Objects.requireNonNull(path, "path").toAbsolutePath();
+        this.lockPath = this.path.resolveSibling(this.path.getFileName() + ".lock");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the modification time of the keystore, or null if it doesn't exist
+     */
+    public FileTime lastModified() {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read keystore: " + path, ex);
+        }
+    }
+
+    /**
+     * Loads the persisted ring. Retired keys whose overlap window has closed are dropped.
+     *
+     * @param nowMillis the current time
+     * @return the ring, or null if the keystore doesn't exist
+     * @throws IllegalStateException if the keystore is corrupt
+     */
+    public KeyRing load(long nowMillis) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_BYTES || size > HEADER_BYTES + MAX_PAYLOAD_BYTES) {
+                throw new IllegalStateException("Invalid keystore size: " + size + " of " + path);
+            }
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), nowMillis);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read keystore: " + path, ex);
+        }
+    }
+
+    /**
+     * Writes the ring atomically, replacing the keystore.
+     *
+     * @param keyRing the ring
+     */
+    public void store(KeyRing keyRing) {
+        final ByteBuffer payload = write(keyRing);
+        final CRC32C checksum = new CRC32C();
+        checksum.update(payload.duplicate());
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+            .putInt(MAGIC)
+            .putInt(FORMAT_VERSION)
+            .putInt(payload.remaining())
+            .putInt((int) checksum.getValue())
+            .flip();
+
+        Path tempFile = null;
+        try {
+            Files.createDirectories(path.getParent());
+            tempFile = createTempFile();
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining() || payload.hasRemaining()) {
+                    channel.write(new ByteBuffer[]{header, payload});
+                }
+                channel.force(true);
+            }
+            Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            tempFile = null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to write keystore: " + path, ex);
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignored) {
+                    // the write already failed; a stray temporary file is harmless
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a rotation to the persisted ring under an exclusive file lock and writes the result back. A missing
+     * keystore is created, applying the rotation to the ring given instead.
+     *
+     * @param fallback the ring to rotate if the keystore doesn't exist yet
+     * @param rotation the rotation
+     * @return the stored ring
+     * @throws IllegalStateException if the keystore is corrupt
+     */
+    public synchronized KeyRing update(KeyRing fallback, UnaryOperator<KeyRing> rotation) {
+        try {
+            Files.createDirectories(path.getParent());
+            try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE,
+                                                            StandardOpenOption.WRITE);
+                 FileLock ignored = lockChannel.lock()) {
+                final KeyRing persisted = load(System.currentTimeMillis());
+                final KeyRing rotated = rotation.apply(persisted != null ? persisted : fallback);
+                store(rotated);
+                return rotated;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to lock keystore: " + lockPath, ex);
+        }
+    }
+
+    /**
+     * @return an empty temporary file next to the keystore, readable by the owner only where supported
+     */
+    private Path createTempFile() throws IOException {
+        final Path directory = path.getParent();
+        final String prefix = path.getFileName() + ".";
+        try {
+            return Files.createTempFile(directory, prefix, ".tmp",
+                                        PosixFilePermissions.asFileAttribute(
+                                            PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException ex) {
+            return Files.createTempFile(directory, prefix, ".tmp");
+        }
+    }
+
+    /**
+     * @param buffer    the mapped keystore
+     * @param nowMillis the current time
+     * @return the ring
+     */
+    private KeyRing read(MappedByteBuffer buffer, long nowMillis) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalStateException("Not a keystore: " + path);
+        }
+        final int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported keystore format: " + formatVersion + " of " + path);
+        }
+        final int payloadBytes = buffer.getInt();
+        final int expectedChecksum = buffer.getInt();
+        if (payloadBytes != buffer.remaining()) {
+            throw new IllegalStateException("Truncated keystore: " + path);
+        }
+
+        final CRC32C checksum = new CRC32C();
+        checksum.update(buffer.duplicate());
+        if ((int) checksum.getValue() != expectedChecksum) {
+            throw new IllegalStateException("Keystore checksum mismatch: " + path);
+        }
+
+        try {
+            final long version = buffer.getLong();
+            final int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IllegalStateException("Invalid keystore entry count: " + count + " of " + path);
+            }
+            final List<KeyRing.Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final String algorithm = readString(buffer);
+                final String keyAlgorithm = readString(buffer);
+                final long validUntilMillis = buffer.getLong();
+                final SecretKey key = new SecretKeySpec(readBytes(buffer), keyAlgorithm);
+                entries.add(KeyRing.entry(algorithm, key, validUntilMillis));
+            }
+            return KeyRing.restore(version, entries, nowMillis);
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IllegalStateException("Malformed keystore: " + path, ex);
+        }
+    }
+
+    /**
+     * @param keyRing the ring
+     * @return the serialized ring, ready to be read
+     */
+    private static ByteBuffer write(KeyRing keyRing) {
+        final Collection<KeyRing.Entry> entries = keyRing.getEntries();
+        final List<byte[]> fields = new ArrayList<>(entries.size() * 3);
+        int size = Long.BYTES + Integer.BYTES;
+        for (KeyRing.Entry entry : entries) {
+            final byte[] algorithm = entry.getAlgorithm().getBytes(StandardCharsets.UTF_8);
+            final byte[] keyAlgorithm = entry.getKey().getAlgorithm().getBytes(StandardCharsets.UTF_8);
+            final byte[] key = entry.getKey().getEncoded();
+            fields.add(algorithm);
+            fields.add(keyAlgorithm);
+            fields.add(key);
+            size += Integer.BYTES * 3 + algorithm.length + keyAlgorithm.length + key.length + Long.BYTES;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size).putLong(keyRing.getVersion()).putInt(entries.size());
+        int field = 0;
+        for (KeyRing.Entry entry : entries) {
+            writeBytes(buffer, fields.get(field++));
+            writeBytes(buffer, fields.get(field++));
+            buffer.putLong(entry.getValidUntilMillis());
+            writeBytes(buffer, fields.get(field++));
+        }
+        return buffer.flip();
+    }
+
+    private static void writeBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid field length: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        return new String(readBytes(buffer), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,260 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.InvalidKeyException;
+import io.jsonwebtoken.security.MacAlgorithm;
+import io.jsonwebtoken.security.SecretKeyBuilder;
+import io.jsonwebtoken.security.SecureRequest;
+import io.jsonwebtoken.security.SecurityException;
+import io.jsonwebtoken.security.SignatureException;
+import io.jsonwebtoken.security.VerifySecureDigestRequest;
+import io.jsonwebtoken.security.WeakKeyException;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The JWA <code>HS256</code>, <code>HS384</code> and <code>HS512</code> algorithms, backed by pools of initialized
+ * {@link Mac} instances per key.
+ * <p>
+ * jjwt's own algorithms look up a new Mac from the JCA providers and initialize it with the key on every token. Here a
+ * signing or verification borrows a Mac that is already initialized with its key and hands it back when done;
+ * <code>doFinal()</code> leaves a Mac reset to that key, so it is reused as is. When the pool of a key is empty a new
+ * Mac is created, and a Mac that doesn't fit back into a full pool is dropped. Signatures are compared in constant time
+ * over the raw bytes. Tokens are byte-for-byte what jjwt's algorithms write and read.
+ *
+ * @author Rohtash Lakra
+ */
+public final class PooledMacAlgorithm implements MacAlgorithm {
+
+    // keys only change on rotation, so a full map means the older keys are gone for good
+    private static final int MAX_POOLED_KEYS = 16;
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    private static final int BUFFER_SIZE = 512;
+    // the PKCS12 OIDs of HmacSHA256/384/512, which jjwt accepts as well
+    private static final Set<String> HMAC_OIDS = Set.of("1.2.840.113549.2.9", "1.2.840.113549.2.10",
+                                                        "1.2.840.113549.2.11");
+
+    public static final PooledMacAlgorithm HS256 = new PooledMacAlgorithm(Jwts.SIG.HS256, "HmacSHA256", POOL_SIZE);
+    public static final PooledMacAlgorithm HS384 = new PooledMacAlgorithm(Jwts.SIG.HS384, "HmacSHA384", POOL_SIZE);
+    public static final PooledMacAlgorithm HS512 = new PooledMacAlgorithm(Jwts.SIG.HS512, "HmacSHA512", POOL_SIZE);
+
+    private static final List<PooledMacAlgorithm> VALUES = List.of(HS256, HS384, HS512);
+
+    // jjwt's algorithm, generating keys of this algorithm
+    private final MacAlgorithm standard;
+    private final String jcaName;
+    private final int poolSize;
+    private final Map<SecretKey, BlockingQueue<Mac>> pools = new ConcurrentHashMap<>();
+    private final LongAdder macsCreated = new LongAdder();
+
+    /**
+     * @param standard the jjwt algorithm with the same id
+     * @param jcaName  the JCA name of the MAC
+     * @param poolSize the maximum number of idle Macs kept per key
+     */
+    private PooledMacAlgorithm(MacAlgorithm standard, String jcaName, int poolSize) {
+        this.standard = standard;
+        this.jcaName = jcaName;
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * @param algorithm the alg header value
+     * @return the pooled algorithm, or null if it isn't an HMAC algorithm
+     */
+    public static PooledMacAlgorithm forId(String algorithm) {
+        for (PooledMacAlgorithm value : VALUES) {
+            if (value.getId().equals(algorithm)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the HS256, HS384 and HS512 algorithms
+     */
+    public static List<PooledMacAlgorithm> values() {
+        return VALUES;
+    }
+
+    @Override
+    public String getId() {
+        return standard.getId();
+    }
+
+    @Override
+    public SecretKeyBuilder key() {
+        return standard.key();
+    }
+
+    @Override
+    public int getKeyBitLength() {
+        return standard.getKeyBitLength();
+    }
+
+    @Override
+    public byte[] digest(SecureRequest<InputStream, SecretKey> request) throws SecurityException {
+        final SecretKey key = request.getKey();
+        final Mac mac = borrow(key);
+        try {
+            update(mac, request.getPayload());
+            return mac.doFinal();
+        } finally {
+            release(key, mac);
+        }
+    }
+
+    @Override
+    public boolean verify(VerifySecureDigestRequest<SecretKey> request) throws SecurityException {
+        final byte[] signature = request.getDigest();
+        if (signature == null || signature.length == 0) {
+            throw new IllegalArgumentException("Request signature byte array cannot be null or empty.");
+        }
+
+        final SecretKey key = request.getKey();
+        final Mac mac = borrow(key);
+        try {
+            update(mac, request.getPayload());
+            return MessageDigest.isEqual(mac.doFinal(), signature);
+        } finally {
+            release(key, mac);
+        }
+    }
+
+    /**
+     * Borrows a Mac initialized with the key. Every borrowed Mac must be handed back with
+     * {@link #release(SecretKey, Mac)} once its <code>doFinal()</code> returned.
+     *
+     * @param key the HMAC key
+     * @return the Mac
+     * @throws WeakKeyException    if the key is too short for the algorithm
+     * @throws InvalidKeyException if the key isn't an HMAC key
+     */
+    public Mac borrow(SecretKey key) {
+        final Mac mac = poolOf(key).poll();
+        if (mac != null) {
+            return mac;
+        }
+        macsCreated.increment();
+        return createMac(key);
+    }
+
+    /**
+     * Creates a Mac initialized with the key outside of the pools, as jjwt's algorithm does per token.
+     *
+     * @param key the HMAC key
+     * @return the Mac
+     * @throws WeakKeyException    if the key is too short for the algorithm
+     * @throws InvalidKeyException if the key isn't an HMAC key
+     */
+    public Mac newMac(SecretKey key) {
+        validateKey(key);
+        return createMac(key);
+    }
+
+    /**
+     * Hands a borrowed Mac back to the pool of its key.
+     *
+     * @param key the key the Mac was borrowed for
+     * @param mac the Mac
+     */
+    public void release(SecretKey key, Mac mac) {
+        // only needed if the operation failed before doFinal()
+        mac.reset();
+        final BlockingQueue<Mac> pool = pools.get(key);
+        if (pool != null) {
+            pool.offer(mac);
+        }
+    }
+
+    /**
+     * @return how many Macs were created, and how many keys and idle Macs the pools hold
+     */
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("macsCreated", macsCreated.sum());
+        stats.put("keys", (long) pools.size());
+        stats.put("macsIdle", pools.values().stream().mapToLong(BlockingQueue::size).sum());
+        return stats;
+    }
+
+    /**
+     * @param key the HMAC key
+     * @return the pool of the key, validating the key on first use
+     */
+    private BlockingQueue<Mac> poolOf(SecretKey key) {
+        BlockingQueue<Mac> pool = (key == null ? null : pools.get(key));
+        if (pool == null) {
+            validateKey(key);
+            if (pools.size() >= MAX_POOLED_KEYS) {
+                pools.clear();
+            }
+            pool = pools.computeIfAbsent(key, ignored -> new ArrayBlockingQueue<>(poolSize));
+        }
+        return pool;
+    }
+
+    private Mac createMac(SecretKey key) {
+        try {
+            final Mac mac = Mac.getInstance(jcaName);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new SignatureException("Unable to initialize " + jcaName + " with the key", ex);
+        }
+    }
+
+    /**
+     * Rejects keys jjwt's algorithm would reject: non-HMAC keys and keys shorter than the hash output.
+     *
+     * @param key the key
+     */
+    private void validateKey(SecretKey key) {
+        if (key == null) {
+            throw new InvalidKeyException("MAC key cannot be null.");
+        }
+        final String keyAlgorithm = key.getAlgorithm();
+        if (keyAlgorithm == null || !(keyAlgorithm.regionMatches(true, 0, "HmacSHA", 0, 7)
+                                      || HMAC_OIDS.contains(keyAlgorithm))) {
+            throw new InvalidKeyException("The key's algorithm '" + keyAlgorithm
+                                          + "' is not an HmacSHA* algorithm and cannot be used with " + getId() + ".");
+        }
+        final byte[] encoded = key.getEncoded();
+        final long bits = (encoded == null ? 0 : encoded.length * 8L);
+        if (bits < getKeyBitLength()) {
+            throw new WeakKeyException("The key's size is " + bits + " bits which is not secure enough for the "
+                                       + getId() + " algorithm, which requires keys of at least " + getKeyBitLength()
+                                       + " bits.");
+        }
+    }
+
+    /**
+     * @param mac     the Mac
+     * @param payload the signed data
+     */
+    private static void update(Mac mac, InputStream payload) {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int read;
+            while ((read = payload.read(buffer)) != -1) {
+                mac.update(buffer, 0, read);
+            }
+        } catch (IOException ex) {
+            throw new SignatureException("Unable to read the signed data", ex);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.security;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.MacAlgorithm;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+/**
+ * The implementation of the HMAC algorithms used to sign and verify tokens, selected with
+ * <code>jwt.signing.engine</code>.
+ * <p>
+ * SecretsService holds the selected engine, and hands it to every signing and verification path: the jjwt builders
+ * and parsers through {@link #algorithm(String)}, and the paths computing the MAC over raw bytes (CompactToken,
+ * CwtCodec and JwtTemplate) through {@link #borrowMac(String, SecretKey)}. The JWTUtils methods without an engine
+ * argument use {@link #DEFAULT}.
+ *
+ * @author Rohtash Lakra
+ */
+public enum SigningEngine {
+
+    // jjwt's algorithms; a new Mac is looked up and initialized per token
+    JJWT,
+    // PooledMacAlgorithm; initialized Macs are reused per key
+    POOLED;
+
+    public static final SigningEngine DEFAULT = POOLED;
+
+    /**
+     * @param algorithm the alg header value
+     * @return the implementation of the algorithm, or null if it isn't an HMAC algorithm
+     */
+    public MacAlgorithm algorithm(String algorithm) {
+        if (this == POOLED) {
+            return PooledMacAlgorithm.forId(algorithm);
+        }
+
+        if (JWTHeaderUtils.HS256.equals(algorithm)) {
+            return Jwts.SIG.HS256;
+        } else if (JWTHeaderUtils.HS384.equals(algorithm)) {
+            return Jwts.SIG.HS384;
+        } else if (JWTHeaderUtils.HS512.equals(algorithm)) {
+            return Jwts.SIG.HS512;
+        }
+        return null;
+    }
+
+    /**
+     * @param secretKey the signing key
+     * @return the implementation of the algorithm named by the key, or null to let jjwt pick one by the key length
+     */
+    public MacAlgorithm algorithmFor(SecretKey secretKey) {
+        return algorithm(JWTHeaderUtils.algorithmOf(secretKey));
+    }
+
+    /**
+     * Borrows a Mac initialized with the key, for the paths computing the MAC over raw bytes. Every borrowed Mac must
+     * be handed back with {@link #releaseMac(String, SecretKey, Mac)} once its <code>doFinal()</code> returned.
+     *
+     * @param algorithm the alg header value
+     * @param key       the HMAC key
+     * @return a pooled Mac, or a new one per call with {@link #JJWT}
+     * @throws UnsupportedJwtException if the algorithm isn't an HMAC algorithm
+     */
+    public Mac borrowMac(String algorithm, SecretKey key) {
+        final PooledMacAlgorithm macAlgorithm = macAlgorithm(algorithm);
+        return (this == POOLED ? macAlgorithm.borrow(key) : macAlgorithm.newMac(key));
+    }
+
+    /**
+     * Hands a borrowed Mac back.
+     *
+     * @param algorithm the alg header value the Mac was borrowed for
+     * @param key       the key the Mac was borrowed for
+     * @param mac       the Mac
+     */
+    public void releaseMac(String algorithm, SecretKey key, Mac mac) {
+        if (this == POOLED) {
+            macAlgorithm(algorithm).release(key, mac);
+        }
+    }
+
+    /**
+     * @param algorithm the alg header value
+     * @return the HMAC algorithm
+     * @throws UnsupportedJwtException if the algorithm isn't an HMAC algorithm
+     */
+    private static PooledMacAlgorithm macAlgorithm(String algorithm) {
+        final PooledMacAlgorithm macAlgorithm = PooledMacAlgorithm.forId(algorithm);
+        if (macAlgorithm == null) {
+            throw new UnsupportedJwtException("Unsupported HMAC algorithm: " + algorithm);
+        }
+        return macAlgorithm;
+    }
+}
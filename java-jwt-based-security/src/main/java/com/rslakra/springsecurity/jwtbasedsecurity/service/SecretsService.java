@@ -1,40 +1,275 @@
 package com.rslakra.springsecurity.jwtbasedsecurity.service;
 
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.VerifiedClaimsCache;
+import com.rslakra.springsecurity.jwtbasedsecurity.compression.ClaimDictionary;
+import com.rslakra.springsecurity.jwtbasedsecurity.compression.PooledDeflateAlgorithm;
+import com.rslakra.springsecurity.jwtbasedsecurity.metrics.JwtMetrics;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.KeyRing;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.KeyStoreFile;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.SigningEngine;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.CompactToken;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.CwtCodec;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.JwtParserBuilder;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.Locator;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.lang.NestedCollection;
+import io.jsonwebtoken.security.MacAlgorithm;
+import io.jsonwebtoken.security.SecureDigestAlgorithm;
 import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import javax.crypto.SecretKey;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.Key;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 @Service
 public class SecretsService {
 
-    private static final String HS256 = "HS256";
-    private static final String HS384 = "HS384";
-    private static final String HS512 = "HS512";
+    public static final long DEFAULT_KEY_OVERLAP_MILLIS = 60 * 60 * 1000L;
+    // how often an unknown kid may trigger a check of the keystore for keys rotated by another instance
+    public static final long KEY_STORE_CHECK_INTERVAL_MILLIS = 1000L;
 
-    // Store SecretKey objects directly (more reliable than Base64 strings)
-    private Map<String, SecretKey> secretKeys = new HashMap<>();
+    private static final String HS256 = JWTHeaderUtils.HS256;
+    private static final String HS384 = JWTHeaderUtils.HS384;
+    private static final String HS512 = JWTHeaderUtils.HS512;
+
+    // immutable keyring snapshot, swapped atomically on every rotation so readers never lock
+    private final AtomicReference<KeyRing> keyRing = new AtomicReference<>(KeyRing.empty());
+
+    // how long replaced keys still verify the tokens they signed
+    private final long keyOverlapMillis;
+
+    // already verified claims, dropped on every key rotation
+    private final VerifiedClaimsCache claimsCache;
+
+    // the file the keyring is loaded from and rotated into, or null to keep the keys in memory only
+    private final KeyStoreFile keyStore;
+    private volatile FileTime keyStoreModified;
+    private volatile long nextKeyStoreCheckMillis;
+
+    // the HMAC implementation of every signing and verification path, selected with jwt.signing.engine
+    private final SigningEngine signingEngine;
+
+    // expands the claims of tokens issued with compressed claim names and values
+    private final ClaimDictionary claimDictionary;
+
+    // resolves the verification key by the kid header, falling back to the current key of the alg header
+    private final LocatorAdapter<Key> keyLocator = new LocatorAdapter<>() {
+        @Override
+        protected Key locate(JwsHeader header) {
+            return findVerificationKey(header.getKeyId(), header.getAlgorithm());
+        }
+    };
+
+    // one immutable parser per algorithm, built once; the locator picks the key per token, so rotations need no rebuild
+    private final Map<String, JwtParser> parsers;
+
+    // accepts any algorithm; used when the alg header can't be sniffed, so jjwt reports the usual error
+    private final JwtParser defaultParser;
+
+    public SecretsService() {
+        this(new VerifiedClaimsCache(), DEFAULT_KEY_OVERLAP_MILLIS);
+    }
+
+    /**
+     * @param claimsCacheMaxSize      the maximum number of verified tokens to cache (0 disables the cache)
+     * @param claimsCacheMaxTtlMillis the maximum time a verified token stays cached
+     * @param keyOverlapMillis        how long replaced keys stay valid after a rotation
+     * @param keyStorePath            the file persisting the keyring, or empty to keep the keys in memory only
+     * @param signingEngine           the HMAC implementation signing and verifying tokens
+     * @param claimDictionary         the dictionary of compressed claim names and values
+     */
+    @Autowired
+    public SecretsService(@Value("${jwt.claims-cache.max-size:" + VerifiedClaimsCache.DEFAULT_MAX_SIZE + "}")
+                          int claimsCacheMaxSize,
+                          @Value("${jwt.claims-cache.max-ttl-millis:" + VerifiedClaimsCache.DEFAULT_MAX_TTL_MILLIS + "}")
+                          long claimsCacheMaxTtlMillis,
+                          @Value("${jwt.keyring.overlap-millis:" + DEFAULT_KEY_OVERLAP_MILLIS + "}")
+                          long keyOverlapMillis,
+                          @Value("${jwt.keystore.path:}") String keyStorePath,
+                          @Value("${jwt.signing.engine:pooled}") SigningEngine signingEngine,
+                          ClaimDictionary claimDictionary) {
+        this(new VerifiedClaimsCache(claimsCacheMaxSize, claimsCacheMaxTtlMillis), keyOverlapMillis,
+             keyStorePath.isBlank() ? null : new KeyStoreFile(Path.of(keyStorePath)), signingEngine, claimDictionary);
+    }
+
+    /**
+     * @param claimsCache      the verified claims cache
+     * @param keyOverlapMillis how long replaced keys stay valid after a rotation
+     */
+    public SecretsService(VerifiedClaimsCache claimsCache, long keyOverlapMillis) {
+        this(claimsCache, keyOverlapMillis, null);
+    }
+
+    /**
+     * @param claimsCache      the verified claims cache
+     * @param keyOverlapMillis how long replaced keys stay valid after a rotation
+     * @param keyStore         the file persisting the keyring, or null to keep the keys in memory only
+     */
+    public SecretsService(VerifiedClaimsCache claimsCache, long keyOverlapMillis, KeyStoreFile keyStore) {
+        this(claimsCache, keyOverlapMillis, keyStore, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * @param claimsCache      the verified claims cache
+     * @param keyOverlapMillis how long replaced keys stay valid after a rotation
+     * @param keyStore         the file persisting the keyring, or null to keep the keys in memory only
+     * @param signingEngine    the HMAC implementation signing and verifying tokens
+     */
+    public SecretsService(VerifiedClaimsCache claimsCache, long keyOverlapMillis, KeyStoreFile keyStore,
+                          SigningEngine signingEngine) {
+        this(claimsCache, keyOverlapMillis, keyStore, signingEngine, ClaimDictionary.EMPTY);
+    }
+
+    /**
+     * @param claimsCache      the verified claims cache
+     * @param keyOverlapMillis how long replaced keys stay valid after a rotation
+     * @param keyStore         the file persisting the keyring, or null to keep the keys in memory only
+     * @param signingEngine    the HMAC implementation signing and verifying tokens
+     * @param claimDictionary  the dictionary expanding the claims of tokens with a <code>cdv</code> header
+     */
+    public SecretsService(VerifiedClaimsCache claimsCache, long keyOverlapMillis, KeyStoreFile keyStore,
+                          SigningEngine signingEngine, ClaimDictionary claimDictionary) {
+        this.claimsCache = claimsCache;
+        this.signingEngine = signingEngine;
+        this.claimDictionary = claimDictionary;
+        this.keyStore = keyStore;
+        this.keyOverlapMillis = keyOverlapMillis;
+        this.parsers = Map.of(
+            HS256, buildParser(signingEngine.algorithm(HS256)),
+            HS384, buildParser(signingEngine.algorithm(HS384)),
+            HS512, buildParser(signingEngine.algorithm(HS512)));
+        this.defaultParser = parserBuilder().build();
+    }
+
+    /**
+     * @param algorithm the only algorithm the parser accepts, as implemented by the signing engine
+     * @return the parser
+     */
+    private JwtParser buildParser(MacAlgorithm algorithm) {
+        // jjwt refuses an empty algorithm registry, so remove every other algorithm instead of clearing
+        final NestedCollection<SecureDigestAlgorithm<?, ?>, JwtParserBuilder> signatureAlgorithms = keyedParserBuilder()
+            .sig();
+        Jwts.SIG.get().values().stream()
+            .filter(other -> !other.getId().equals(algorithm.getId()))
+            .forEach(signatureAlgorithms::remove);
+        return signatureAlgorithms.add(algorithm).and().build();
+    }
+
+    /**
+     * @return a parser builder locating keys in the keyring and inflating compressed payloads with pooled Inflaters
+     * instead of a new one per token
+     */
+    private JwtParserBuilder keyedParserBuilder() {
+        return Jwts.parser()
+            .keyLocator(keyLocator)
+            .zip().add(PooledDeflateAlgorithm.DEFAULT).and();
+    }
+
+    /**
+     * A parser builder set up like the parsers of this service: keys are located in the keyring, the HMAC algorithms
+     * are the signing engine's and compressed payloads are inflated with pooled Inflaters. Callers add their own
+     * requirements (<code>requireIssuer</code>, <code>require</code>, ...) on top of it and build the parser once.
+     *
+     * @return a new parser builder
+     */
+    public JwtParserBuilder parserBuilder() {
+        final NestedCollection<SecureDigestAlgorithm<?, ?>, JwtParserBuilder> signatureAlgorithms = keyedParserBuilder()
+            .sig();
+        // replaces jjwt's algorithms with the same ids
+        for (String algorithm : List.of(HS256, HS384, HS512)) {
+            signatureAlgorithms.add(signingEngine.algorithm(algorithm));
+        }
+        return signatureAlgorithms.and();
+    }
 
     /**
      * Initialize secrets on startup
+     * <p>
+     * With a keystore, the persisted keyring is loaded, so tokens issued before a restart (or by another instance
+     * sharing the keystore) keep verifying. New keys are only generated when the keystore is missing or lacks an
+     * algorithm.
      */
     @PostConstruct
     public void initObject() {
+        if (keyStore != null) {
+            final FileTime modified = keyStore.lastModified();
+            final KeyRing persisted = keyStore.load(System.currentTimeMillis());
+            if (persisted != null && persisted.current(HS256) != null && persisted.current(HS384) != null
+                && persisted.current(HS512) != null) {
+                keyStoreModified = modified;
+                keyRing.set(persisted);
+                claimsCache.invalidateAll();
+                return;
+            }
+        }
+
         refreshSecrets();
     }
 
+    /**
+     * @return the HMAC implementation tokens are signed and verified with; pass it to the JWTUtils, CwtCodec and
+     * JwtTemplate methods signing with the keys of this service
+     */
+    public SigningEngine getSigningEngine() {
+        return signingEngine;
+    }
+
+    /**
+     * @return the current keyring snapshot
+     */
+    public KeyRing getKeyRing() {
+        return keyRing.get();
+    }
+
+    /**
+     * @return the locator resolving verification keys from the kid/alg headers against the current keyring
+     */
+    public Locator<Key> getKeyLocator() {
+        return keyLocator;
+    }
+
+    /**
+     * @param algorithm the algorithm name
+     * @return the current signing key of the algorithm with its kid
+     */
+    public KeyRing.Entry getSigningKey(String algorithm) {
+        return keyRing.get().current(algorithm);
+    }
+
+    /**
+     * @return the current HS256 signing key with its kid
+     */
+    public KeyRing.Entry getHS256SigningKey() {
+        return getSigningKey(HS256);
+    }
+
     /**
      * @param algorithm the algorithm name
      * @return SecretKey for the algorithm
      */
     public SecretKey getSecretKey(String algorithm) {
-        return secretKeys.get(algorithm);
+        final KeyRing.Entry entry = getSigningKey(algorithm);
+        return (entry == null ? null : entry.getKey());
     }
 
     /**
@@ -63,7 +298,7 @@ public class SecretsService {
      */
     public Map<String, String> getSecrets() {
         Map<String, String> secrets = new HashMap<>();
-        secretKeys.forEach((alg, key) -> 
+        keyRing.get().getCurrentKeys().forEach((alg, key) ->
             secrets.put(alg, Base64.getEncoder().encodeToString(key.getEncoded()))
         );
         return secrets;
@@ -78,31 +313,33 @@ public class SecretsService {
         Assert.hasText(secrets.get(HS384), "HS384 secret is required");
         Assert.hasText(secrets.get(HS512), "HS512 secret is required");
 
+        final Map<String, SecretKey> keys = new LinkedHashMap<>();
         secrets.forEach((alg, base64Key) -> {
             byte[] keyBytes = Base64.getDecoder().decode(base64Key);
-            secretKeys.put(alg, new javax.crypto.spec.SecretKeySpec(keyBytes, "HmacSHA256"));
+            keys.put(alg, new javax.crypto.spec.SecretKeySpec(keyBytes, "HmacSHA256"));
         });
+        rotate(keys);
     }
 
     /**
      * @return byte array for HS256 secret
      */
     public byte[] getHS256SecretBytes() {
-        return secretKeys.get(HS256).getEncoded();
+        return getHS256SecretKey().getEncoded();
     }
 
     /**
      * @return byte array for HS384 secret
      */
     public byte[] getHS384SecretBytes() {
-        return secretKeys.get(HS384).getEncoded();
+        return getHS384SecretKey().getEncoded();
     }
 
     /**
      * @return byte array for HS512 secret
      */
     public byte[] getHS512SecretBytes() {
-        return secretKeys.get(HS512).getEncoded();
+        return getHS512SecretKey().getEncoded();
     }
 
     /**
@@ -112,42 +349,207 @@ public class SecretsService {
      */
     public Map<String, String> refreshSecrets() {
         // Generate keys for each algorithm using JJWT's secure key builder
-        secretKeys.put(HS256, Jwts.SIG.HS256.key().build());
-        secretKeys.put(HS384, Jwts.SIG.HS384.key().build());
-        secretKeys.put(HS512, Jwts.SIG.HS512.key().build());
+        final Map<String, SecretKey> keys = new LinkedHashMap<>();
+        keys.put(HS256, Jwts.SIG.HS256.key().build());
+        keys.put(HS384, Jwts.SIG.HS384.key().build());
+        keys.put(HS512, Jwts.SIG.HS512.key().build());
+        rotate(keys);
 
         return getSecrets();
     }
 
     /**
-     * Parse and verify a JWT token
+     * Publishes a new keyring in which the replaced keys stay valid for the overlap window.
+     *
+     * @param keys the new keys by algorithm
+     */
+    private void rotate(Map<String, SecretKey> keys) {
+        final long now = System.currentTimeMillis();
+        final UnaryOperator<KeyRing> rotation = current -> current.rotate(keys, now, keyOverlapMillis);
+        if (keyStore == null) {
+            keyRing.updateAndGet(rotation);
+        } else {
+            // rotate the persisted ring, which may hold keys another instance rotated in since it was loaded
+            synchronized (keyStore) {
+                keyRing.set(keyStore.update(keyRing.get(), rotation));
+                keyStoreModified = keyStore.lastModified();
+            }
+        }
+        claimsCache.invalidateAll();
+    }
+
+    /**
+     * Loads the keystore again if another instance has rotated it since, at most once per
+     * {@link #KEY_STORE_CHECK_INTERVAL_MILLIS}, so tokens with unknown kids can't turn into a file read each.
+     *
+     * @return true if a newer keyring was loaded
+     */
+    private boolean reloadKeyStore() {
+        final long now = System.currentTimeMillis();
+        if (keyStore == null || now < nextKeyStoreCheckMillis) {
+            return false;
+        }
+        nextKeyStoreCheckMillis = now + KEY_STORE_CHECK_INTERVAL_MILLIS;
+
+        try {
+            synchronized (keyStore) {
+                final FileTime modified = keyStore.lastModified();
+                if (modified == null || modified.equals(keyStoreModified)) {
+                    return false;
+                }
+                final KeyRing persisted = keyStore.load(now);
+                if (persisted == null) {
+                    return false;
+                }
+                keyStoreModified = modified;
+                keyRing.set(persisted);
+            }
+        } catch (IllegalStateException | UncheckedIOException ex) {
+            // keep verifying with the keys in memory; the keystore is checked again after the interval
+            return false;
+        }
+        claimsCache.invalidateAll();
+        return true;
+    }
+
+    /**
+     * @param keyId     the kid header, may be null
+     * @param algorithm the alg header
+     * @return the key to verify the token with
+     */
+    private SecretKey findVerificationKey(String keyId, String algorithm) {
+        KeyRing.Entry entry = keyRing.get().find(keyId, algorithm, System.currentTimeMillis());
+        if (entry == null && keyId != null && reloadKeyStore()) {
+            entry = keyRing.get().find(keyId, algorithm, System.currentTimeMillis());
+        }
+        if (entry == null) {
+            if (keyId == null) {
+                throw new IllegalStateException("No secret key found for algorithm: " + algorithm);
+            }
+            throw new JwtException("No secret key found for kid: " + keyId);
+        }
+        if (!entry.getAlgorithm().equals(algorithm)) {
+            throw new JwtException("Key " + keyId + " is not valid for algorithm: " + algorithm);
+        }
+
+        return entry.getKey();
+    }
+
+    /**
+     * @return the hit/miss/eviction stats of the verified claims cache
+     */
+    public Map<String, Long> getClaimsCacheStats() {
+        return claimsCache.getStats();
+    }
+
+    /**
+     * Parse and verify a JWT token, either a compact JWS or a CWT (see {@link CwtCodec})
+     * <p>
+     * Tokens that were already verified are served from the claims cache until their own <code>exp</code>.
      *
      * @param token the JWT token
      * @return the Claims
      */
     public Claims parseToken(String token) {
-        // Extract algorithm from header to get the right key
-        String[] parts = token.split("\\.");
-        if (parts.length >= 2) {
-            String headerJson = new String(Base64.getUrlDecoder().decode(parts[0]));
-            String algorithm = HS256; // default
-            if (headerJson.contains("HS384")) {
-                algorithm = HS384;
-            } else if (headerJson.contains("HS512")) {
-                algorithm = HS512;
+        final long start = JwtMetrics.start();
+        try {
+            Claims claims = claimsCache.get(token);
+            JwtMetrics.recordCacheLookup(claims != null);
+            if (claims == null) {
+                final long generation = claimsCache.generation();
+                claims = verifyToken(token);
+                claimsCache.put(token, claims, generation);
             }
 
-            SecretKey key = getSecretKey(algorithm);
-            if (key == null) {
-                throw new IllegalStateException("No secret key found for algorithm: " + algorithm);
-            }
+            JwtMetrics.record(JwtMetrics.Operation.PARSE_TOKEN, start, token, null);
+            return claims;
+        } catch (RuntimeException ex) {
+            JwtMetrics.record(JwtMetrics.Operation.PARSE_TOKEN, start, token, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Parse and verify a JWT token against the keyring, bypassing the claims cache. Its claims are expanded if they
+     * were compressed with the claim dictionary.
+     *
+     * @param token the JWT token
+     * @return the verified Jws
+     */
+    public Jws<Claims> parseSignedClaims(String token) {
+        return parseSignedClaims(CompactToken.of(token));
+    }
 
-            return Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    /**
+     * Parse and verify a token view against the keyring, bypassing the claims cache. Views over request bytes are
+     * parsed as they are, without first being turned into a String. Its claims are expanded if they were compressed
+     * with the claim dictionary.
+     *
+     * @param token the token view
+     * @return the verified Jws
+     */
+    public Jws<Claims> parseSignedClaims(CompactToken token) {
+        // pick the parser by the alg header; the key is looked up by the kid (or alg) header of the token
+        final String algorithm = token.getAlgorithm();
+        return parseSignedClaims(token, (algorithm == null ? defaultParser : parsers.get(algorithm)));
+    }
+
+    /**
+     * Parse and verify a JWT token with a parser built on {@link #parserBuilder()}, e.g. one enforcing required
+     * claims, bypassing the claims cache. Its claims are expanded if they were compressed with the claim dictionary.
+     *
+     * @param token  the JWT token
+     * @param parser the parser
+     * @return the verified Jws
+     */
+    public Jws<Claims> parseSignedClaims(String token, JwtParser parser) {
+        return parseSignedClaims(CompactToken.of(token), parser);
+    }
+
+    /**
+     * @param token  the token view
+     * @param parser the parser
+     * @return the verified Jws, with its claims expanded
+     */
+    private Jws<Claims> parseSignedClaims(CompactToken token, JwtParser parser) {
+        final long start = JwtMetrics.start();
+        try {
+            final Jws<Claims> jws = claimDictionary.expand(parser.parseSignedClaims(token));
+            JwtMetrics.record(JwtMetrics.Operation.VERIFY, start, token, null);
+            return jws;
+        } catch (RuntimeException ex) {
+            JwtMetrics.record(JwtMetrics.Operation.VERIFY, start, token, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Verify a CWT against the keyring, bypassing the claims cache. Its claims are expanded if they were compressed
+     * with the claim dictionary.
+     *
+     * @param token the CWT
+     * @return the verified Claims
+     */
+    public Claims parseCwt(String token) {
+        final long start = JwtMetrics.start();
+        try {
+            final Claims claims = CwtCodec.decode(token, this::findVerificationKey, claimDictionary, signingEngine);
+            JwtMetrics.record(JwtMetrics.Operation.VERIFY, start, token, null);
+            return claims;
+        } catch (RuntimeException ex) {
+            JwtMetrics.record(JwtMetrics.Operation.VERIFY, start, token, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * @param token the JWT token
+     * @return the verified Claims, expanded if they were compressed with the claim dictionary
+     */
+    private Claims verifyToken(String token) {
+        if (CwtCodec.isCwt(token)) {
+            return parseCwt(token);
         }
-        throw new IllegalArgumentException("Invalid JWT token format");
+        return parseSignedClaims(token).getPayload();
     }
 }
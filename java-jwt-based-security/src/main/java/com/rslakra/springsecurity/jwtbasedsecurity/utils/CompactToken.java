@@ -0,0 +1,245 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.utils;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.security.SigningEngine;
+import io.jsonwebtoken.JwtException;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * A read-only view of a compact JWS over the original characters or ASCII bytes of the token.
+ * <p>
+ * Only the offsets of the two '.' separators are recorded when the view is created. The header and the payload are
+ * decoded lazily, on first access, and the signature is checked by feeding the original data to the MAC and comparing
+ * it with the signature segment as it is decoded, so the token is never split or copied. The view is itself a
+ * {@link CharSequence}, so it can be handed to {@link JWTHeaderUtils#sniffAlgorithm(CharSequence)} or to a jjwt parser
+ * as is.
+ *
+ * @author Rohtash Lakra
+ */
+public final class CompactToken implements CharSequence {
+
+    // MAC input is fed from char data through a chunk of this size
+    private static final int CHUNK_SIZE = 256;
+
+    private final CharSequence chars;
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    // the indexes of the two separators, relative to offset
+    private final int headerEnd;
+    private final int payloadEnd;
+
+    private String header;
+    private String payload;
+
+    private CompactToken(CharSequence chars, byte[] bytes, int offset, int length) {
+        this.chars = chars;
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+
+        int first = -1;
+        int second = -1;
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) == '.') {
+                if (first < 0) {
+                    first = i;
+                } else if (second < 0) {
+                    second = i;
+                } else {
+                    second = -1;
+                    break;
+                }
+            }
+        }
+        if (first <= 0 || second < 0) {
+            throw new IllegalArgumentException("Invalid JWT token format");
+        }
+        this.headerEnd = first;
+        this.payloadEnd = second;
+    }
+
+    /**
+     * @param token the compact JWS
+     * @return the view over the token
+     * @throws IllegalArgumentException if the token doesn't have exactly three segments
+     */
+    public static CompactToken of(CharSequence token) {
+        Objects.requireNonNull(token, "token");
+        if (token instanceof CompactToken) {
+            return (CompactToken) token;
+        }
+
+        return new CompactToken(token, null, 0, token.length());
+    }
+
+    /**
+     * @param token  the ASCII bytes holding the compact JWS
+     * @param offset the index of the first byte of the token
+     * @param length the length of the token
+     * @return the view over the bytes, which must not change while the view is in use
+     * @throws IllegalArgumentException if the token doesn't have exactly three segments
+     */
+    public static CompactToken of(byte[] token, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, token.length);
+        return new CompactToken(null, token, offset, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (bytes != null ? (char) (bytes[offset + index] & 0xFF) : chars.charAt(offset + index));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (bytes != null) {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        return chars.toString();
+    }
+
+    /**
+     * @return the alg header if it is an HMAC algorithm, without decoding the header
+     */
+    public String getAlgorithm() {
+        return JWTHeaderUtils.sniffAlgorithm(this);
+    }
+
+    /**
+     * @return the decoded header JSON
+     */
+    public String getHeader() {
+        if (header == null) {
+            header = decode(0, headerEnd);
+        }
+        return header;
+    }
+
+    /**
+     * @return the decoded payload JSON
+     */
+    public String getPayload() {
+        if (payload == null) {
+            payload = decode(headerEnd + 1, payloadEnd);
+        }
+        return payload;
+    }
+
+    /**
+     * Checks the HMAC signature of the token with the default signing engine.
+     *
+     * @param secretKey the HMAC key
+     * @return true if the signature matches
+     * @throws JwtException if the alg header is not an HMAC algorithm, or the key is too short for it
+     */
+    public boolean verifySignature(SecretKey secretKey) {
+        return verifySignature(secretKey, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * Checks the HMAC signature of the token, computed over the original data with the algorithm of its alg header.
+     *
+     * @param secretKey     the HMAC key
+     * @param signingEngine the HMAC implementation
+     * @return true if the signature matches
+     * @throws JwtException if the alg header is not an HMAC algorithm, or the key is too short for it
+     */
+    public boolean verifySignature(SecretKey secretKey, SigningEngine signingEngine) {
+        final String algorithm = getAlgorithm();
+        if (algorithm == null) {
+            throw new JwtException("Unsupported or unreadable alg header");
+        }
+
+        // already initialized with the key
+        final Mac mac = signingEngine.borrowMac(algorithm, secretKey);
+        try {
+            if (bytes != null) {
+                mac.update(bytes, offset, payloadEnd);
+            } else {
+                final byte[] chunk = new byte[Math.min(CHUNK_SIZE, payloadEnd)];
+                for (int start = 0; start < payloadEnd; start += chunk.length) {
+                    final int end = Math.min(start + chunk.length, payloadEnd);
+                    for (int i = start; i < end; i++) {
+                        chunk[i - start] = (byte) chars.charAt(offset + i);
+                    }
+                    mac.update(chunk, 0, end - start);
+                }
+            }
+
+            return signatureEquals(mac.doFinal());
+        } finally {
+            signingEngine.releaseMac(algorithm, secretKey, mac);
+        }
+    }
+
+    /**
+     * Compares the expected signature with the signature segment in constant time, decoding the segment on the fly.
+     *
+     * @param expected the computed MAC
+     * @return true if both are equal
+     */
+    private boolean signatureEquals(byte[] expected) {
+        final int start = payloadEnd + 1;
+        if ((long) (length - start) * 6 / 8 != expected.length) {
+            return false;
+        }
+
+        int diff = 0;
+        int index = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = start; i < length; i++) {
+            final int sextet = JWTHeaderUtils.decode(charAt(i));
+            if (sextet < 0) {
+                return false;
+            }
+            bits = (bits << 6) | sextet;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                diff |= ((bits >> bitCount) & 0xFF) ^ (expected[index++] & 0xFF);
+            }
+        }
+
+        return diff == 0;
+    }
+
+    /**
+     * @param start the first index of the segment
+     * @param end   the index past the segment
+     * @return the segment decoded as UTF-8
+     */
+    private String decode(int start, int end) {
+        final byte[] decoded = new byte[(end - start) * 6 / 8];
+        int index = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = start; i < end; i++) {
+            final int sextet = JWTHeaderUtils.decode(charAt(i));
+            if (sextet < 0) {
+                throw new IllegalArgumentException("Invalid Base64URL character at index: " + i);
+            }
+            bits = (bits << 6) | sextet;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                decoded[index++] = (byte) (bits >> bitCount);
+            }
+        }
+
+        return new String(decoded, 0, index, StandardCharsets.UTF_8);
+    }
+}
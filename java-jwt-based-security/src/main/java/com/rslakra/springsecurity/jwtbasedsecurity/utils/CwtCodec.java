@@ -0,0 +1,530 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.rslakra.springsecurity.jwtbasedsecurity.compression.ClaimDictionary;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.KeyRing;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.SigningEngine;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ClaimsBuilder;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.io.Encoders;
+import io.jsonwebtoken.security.SignatureException;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Encodes claims as a CBOR Web Token (RFC 8392): a <code>COSE_Mac0</code> structure (RFC 9052) holding the claims as a
+ * CBOR map, carried as one Base64URL string.
+ * <p>
+ * The registered claims use the integer keys of CWT (<code>iss</code> = 1 ... <code>jti</code> = 7, the latter as a
+ * byte string) and the NumericDate claims are CBOR integers; other claims keep their names. The protected header only
+ * holds the COSE algorithm (HMAC 256/256, 384/384 or 512/512), and the unprotected header the 8 raw bytes behind the
+ * <code>kid</code> of the signing key, so tokens resolve their key in the same {@link KeyRing} as JWS tokens. The MAC
+ * is computed by the pooled HMAC algorithms over the <code>MAC_structure</code> of RFC 9052, section 6.3.
+ * <p>
+ * Claims compressed with a {@link ClaimDictionary} carry its version in the protected header, as the text label
+ * <code>cdv</code>, and are expanded when decoded.
+ * <p>
+ * A CWT token never contains a '.' and starts with the bytes of a COSE_Mac0, which tells it apart from a compact JWS,
+ * see {@link #isCwt(CharSequence)}.
+ *
+ * @author Rohtash Lakra
+ */
+public final class CwtCodec {
+
+    // COSE header labels and MAC algorithm ids
+    private static final int COSE_ALG = 1;
+    private static final int COSE_KID = 4;
+    private static final int COSE_HMAC_256 = 5;
+    private static final int COSE_HMAC_384 = 6;
+    private static final int COSE_HMAC_512 = 7;
+    // the COSE_Mac0 tag; the CWT tag (61) is accepted but not written
+    private static final int COSE_MAC0_TAG = 17;
+    private static final String MAC0_CONTEXT = "MAC0";
+    private static final byte[] NO_EXTERNAL_AAD = new byte[0];
+    // the first byte of a COSE_Mac0: tag 17, a tag of the next byte (e.g. the CWT tag 61), or the untagged array
+    private static final int TAG_17_BYTE = 0xD1;
+    private static final int ONE_BYTE_TAG = 0xD8;
+    private static final int ARRAY_OF_4_BYTE = 0x84;
+
+    // CWT claim keys, in the order of their labels 1 to 7
+    private static final String[] CLAIM_NAMES = {JWTUtils.ISSUER, JWTUtils.SUBJECT, JWTUtils.AUDIENCE,
+                                                 JWTUtils.EXPIRATION, JWTUtils.NOT_BEFORE, JWTUtils.ISSUED_AT,
+                                                 JWTUtils.JWT_ID};
+
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+    private static final ObjectMapper CBOR_MAPPER = new CBORMapper(CBOR_FACTORY)
+        .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private CwtCodec() {
+    }
+
+    /**
+     * @param token the token
+     * @return true if the token is a CWT: it has no '.' separators and its first byte starts a COSE_Mac0 (an array of
+     * 4, possibly tagged)
+     */
+    public static boolean isCwt(CharSequence token) {
+        if (token.length() < 2) {
+            return false;
+        }
+        final int high = JWTHeaderUtils.decode(token.charAt(0));
+        final int low = JWTHeaderUtils.decode(token.charAt(1));
+        if (high < 0 || low < 0) {
+            return false;
+        }
+        final int firstByte = (high << 2) | (low >> 4);
+        if (firstByte != TAG_17_BYTE && firstByte != ONE_BYTE_TAG && firstByte != ARRAY_OF_4_BYTE) {
+            return false;
+        }
+        for (int i = 2; i < token.length(); i++) {
+            if (token.charAt(i) == '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes and MACs the claims, with the same registered claim types as
+     * {@link JWTUtils#builderWithClaims(Map)}.
+     *
+     * @param claims     the claims
+     * @param signingKey the signing key
+     * @return the Base64URL encoded COSE_Mac0
+     * @throws JwtException if a registered claim has the wrong type
+     */
+    public static String encode(Map<String, Object> claims, KeyRing.Entry signingKey) {
+        return encode(claims, signingKey, 0);
+    }
+
+    /**
+     * Encodes and MACs claims compressed with a {@link ClaimDictionary}, whose version is written to the protected
+     * header.
+     *
+     * @param claims            the claims
+     * @param signingKey        the signing key
+     * @param dictionaryVersion the claim dictionary version the claims were compressed with, or 0
+     * @return the Base64URL encoded COSE_Mac0
+     * @throws JwtException if a registered claim has the wrong type
+     */
+    public static String encode(Map<String, Object> claims, KeyRing.Entry signingKey, int dictionaryVersion) {
+        return encode(claims, signingKey, dictionaryVersion, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * Encodes and MACs claims compressed with a {@link ClaimDictionary} with the given HMAC implementation.
+     *
+     * @param claims            the claims
+     * @param signingKey        the signing key
+     * @param dictionaryVersion the claim dictionary version the claims were compressed with, or 0
+     * @param signingEngine     the HMAC implementation
+     * @return the Base64URL encoded COSE_Mac0
+     * @throws JwtException if a registered claim has the wrong type
+     */
+    public static String encode(Map<String, Object> claims, KeyRing.Entry signingKey, int dictionaryVersion,
+                                SigningEngine signingEngine) {
+        final int algorithm = coseAlgorithmOf(signingKey.getAlgorithm());
+        try {
+            final byte[] protectedHeader = protectedHeaderOf(algorithm, dictionaryVersion);
+            final byte[] payload = encodeClaims(claims);
+            final byte[] tag = mac(signingEngine, signingKey.getAlgorithm(), signingKey.getKey(), protectedHeader,
+                                   payload);
+
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(payload.length + tag.length + 32);
+            try (CBORGenerator generator = CBOR_FACTORY.createGenerator(output)) {
+                generator.writeTag(COSE_MAC0_TAG);
+                generator.writeStartArray(null, 4);
+                generator.writeBinary(protectedHeader);
+                generator.writeStartObject(null, 1);
+                generator.writeFieldId(COSE_KID);
+                generator.writeBinary(Decoders.BASE64URL.decode(signingKey.getKeyId()));
+                generator.writeEndObject();
+                generator.writeBinary(payload);
+                generator.writeBinary(tag);
+                generator.writeEndArray();
+            }
+            return Encoders.BASE64URL.encode(output.toByteArray());
+        } catch (IOException ex) {
+            throw new JwtException("Unable to encode CWT", ex);
+        }
+    }
+
+    /**
+     * Verifies the MAC of the token and decodes its claims, rejecting expired and not yet valid tokens.
+     *
+     * @param token       the Base64URL encoded COSE_Mac0
+     * @param keyResolver the verification key by kid and JWA algorithm
+     * @return the claims, with the registered claims under their JWT names
+     * @throws MalformedJwtException  if the token isn't a COSE_Mac0 of a supported algorithm
+     * @throws SignatureException     if the MAC doesn't match
+     * @throws ExpiredJwtException    if the token has expired
+     * @throws PrematureJwtException  if the token isn't valid yet
+     */
+    public static Claims decode(CharSequence token, BiFunction<String, String, SecretKey> keyResolver) {
+        return decode(token, keyResolver, ClaimDictionary.EMPTY);
+    }
+
+    /**
+     * Verifies the MAC of the token and decodes its claims, expanding them if they were compressed with a claim
+     * dictionary, and rejecting expired and not yet valid tokens.
+     *
+     * @param token       the Base64URL encoded COSE_Mac0
+     * @param keyResolver the verification key by kid and JWA algorithm
+     * @param dictionary  the claim dictionary
+     * @return the claims, with the registered claims under their JWT names
+     * @throws MalformedJwtException  if the token isn't a COSE_Mac0 of a supported algorithm or dictionary version
+     * @throws SignatureException     if the MAC doesn't match
+     * @throws ExpiredJwtException    if the token has expired
+     * @throws PrematureJwtException  if the token isn't valid yet
+     */
+    public static Claims decode(CharSequence token, BiFunction<String, String, SecretKey> keyResolver,
+                                ClaimDictionary dictionary) {
+        return decode(token, keyResolver, dictionary, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * Verifies the MAC of the token with the given HMAC implementation, and decodes its claims as
+     * {@link #decode(CharSequence, BiFunction, ClaimDictionary)} does.
+     *
+     * @param token         the Base64URL encoded COSE_Mac0
+     * @param keyResolver   the verification key by kid and JWA algorithm
+     * @param dictionary    the claim dictionary
+     * @param signingEngine the HMAC implementation
+     * @return the claims, with the registered claims under their JWT names
+     * @throws MalformedJwtException  if the token isn't a COSE_Mac0 of a supported algorithm or dictionary version
+     * @throws SignatureException     if the MAC doesn't match
+     * @throws ExpiredJwtException    if the token has expired
+     * @throws PrematureJwtException  if the token isn't valid yet
+     */
+    public static Claims decode(CharSequence token, BiFunction<String, String, SecretKey> keyResolver,
+                                ClaimDictionary dictionary, SigningEngine signingEngine) {
+        final byte[] protectedHeader;
+        final byte[] keyId;
+        final byte[] payload;
+        final byte[] tag;
+        final byte[] bytes;
+        try {
+            bytes = Decoders.BASE64URL.decode(token);
+        } catch (RuntimeException ex) {
+            throw new MalformedJwtException("Invalid CWT encoding", ex);
+        }
+
+        try (JsonParser parser = CBOR_FACTORY.createParser(bytes)) {
+            // tags (COSE_Mac0, CWT) are optional around the array
+            expect(parser, JsonToken.START_ARRAY);
+            protectedHeader = readBinary(parser);
+            keyId = readUnprotectedKeyId(parser);
+            payload = readBinary(parser);
+            tag = readBinary(parser);
+            expect(parser, JsonToken.END_ARRAY);
+            if (parser.nextToken() != null) {
+                throw new MalformedJwtException("Trailing data after COSE_Mac0");
+            }
+        } catch (IOException ex) {
+            throw new MalformedJwtException("Invalid COSE_Mac0", ex);
+        }
+
+        final ProtectedHeader header = readProtectedHeader(protectedHeader);
+        final String algorithm = header.algorithm;
+        final SecretKey key = keyResolver.apply(keyId == null ? null : Encoders.BASE64URL.encode(keyId), algorithm);
+        if (!MessageDigest.isEqual(mac(signingEngine, algorithm, key, protectedHeader, payload), tag)) {
+            throw new SignatureException("CWT MAC does not match the locally computed MAC");
+        }
+
+        Claims claims = decodeClaims(payload);
+        if (header.dictionaryVersion != null) {
+            claims = dictionary.expand(claims, header.dictionaryVersion);
+        }
+        assertValidNow(claims);
+        return claims;
+    }
+
+    /**
+     * @param algorithm the JWA algorithm
+     * @return the COSE algorithm id
+     */
+    private static int coseAlgorithmOf(String algorithm) {
+        return switch (algorithm) {
+            case JWTHeaderUtils.HS256 -> COSE_HMAC_256;
+            case JWTHeaderUtils.HS384 -> COSE_HMAC_384;
+            case JWTHeaderUtils.HS512 -> COSE_HMAC_512;
+            default -> throw new JwtException("Unsupported CWT algorithm: " + algorithm);
+        };
+    }
+
+    /**
+     * @param algorithm the COSE algorithm id
+     * @return the JWA algorithm
+     */
+    private static String jwaAlgorithmOf(int algorithm) {
+        return switch (algorithm) {
+            case COSE_HMAC_256 -> JWTHeaderUtils.HS256;
+            case COSE_HMAC_384 -> JWTHeaderUtils.HS384;
+            case COSE_HMAC_512 -> JWTHeaderUtils.HS512;
+            default -> throw new MalformedJwtException("Unsupported COSE algorithm: " + algorithm);
+        };
+    }
+
+    private static byte[] protectedHeaderOf(int algorithm, int dictionaryVersion) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(16);
+        try (CBORGenerator generator = CBOR_FACTORY.createGenerator(output)) {
+            generator.writeStartObject(null, dictionaryVersion > 0 ? 2 : 1);
+            generator.writeFieldId(COSE_ALG);
+            generator.writeNumber(algorithm);
+            if (dictionaryVersion > 0) {
+                generator.writeFieldName(ClaimDictionary.HEADER);
+                generator.writeNumber(dictionaryVersion);
+            }
+            generator.writeEndObject();
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * @param protectedHeader the serialized protected header
+     * @return the JWA algorithm and the claim dictionary version of the header
+     */
+    private static ProtectedHeader readProtectedHeader(byte[] protectedHeader) {
+        Integer algorithm = null;
+        Integer dictionaryVersion = null;
+        try (JsonParser parser = CBOR_FACTORY.createParser(protectedHeader)) {
+            expect(parser, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String label = parser.currentName();
+                parser.nextToken();
+                if (String.valueOf(COSE_ALG).equals(label) && parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+                    algorithm = parser.getIntValue();
+                } else if (ClaimDictionary.HEADER.equals(label)
+                           && parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+                    dictionaryVersion = parser.getIntValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException ex) {
+            throw new MalformedJwtException("Invalid COSE protected header", ex);
+        }
+        if (algorithm == null) {
+            throw new MalformedJwtException("COSE protected header has no algorithm");
+        }
+        return new ProtectedHeader(jwaAlgorithmOf(algorithm), dictionaryVersion);
+    }
+
+    /**
+     * @param parser the parser, before the unprotected header map
+     * @return the kid of the unprotected header, or null
+     */
+    private static byte[] readUnprotectedKeyId(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        byte[] keyId = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String label = parser.currentName();
+            parser.nextToken();
+            if (String.valueOf(COSE_KID).equals(label) && parser.currentToken() == JsonToken.VALUE_EMBEDDED_OBJECT) {
+                keyId = parser.getBinaryValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return keyId;
+    }
+
+    /**
+     * @param claims the claims
+     * @return the CBOR map of the claims
+     */
+    private static byte[] encodeClaims(Map<String, Object> claims) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(64 + claims.size() * 16);
+        try (CBORGenerator generator = CBOR_FACTORY.createGenerator(output)) {
+            generator.writeStartObject(null, claims.size());
+            for (Map.Entry<String, Object> entry : claims.entrySet()) {
+                final String name = entry.getKey();
+                final Object value = entry.getValue();
+                final int label = labelOf(name);
+                if (label == 0) {
+                    if (!name.equals(claimNameOf(name))) {
+                        // would read back as the registered claim of that label
+                        throw new JwtException("Claim name: '" + name + "' is reserved for CWT labels");
+                    }
+                    generator.writeFieldName(name);
+                    CBOR_MAPPER.writeValue(generator, value);
+                    continue;
+                }
+
+                generator.writeFieldId(label);
+                switch (name) {
+                    case JWTUtils.EXPIRATION, JWTUtils.NOT_BEFORE, JWTUtils.ISSUED_AT -> {
+                        JWTUtils.INSTANCE.assertClaimType(name, value, Long.class);
+                        generator.writeNumber(((Number) value).longValue());
+                    }
+                    case JWTUtils.JWT_ID -> {
+                        JWTUtils.INSTANCE.assertClaimType(name, value, String.class);
+                        generator.writeBinary(((String) value).getBytes(StandardCharsets.UTF_8));
+                    }
+                    default -> {
+                        JWTUtils.INSTANCE.assertClaimType(name, value, String.class);
+                        generator.writeString((String) value);
+                    }
+                }
+            }
+            generator.writeEndObject();
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * @param payload the CBOR map of the claims
+     * @return the claims, with the registered claims under their JWT names
+     */
+    private static Claims decodeClaims(byte[] payload) {
+        final Map<String, Object> claims = new LinkedHashMap<>();
+        try (JsonParser parser = CBOR_FACTORY.createParser(payload)) {
+            expect(parser, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = claimNameOf(parser.currentName());
+                final JsonToken token = parser.nextToken();
+                if (JWTUtils.JWT_ID.equals(name) && token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+                    claims.put(name, new String(parser.getBinaryValue(), StandardCharsets.UTF_8));
+                } else {
+                    claims.put(name, CBOR_MAPPER.readValue(parser, Object.class));
+                }
+            }
+        } catch (IOException ex) {
+            throw new MalformedJwtException("Invalid CWT claims", ex);
+        }
+        try {
+            // a single audience string reads back as a set of one, as it does from a JWS
+            final Object audience = claims.remove(JWTUtils.AUDIENCE);
+            final ClaimsBuilder builder = Jwts.claims().add(claims);
+            if (audience instanceof String) {
+                builder.audience().add((String) audience);
+            } else if (audience != null) {
+                builder.add(JWTUtils.AUDIENCE, audience);
+            }
+            return builder.build();
+        } catch (IllegalArgumentException ex) {
+            throw new MalformedJwtException("Invalid CWT claims: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @param claims the claims
+     */
+    private static void assertValidNow(Claims claims) {
+        final Date now = new Date();
+        final Date expiration = claims.getExpiration();
+        if (expiration != null && !now.before(expiration)) {
+            throw new ExpiredJwtException(null, claims, "CWT expired at " + expiration.toInstant());
+        }
+        final Date notBefore = claims.getNotBefore();
+        if (notBefore != null && now.before(notBefore)) {
+            throw new PrematureJwtException(null, claims, "CWT not valid before " + notBefore.toInstant());
+        }
+    }
+
+    /**
+     * Computes the MAC over <code>["MAC0", protected, external_aad, payload]</code>.
+     *
+     * @param algorithm       the JWA algorithm
+     * @param key             the key
+     * @param protectedHeader the serialized protected header
+     * @param payload         the serialized claims
+     * @return the MAC
+     */
+    private static byte[] mac(SigningEngine signingEngine, String algorithm, SecretKey key, byte[] protectedHeader,
+                              byte[] payload) {
+        final ByteArrayOutputStream macStructure = new ByteArrayOutputStream(payload.length + 16);
+        try (CBORGenerator generator = CBOR_FACTORY.createGenerator(macStructure)) {
+            generator.writeStartArray(null, 4);
+            generator.writeString(MAC0_CONTEXT);
+            generator.writeBinary(protectedHeader);
+            generator.writeBinary(NO_EXTERNAL_AAD);
+            generator.writeBinary(payload);
+            generator.writeEndArray();
+        } catch (IOException ex) {
+            throw new JwtException("Unable to encode the CWT MAC structure", ex);
+        }
+
+        final Mac mac = signingEngine.borrowMac(algorithm, key);
+        try {
+            return mac.doFinal(macStructure.toByteArray());
+        } finally {
+            signingEngine.releaseMac(algorithm, key, mac);
+        }
+    }
+
+    /**
+     * @param name the claim name
+     * @return the CWT label of a registered claim, or 0
+     */
+    private static int labelOf(String name) {
+        for (int i = 0; i < CLAIM_NAMES.length; i++) {
+            if (CLAIM_NAMES[i].equals(name)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param key the CBOR map key, integer keys in their decimal form
+     * @return the JWT name of a registered claim label, otherwise the key
+     */
+    private static String claimNameOf(String key) {
+        if (key.length() == 1) {
+            final int label = key.charAt(0) - '0';
+            if (label >= 1 && label <= CLAIM_NAMES.length) {
+                return CLAIM_NAMES[label - 1];
+            }
+        }
+        return key;
+    }
+
+    private static void expect(JsonParser parser, JsonToken expected) throws IOException {
+        final JsonToken token = parser.nextToken();
+        if (token != expected) {
+            throw new MalformedJwtException("Expected " + expected + " in COSE_Mac0, but found " + token);
+        }
+    }
+
+    private static byte[] readBinary(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.VALUE_EMBEDDED_OBJECT);
+        return parser.getBinaryValue();
+    }
+
+    /**
+     * The parameters of a protected header.
+     */
+    private static final class ProtectedHeader {
+
+        private final String algorithm;
+        // null if the claims are not compressed
+        private final Integer dictionaryVersion;
+
+        private ProtectedHeader(String algorithm, Integer dictionaryVersion) {
+            this.algorithm = algorithm;
+            this.dictionaryVersion = dictionaryVersion;
+        }
+    }
+}
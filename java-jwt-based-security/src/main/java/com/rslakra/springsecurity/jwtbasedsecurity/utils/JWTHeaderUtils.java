@@ -0,0 +1,175 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.utils;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Reads the <code>alg</code> header of a compact JWT straight from its Base64URL characters.
+ * <p>
+ * The header segment is decoded a byte at a time into a small state machine, so neither the decoded header nor any
+ * intermediate <code>String</code> is ever created.
+ *
+ * @author Rohtash Lakra
+ */
+public enum JWTHeaderUtils {
+    INSTANCE;
+    public static final String HS256 = "HS256";
+    public static final String HS384 = "HS384";
+    public static final String HS512 = "HS512";
+
+    private static final byte[] ALG_NAME = {'"', 'a', 'l', 'g', '"'};
+    private static final long HS256_BITS = pack(HS256);
+    private static final long HS384_BITS = pack(HS384);
+    private static final long HS512_BITS = pack(HS512);
+
+    // phases of the header scan
+    private static final int FIND_NAME = 0;
+    private static final int FIND_COLON = 1;
+    private static final int FIND_QUOTE = 2;
+    private static final int READ_VALUE = 3;
+
+    /**
+     * @param value the ASCII value
+     * @return the value packed into a long, one byte per character
+     */
+    private static long pack(String value) {
+        long bits = 0;
+        for (int i = 0; i < value.length(); i++) {
+            bits = (bits << 8) | value.charAt(i);
+        }
+        return bits;
+    }
+
+    /**
+     * @param c the Base64URL character
+     * @return the 6-bit value, or -1 if the character is not Base64URL
+     */
+    static int decode(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        } else if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        } else if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        } else if (c == '-') {
+            return 62;
+        } else if (c == '_') {
+            return 63;
+        }
+        return -1;
+    }
+
+    /**
+     * @param c the header byte
+     * @return true if JSON whitespace
+     */
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Returns the HMAC algorithm named by the <code>alg</code> header of the token.
+     *
+     * @param token the compact JWT
+     * @return {@link #HS256}, {@link #HS384}, {@link #HS512}, or null if the header names anything else or cannot be
+     * read
+     */
+    public static String sniffAlgorithm(final CharSequence token) {
+        if (token == null) {
+            return null;
+        }
+
+        int phase = FIND_NAME;
+        int matched = 0;
+        long value = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < token.length(); i++) {
+            final char c = token.charAt(i);
+            if (c == '.') {
+                return null;
+            }
+            final int sextet = decode(c);
+            if (sextet < 0) {
+                return null;
+            }
+            bits = (bits << 6) | sextet;
+            bitCount += 6;
+            if (bitCount < 8) {
+                continue;
+            }
+
+            bitCount -= 8;
+            final int b = (bits >> bitCount) & 0xFF;
+            switch (phase) {
+                case FIND_NAME:
+                    if (b == ALG_NAME[matched]) {
+                        if (++matched == ALG_NAME.length) {
+                            phase = FIND_COLON;
+                        }
+                    } else {
+                        matched = (b == ALG_NAME[0]) ? 1 : 0;
+                    }
+                    break;
+                case FIND_COLON:
+                    if (b == ':') {
+                        phase = FIND_QUOTE;
+                    } else if (!isWhitespace(b)) {
+                        // "alg" was a value, not a name
+                        phase = FIND_NAME;
+                        matched = (b == ALG_NAME[0]) ? 1 : 0;
+                    }
+                    break;
+                case FIND_QUOTE:
+                    if (b == '"') {
+                        phase = READ_VALUE;
+                        matched = 0;
+                    } else if (!isWhitespace(b)) {
+                        return null;
+                    }
+                    break;
+                default:
+                    if (b == '"') {
+                        return matched == HS256.length() ? algorithmOf(value) : null;
+                    }
+                    if (++matched > HS256.length()) {
+                        return null;
+                    }
+                    value = (value << 8) | b;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param value the packed algorithm name
+     * @return the algorithm constant, or null
+     */
+    private static String algorithmOf(long value) {
+        if (value == HS256_BITS) {
+            return HS256;
+        } else if (value == HS384_BITS) {
+            return HS384;
+        } else if (value == HS512_BITS) {
+            return HS512;
+        }
+        return null;
+    }
+
+    /**
+     * @param secretKey the HMAC key
+     * @return the JWS algorithm named by the JCA algorithm of the key, or null if it isn't an HMAC-SHA2 key
+     */
+    public static String algorithmOf(final SecretKey secretKey) {
+        switch (secretKey.getAlgorithm()) {
+            case "HmacSHA256":
+                return HS256;
+            case "HmacSHA384":
+                return HS384;
+            case "HmacSHA512":
+                return HS512;
+            default:
+                return null;
+        }
+    }
+}
@@ -1,20 +1,31 @@
 package com.rslakra.springsecurity.jwtbasedsecurity.utils;
 
+import com.rslakra.springsecurity.jwtbasedsecurity.metrics.JwtMetrics;
 import com.rslakra.springsecurity.jwtbasedsecurity.model.JwtResponse;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.JwtTemplate;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.KeyRing;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.SigningEngine;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.JwtParserBuilder;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.lang.NestedCollection;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.MacAlgorithm;
+import io.jsonwebtoken.security.SecureDigestAlgorithm;
 import jakarta.servlet.http.HttpServletRequest;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.Base64;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public enum JWTUtils {
     INSTANCE;
@@ -28,6 +39,17 @@ public enum JWTUtils {
     public static final String ISSUED_AT = "iat";
     public static final String JWT_ID = "jti";
 
+    // parsers are immutable and thread-safe, so one is built per engine and key, and reused until the key is rotated
+    // away
+    private static final int MAX_CACHED_PARSERS = 16;
+    private static final Map<SigningEngine, Map<SecretKey, JwtParser>> PARSERS = new EnumMap<>(SigningEngine.class);
+
+    static {
+        for (SigningEngine engine : SigningEngine.values()) {
+            PARSERS.put(engine, new ConcurrentHashMap<>());
+        }
+    }
+
     /**
      * @param servletRequest the HTTP request
      * @return true if port is 80
@@ -71,13 +93,135 @@ public enum JWTUtils {
     }
 
     /**
-     * @param claims      the claims map
-     * @param secretBytes the secret bytes
+     * Signs with the key and stamps its <code>kid</code> header, so verifiers can find the key after a rotation.
+     *
+     * @param builder   the JWT builder
+     * @param secretKey the secret key
+     * @return the builder
+     */
+    public static JwtBuilder signWith(final JwtBuilder builder, final SecretKey secretKey) {
+        return signWith(builder, secretKey, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * @param builder       the JWT builder
+     * @param secretKey     the secret key
+     * @param signingEngine the HMAC implementation
+     * @return the builder
+     */
+    public static JwtBuilder signWith(final JwtBuilder builder, final SecretKey secretKey,
+                                      final SigningEngine signingEngine) {
+        return signWith(builder.header().keyId(KeyRing.keyIdOf(secretKey.getEncoded())).and(), secretKey,
+                        signingEngine.algorithmFor(secretKey));
+    }
+
+    /**
+     * Signs with the keyring entry and stamps its <code>kid</code> header.
+     *
+     * @param builder    the JWT builder
+     * @param signingKey the keyring entry
+     * @return the builder
+     */
+    public static JwtBuilder signWith(final JwtBuilder builder, final KeyRing.Entry signingKey) {
+        return signWith(builder, signingKey, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * @param builder       the JWT builder
+     * @param signingKey    the keyring entry
+     * @param signingEngine the HMAC implementation
+     * @return the builder
+     */
+    public static JwtBuilder signWith(final JwtBuilder builder, final KeyRing.Entry signingKey,
+                                      final SigningEngine signingEngine) {
+        return signWith(builder.header().keyId(signingKey.getKeyId()).and(), signingKey.getKey(),
+                        signingEngine.algorithm(signingKey.getAlgorithm()));
+    }
+
+    /**
+     * @param builder   the JWT builder
+     * @param secretKey the secret key
+     * @param algorithm the engine's algorithm, or null to let jjwt pick one by the key
+     * @return the builder
+     */
+    private static JwtBuilder signWith(final JwtBuilder builder, final SecretKey secretKey,
+                                       final MacAlgorithm algorithm) {
+        return (algorithm == null ? builder.signWith(secretKey) : builder.signWith(secretKey, algorithm));
+    }
+
+    /**
+     * Signs with the key, stamps its <code>kid</code> header and returns the compact JWS, timed as a sign operation.
+     *
+     * @param builder   the JWT builder
+     * @param secretKey the secret key
      * @return the JWT compact string
      */
-    public static String jwtCompactBuilderWithClaims(final Map<String, Object> claims, final byte[] secretBytes) {
+    public static String compact(final JwtBuilder builder, final SecretKey secretKey) {
+        return compact(builder, secretKey, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * @param builder       the JWT builder
+     * @param secretKey     the secret key
+     * @param signingEngine the HMAC implementation
+     * @return the JWT compact string
+     */
+    public static String compact(final JwtBuilder builder, final SecretKey secretKey,
+                                 final SigningEngine signingEngine) {
+        final long start = JwtMetrics.start();
+        return compact(signWith(builder, secretKey, signingEngine), secretKey, start);
+    }
+
+    /**
+     * Signs with the keyring entry, stamps its <code>kid</code> header and returns the compact JWS, timed as a sign
+     * operation.
+     *
+     * @param builder    the JWT builder
+     * @param signingKey the keyring entry
+     * @return the JWT compact string
+     */
+    public static String compact(final JwtBuilder builder, final KeyRing.Entry signingKey) {
+        return compact(builder, signingKey, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * @param builder       the JWT builder
+     * @param signingKey    the keyring entry
+     * @param signingEngine the HMAC implementation
+     * @return the JWT compact string
+     */
+    public static String compact(final JwtBuilder builder, final KeyRing.Entry signingKey,
+                                 final SigningEngine signingEngine) {
+        final long start = JwtMetrics.start();
+        return compact(signWith(builder, signingKey, signingEngine), signingKey.getKey(), start);
+    }
+
+    /**
+     * @param signedBuilder the builder, already given its signing key
+     * @param secretKey     the signing key, naming the algorithm tag
+     * @param startNanos    the start of the operation
+     * @return the JWT compact string
+     */
+    private static String compact(final JwtBuilder signedBuilder, final SecretKey secretKey, final long startNanos) {
+        try {
+            final String token = signedBuilder.compact();
+            JwtMetrics.recordSign(startNanos, secretKey, null);
+            return token;
+        } catch (RuntimeException ex) {
+            JwtMetrics.recordSign(startNanos, secretKey, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns a builder holding the claims, with the registered claims type-checked.
+     *
+     * @param claims the claims map
+     * @return the JWT builder
+     */
+    public static JwtBuilder builderWithClaims(final Map<String, Object> claims) {
         var builder = Jwts.builder();
-        
+
         claims.forEach((key, value) -> {
             switch (key) {
                 case ISSUER:
@@ -113,8 +257,82 @@ public enum JWTUtils {
             }
         });
 
-        builder.signWith(getSecretKey(secretBytes));
-        return builder.compact();
+        return builder;
+    }
+
+    /**
+     * @param claims      the claims map
+     * @param secretBytes the secret bytes
+     * @return the JWT compact string
+     */
+    public static String jwtCompactBuilderWithClaims(final Map<String, Object> claims, final byte[] secretBytes) {
+        return compact(builderWithClaims(claims), getSecretKey(secretBytes));
+    }
+
+    /**
+     * @param claims     the claims map
+     * @param signingKey the keyring entry
+     * @return the JWT compact string
+     */
+    public static String jwtCompactBuilderWithClaims(final Map<String, Object> claims,
+                                                     final KeyRing.Entry signingKey) {
+        return jwtCompactBuilderWithClaims(claims, signingKey, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * @param claims        the claims map
+     * @param signingKey    the keyring entry
+     * @param signingEngine the HMAC implementation
+     * @return the JWT compact string
+     */
+    public static String jwtCompactBuilderWithClaims(final Map<String, Object> claims, final KeyRing.Entry signingKey,
+                                                     final SigningEngine signingEngine) {
+        return compact(builderWithClaims(claims), signingKey, signingEngine);
+    }
+
+    /**
+     * Encodes the claims as a CWT instead of a JWS: a CBOR payload with the integer keys of the registered claims,
+     * MACed as a COSE_Mac0 (see {@link CwtCodec}), timed as a sign operation.
+     *
+     * @param claims     the claims map
+     * @param signingKey the keyring entry
+     * @return the Base64URL encoded CWT
+     */
+    public static String cwtCompactBuilderWithClaims(final Map<String, Object> claims,
+                                                     final KeyRing.Entry signingKey) {
+        return cwtCompactBuilderWithClaims(claims, signingKey, 0);
+    }
+
+    /**
+     * @param claims            the claims map
+     * @param signingKey        the keyring entry
+     * @param dictionaryVersion the claim dictionary version the claims were compressed with, or 0
+     * @return the Base64URL encoded CWT
+     */
+    public static String cwtCompactBuilderWithClaims(final Map<String, Object> claims,
+                                                     final KeyRing.Entry signingKey, final int dictionaryVersion) {
+        return cwtCompactBuilderWithClaims(claims, signingKey, dictionaryVersion, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * @param claims            the claims map
+     * @param signingKey        the keyring entry
+     * @param dictionaryVersion the claim dictionary version the claims were compressed with, or 0
+     * @param signingEngine     the HMAC implementation
+     * @return the Base64URL encoded CWT
+     */
+    public static String cwtCompactBuilderWithClaims(final Map<String, Object> claims,
+                                                     final KeyRing.Entry signingKey, final int dictionaryVersion,
+                                                     final SigningEngine signingEngine) {
+        final long start = JwtMetrics.start();
+        try {
+            final String token = CwtCodec.encode(claims, signingKey, dictionaryVersion, signingEngine);
+            JwtMetrics.recordSign(start, signingKey.getKey(), null);
+            return token;
+        } catch (RuntimeException ex) {
+            JwtMetrics.recordSign(start, signingKey.getKey(), ex);
+            throw ex;
+        }
     }
 
     /**
@@ -159,8 +377,23 @@ public enum JWTUtils {
             builder.expiration(Date.from(Instant.ofEpochSecond(expiryInSeconds)));
         }
 
-        builder.signWith(getSecretKey(secretBytes));
-        return builder.compact();
+        return compact(builder, getSecretKey(secretBytes));
+    }
+
+    /**
+     * Issues a token from a template, which already holds the header and the static claims (e.g. iss) pre-encoded, so
+     * only the dynamic claims are serialized.
+     *
+     * @param template        the template
+     * @param subject         the subject
+     * @param issuedAtSeconds the issued at time in seconds
+     * @param expiryInSeconds the expiry time in seconds
+     * @param secretBytes     the secret bytes
+     * @return the JWT token
+     */
+    public static String jwtBuilder(JwtTemplate template, String subject, Long issuedAtSeconds, Long expiryInSeconds,
+                                    byte[] secretBytes) {
+        return template.issue(getSecretKey(secretBytes), subject, issuedAtSeconds, expiryInSeconds, null);
     }
 
     /**
@@ -168,7 +401,7 @@ public enum JWTUtils {
      * @param claimValue the claim value
      * @param claimType  the expected type
      */
-    private void assertClaimType(String claimKey, Object claimValue, Class<?> claimType) {
+    void assertClaimType(String claimKey, Object claimValue, Class<?> claimType) {
         boolean validClaimType =
             claimType.isInstance(claimValue) || claimType == Long.class && claimValue instanceof Integer;
         if (!validClaimType) {
@@ -185,10 +418,72 @@ public enum JWTUtils {
      * @return the parsed claims
      */
     public static Jws<Claims> parseJWTToken(final String jwtToken, final SecretKey secretKey) {
-        return Jwts.parser()
-            .verifyWith(secretKey)
-            .build()
-            .parseSignedClaims(jwtToken);
+        return parseJWTToken(jwtToken, secretKey, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * @param jwtToken      the JWT token
+     * @param secretKey     the secret key
+     * @param signingEngine the HMAC implementation
+     * @return the parsed claims
+     */
+    public static Jws<Claims> parseJWTToken(final String jwtToken, final SecretKey secretKey,
+                                            final SigningEngine signingEngine) {
+        final long start = JwtMetrics.start();
+        try {
+            final Jws<Claims> jws = getParser(secretKey, signingEngine).parseSignedClaims(jwtToken);
+            JwtMetrics.record(JwtMetrics.Operation.VERIFY, start, jwtToken, null);
+            return jws;
+        } catch (RuntimeException ex) {
+            JwtMetrics.record(JwtMetrics.Operation.VERIFY, start, jwtToken, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the cached parser of the key, building it on first use.
+     *
+     * @param secretKey the secret key
+     * @return the parser verifying with the key
+     */
+    public static JwtParser getParser(final SecretKey secretKey) {
+        return getParser(secretKey, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * Returns the cached parser of the key and engine, building it on first use.
+     *
+     * @param secretKey     the secret key
+     * @param signingEngine the HMAC implementation
+     * @return the parser verifying with the key
+     */
+    public static JwtParser getParser(final SecretKey secretKey, final SigningEngine signingEngine) {
+        final Map<SecretKey, JwtParser> parsers = PARSERS.get(signingEngine);
+        JwtParser parser = parsers.get(secretKey);
+        if (parser == null) {
+            // keys only change on rotation, so a full cache means the older keys are gone for good
+            if (parsers.size() >= MAX_CACHED_PARSERS) {
+                parsers.clear();
+            }
+            parser = parsers.computeIfAbsent(secretKey, key -> buildParser(key, signingEngine));
+        }
+
+        return parser;
+    }
+
+    /**
+     * @param secretKey     the secret key
+     * @param signingEngine the HMAC implementation
+     * @return a parser verifying with the key and the HMAC algorithms of the signing engine
+     */
+    private static JwtParser buildParser(final SecretKey secretKey, final SigningEngine signingEngine) {
+        final NestedCollection<SecureDigestAlgorithm<?, ?>, JwtParserBuilder> signatureAlgorithms =
+            Jwts.parser().verifyWith(secretKey).sig();
+        for (String algorithm : new String[]{JWTHeaderUtils.HS256, JWTHeaderUtils.HS384, JWTHeaderUtils.HS512}) {
+            // replaces jjwt's algorithm with the same id
+            signatureAlgorithms.add(signingEngine.algorithm(algorithm));
+        }
+        return signatureAlgorithms.and().build();
     }
 
     /**
@@ -196,36 +491,42 @@ public enum JWTUtils {
      * @return decoded header and payload
      */
     public static String decodeJWTToken(String token) {
-        Base64.Decoder decoder = Base64.getUrlDecoder();
-        String[] chunks = token.split("\\.");
-        String header = new String(decoder.decode(chunks[0]));
-        String payload = new String(decoder.decode(chunks[1]));
-        return header + " " + payload;
+        final CompactToken compactToken = CompactToken.of(token);
+        return compactToken.getHeader() + " " + compactToken.getPayload();
     }
 
     /**
+     * Decodes the token after verifying it over the original token data. The parser checks the signature once and
+     * validates the claims, including exp, nbf and crit, as every other parse path does.
+     *
      * @param token     the JWT token
      * @param secretKey the secret key string
      * @return decoded and verified header and payload
      * @throws Exception if verification fails
      */
     public static String decodeJWTToken(String token, String secretKey) throws Exception {
-        Base64.Decoder decoder = Base64.getUrlDecoder();
-        String[] tokenChunks = token.split("\\.");
-        String header = new String(decoder.decode(tokenChunks[0]));
-        String payload = new String(decoder.decode(tokenChunks[1]));
+        return decodeJWTToken(token, secretKey, SigningEngine.DEFAULT);
+    }
+
+    /**
+     * @param token         the JWT token
+     * @param secretKey     the secret key string
+     * @param signingEngine the HMAC implementation
+     * @return decoded and verified header and payload
+     * @throws Exception if verification fails
+     */
+    public static String decodeJWTToken(String token, String secretKey, SigningEngine signingEngine)
+        throws Exception {
+        final CompactToken compactToken = CompactToken.of(token);
 
         // Verify the token
         SecretKey key = Keys.hmacShaKeyFor(secretKey.getBytes(StandardCharsets.UTF_8));
         try {
-            Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token);
+            getParser(key, signingEngine).parseSignedClaims(compactToken);
         } catch (JwtException e) {
             throw new Exception("Could not verify JWT token integrity!", e);
         }
 
-        return header + " " + payload;
+        return compactToken.getHeader() + " " + compactToken.getPayload();
     }
 }
@@ -0,0 +1,66 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class NonceCacheTest {
+
+    private static final long LIFETIME_MILLIS = 30_000;
+
+    @Test
+    void givenSameTokenId_whenRegisteredTwice_thenReplayIsDetected() {
+        NonceCache nonceCache = new NonceCache(LIFETIME_MILLIS);
+        long exp = System.currentTimeMillis() + LIFETIME_MILLIS;
+
+        assertThat(nonceCache.register("jti-1", exp)).isEqualTo(NonceCache.Result.ACCEPTED);
+        assertThat(nonceCache.register("jti-1", exp)).isEqualTo(NonceCache.Result.REPLAYED);
+        assertThat(nonceCache.register("jti-2", exp)).isEqualTo(NonceCache.Result.ACCEPTED);
+        assertThat(nonceCache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void givenExpiredBuckets_whenTimeMovesOn_thenWholeBucketsAreDropped() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(now.get());
+            }
+        };
+        NonceCache nonceCache = new NonceCache(LIFETIME_MILLIS, 2, 100, clock);
+        long exp = now.get() + LIFETIME_MILLIS;
+        assertThat(nonceCache.register("jti-1", exp)).isEqualTo(NonceCache.Result.ACCEPTED);
+
+        now.addAndGet(LIFETIME_MILLIS * 3);
+        assertThat(nonceCache.register("jti-1", exp)).isEqualTo(NonceCache.Result.EXPIRED);
+        assertThat(nonceCache.register("jti-2", now.get() + LIFETIME_MILLIS)).isEqualTo(NonceCache.Result.ACCEPTED);
+        assertThat(nonceCache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void givenFullCacheOrLongLivedToken_whenRegistering_thenTokenIsRejected() {
+        NonceCache nonceCache = new NonceCache(LIFETIME_MILLIS, 2, 1, Clock.systemUTC());
+        long exp = System.currentTimeMillis() + LIFETIME_MILLIS;
+
+        assertThat(nonceCache.register("jti-1", exp)).isEqualTo(NonceCache.Result.ACCEPTED);
+        assertThat(nonceCache.register("jti-2", exp)).isEqualTo(NonceCache.Result.REJECTED);
+        assertThat(nonceCache.register("jti-3", exp + 10 * LIFETIME_MILLIS)).isEqualTo(NonceCache.Result.REJECTED);
+    }
+}
@@ -0,0 +1,95 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.compression;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.VerifiedClaimsCache;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.SigningEngine;
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ClaimDictionaryTest {
+
+    private static final ClaimDictionary.Definition V1 = new ClaimDictionary.Definition(
+        Map.of("permissions", "prm", "tenantId", "tid"),
+        Map.of("permissions", Map.of("resource:read", "r", "resource:write", "w")));
+    private static final ClaimDictionary.Definition V2 = new ClaimDictionary.Definition(
+        Map.of("permissions", "p", "tenantId", "t"),
+        Map.of("permissions", Map.of("resource:read", "r", "resource:write", "w"), "scope", Map.of("ADMIN", "A")));
+
+    @Test
+    void givenTokensOfOldAndNewVersions_whenParsing_thenBothExpandToTheOriginalClaims() {
+        final ClaimDictionary oldDictionary = new ClaimDictionary(Map.of(1, V1), 0);
+        final ClaimDictionary dictionary = new ClaimDictionary(Map.of(1, V1, 2, V2), 0);
+        final SecretsService secretsService = new SecretsService(new VerifiedClaimsCache(), 0, null,
+                                                                 SigningEngine.POOLED, dictionary);
+        secretsService.initObject();
+        final Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("sub", "rslakra");
+        claims.put("tenantId", "acme");
+        claims.put("scope", "ADMIN");
+        claims.put("permissions", List.of("resource:read", "resource:write", "resource:list"));
+
+        final Map<String, Object> compressed = dictionary.compress(claims);
+        assertThat(dictionary.getCurrentVersion()).isEqualTo(2);
+        assertThat(compressed).containsExactly(Map.entry("sub", "rslakra"), Map.entry("t", "acme"),
+                                               Map.entry("scope", "A"),
+                                               Map.entry("p", List.of("r", "w", "resource:list")));
+
+        final String newToken = sign(compressed, 2, secretsService);
+        final String oldToken = sign(oldDictionary.compress(claims), 1, secretsService);
+        final String cwt = JWTUtils.cwtCompactBuilderWithClaims(compressed, secretsService.getHS256SigningKey(), 2);
+        for (String token : List.of(newToken, oldToken, cwt)) {
+            final Claims parsed = secretsService.parseToken(token);
+            assertThat(parsed).containsExactlyInAnyOrderEntriesOf(claims);
+        }
+        assertThat(newToken.length()).isLessThan(sign(claims, 0, secretsService).length());
+    }
+
+    @Test
+    void givenClaimsAlreadyUsingCodes_whenCompressing_thenTheyAreLeftUncompressed() {
+        final ClaimDictionary dictionary = new ClaimDictionary(Map.of(1, V1), 1);
+
+        assertThat(dictionary.compress(Map.of("sub", "rslakra"))).isNull();
+        assertThat(dictionary.compress(Map.of("tenantId", "acme", "prm", "raw"))).isNull();
+        assertThat(dictionary.compress(Map.of("permissions", List.of("resource:read", "w")))).isNull();
+        assertThat(ClaimDictionary.EMPTY.compress(Map.of("tenantId", "acme"))).isNull();
+        assertThatThrownBy(() -> dictionary.expand(Jwts.claims().add("tid", "acme").build(), 7))
+            .isInstanceOf(MalformedJwtException.class);
+    }
+
+    @Test
+    void givenInvalidDefinitions_whenLoading_thenTheyAreRejected() {
+        assertThatThrownBy(() -> new ClaimDictionary(Map.of(1, new ClaimDictionary.Definition(
+            Map.of("exp", "e"), Map.of())), 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ClaimDictionary(Map.of(1, new ClaimDictionary.Definition(
+            Map.of("tenantId", "t", "tenantName", "t"), Map.of())), 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ClaimDictionary(Map.of(1, new ClaimDictionary.Definition(
+            Map.of("tenantId", "tenantName", "tenantName", "tn"), Map.of())), 0))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ClaimDictionary(Map.of(1, V1), 2)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * @param claims            the claims, compressed or not
+     * @param dictionaryVersion the claim dictionary version, or 0
+     * @param secretsService    the secrets service
+     * @return the JWS
+     */
+    private static String sign(Map<String, Object> claims, int dictionaryVersion, SecretsService secretsService) {
+        final JwtBuilder builder = Jwts.builder().claims(claims);
+        if (dictionaryVersion > 0) {
+            builder.header().add(ClaimDictionary.HEADER, dictionaryVersion);
+        }
+        return JWTUtils.compact(builder, secretsService.getHS256SigningKey());
+    }
+}
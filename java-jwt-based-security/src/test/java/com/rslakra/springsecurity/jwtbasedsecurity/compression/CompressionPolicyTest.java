@@ -0,0 +1,81 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.compression;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.CompressionAlgorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+
+public class CompressionPolicyTest {
+
+    private SecretsService secretsService;
+    private PooledDeflateAlgorithm deflate;
+    private CompressionPolicy compressionPolicy;
+
+    @BeforeEach
+    void setUp() {
+        secretsService = new SecretsService();
+        secretsService.initObject();
+        deflate = new PooledDeflateAlgorithm(2);
+        compressionPolicy = new CompressionPolicy(new ObjectMapper(), deflate, 256);
+    }
+
+    /**
+     * @param claims the claims
+     * @return the token, compressed as the policy decides
+     */
+    private String sign(Map<String, Object> claims) {
+        var builder = Jwts.builder().claims(claims);
+        CompressionAlgorithm codec = compressionPolicy.select(claims);
+        if (codec != null) {
+            builder.compressWith(codec);
+        }
+        return JWTUtils.signWith(builder, secretsService.getHS256SigningKey()).compact();
+    }
+
+    @Test
+    void givenSmallAndLargeClaims_whenSelecting_thenOnlyLargeOnesAreCompressedWithPooledDeflaters() {
+        assertThat(compressionPolicy.select(Map.of("sub", "rslakra"))).isNull();
+
+        Map<String, Object> large = Map.of("sub", "rslakra", "roles", "ADMIN,".repeat(100));
+        for (int i = 0; i < 10; i++) {
+            String token = sign(large);
+            assertThat(secretsService.parseToken(token).getSubject()).isEqualTo("rslakra");
+        }
+
+        assertThat(deflate.getStats().get("deflatersCreated")).isEqualTo(1L);
+        // SecretsService inflates with the shared pool
+        assertThat(PooledDeflateAlgorithm.DEFAULT.getStats().get("inflatersIdle")).isPositive();
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Long>> shapes = (Map<String, Map<String, Long>>) compressionPolicy.getStats()
+            .get("shapes");
+        assertThat(shapes.get("roles,sub").get("compressed")).isEqualTo(10L);
+        assertThat(shapes.get("roles,sub").get("ratioPercent")).isLessThan(50L);
+        assertThat(shapes.get("sub").get("skipped")).isEqualTo(1L);
+    }
+
+    @Test
+    void givenIncompressibleShape_whenEnoughSamplesAreSeen_thenCompressionIsSkipped() {
+        CompressionPolicy policy = new CompressionPolicy(new ObjectMapper(), deflate, 16);
+        SecureRandom random = new SecureRandom();
+        for (int i = 0; i < CompressionPolicy.MIN_SAMPLES; i++) {
+            byte[] noise = new byte[12];
+            random.nextBytes(noise);
+            Map<String, Object> claims = Map.of("nonce", Base64.getEncoder().encodeToString(noise));
+            CompressionAlgorithm codec = policy.select(claims);
+            assertThat(CompressionPolicy.codecId(codec)).isEqualTo(PooledDeflateAlgorithm.ID);
+            Jwts.builder().claims(claims).compressWith(codec).compact();
+        }
+
+        // the zlib header and checksum make such small payloads grow
+        assertThat(policy.select(Map.of("nonce", "AAAAAAAAAAAAAAAA"))).isNull();
+    }
+}
@@ -0,0 +1,60 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.csrf.CsrfToken;
+
+public class JWTCsrfTokenRepositoryTest {
+
+    private SecretsService secretsService;
+
+    @BeforeEach
+    void setUp() {
+        secretsService = new SecretsService();
+        secretsService.initObject();
+    }
+
+    @Test
+    void givenCookieStorage_whenSavingAndLoadingToken_thenNoSessionIsCreated() {
+        JWTCsrfTokenRepository repository =
+            new JWTCsrfTokenRepository(secretsService::getHS256SigningKey, JWTCsrfTokenRepository.Storage.COOKIE);
+        MockHttpServletRequest getRequest = new MockHttpServletRequest("GET", "/jwt-csrf-form");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        CsrfToken token = repository.generateToken(getRequest);
+        repository.saveToken(token, getRequest, response);
+
+        assertThat(getRequest.getSession(false)).isNull();
+        assertThat(response.getHeader(HttpHeaders.SET_COOKIE))
+            .startsWith(JWTCsrfTokenRepository.CSRF_COOKIE_NAME + "=" + token.getToken())
+            .contains("HttpOnly", "SameSite=Strict");
+        assertThat(response.getHeader(JWTCsrfTokenRepository.CSRF_HEADER_NAME)).isEqualTo(token.getToken());
+
+        MockHttpServletRequest postRequest = new MockHttpServletRequest("POST", "/jwt-csrf-form");
+        postRequest.setCookies(new Cookie(JWTCsrfTokenRepository.CSRF_COOKIE_NAME, token.getToken()));
+        CsrfToken loaded = repository.loadToken(postRequest);
+
+        assertThat(loaded.getToken()).isEqualTo(token.getToken());
+        assertThat(postRequest.getSession(false)).isNull();
+        assertThat(secretsService.parseToken(loaded.getToken()).getId()).isNotBlank();
+    }
+
+    @Test
+    void givenSessionStorage_whenSavingToken_thenTokenIsKeptInSession() {
+        JWTCsrfTokenRepository repository = new JWTCsrfTokenRepository(secretsService::getHS256SigningKey);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/jwt-csrf-form");
+
+        CsrfToken token = repository.generateToken(request);
+        repository.saveToken(token, request, new MockHttpServletResponse());
+
+        assertThat(request.getSession(false)).isNotNull();
+        assertThat(repository.loadToken(request)).isSameAs(token);
+    }
+}
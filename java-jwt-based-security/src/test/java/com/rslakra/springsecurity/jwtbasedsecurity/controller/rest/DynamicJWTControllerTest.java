@@ -0,0 +1,83 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.controller.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.jayway.jsonpath.JsonPath;
+import com.rslakra.springsecurity.jwtbasedsecurity.JavaJwtBasedSecurityApplication;
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+@SpringBootTest(classes = JavaJwtBasedSecurityApplication.class)
+@AutoConfigureMockMvc
+public class DynamicJWTControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SecretsService secretsService;
+
+    @Test
+    void givenBatchOfClaims_whenSigning_thenTokensAndErrorsAreReturnedInOrder() throws Exception {
+        String body = "[{\"sub\":\"first\"}, {\"exp\":\"not-a-number\"}, {\"sub\":\"third\",\"scope\":\"ADMIN\"}]";
+
+        MvcResult result = mockMvc.perform(post("/dynamic-builder-batch")
+                                               .contentType(MediaType.APPLICATION_JSON)
+                                               .content(body))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(3))
+            .andExpect(jsonPath("$[0].status").value("SUCCESS"))
+            .andExpect(jsonPath("$[1].status").value("ERROR"))
+            .andExpect(jsonPath("$[1].exceptionType").value("io.jsonwebtoken.JwtException"))
+            .andExpect(jsonPath("$[2].status").value("SUCCESS"));
+
+        String thirdToken = JsonPath.read(result.getResponse().getContentAsString(), "$[2].jwt");
+        assertThat(secretsService.parseToken(thirdToken).getSubject()).isEqualTo("third");
+    }
+
+    @Test
+    void givenSmallClaims_whenCompressing_thenTokenIsLeftUncompressed() throws Exception {
+        mockMvc.perform(post("/dynamic-builder-compress")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"sub\":\"rslakra\"}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.codec").value("none"));
+
+        String roles = "ADMIN,".repeat(100);
+        mockMvc.perform(post("/dynamic-builder-compress")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"sub\":\"rslakra\",\"roles\":\"" + roles + "\"}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.codec").value("DEF"));
+    }
+
+    @Test
+    void givenCwtFormat_whenSigning_thenTokenParsesNextToJwsTokens() throws Exception {
+        MvcResult result = mockMvc.perform(post("/dynamic-builder-general")
+                                               .param("format", DynamicJWTController.CWT_FORMAT)
+                                               .contentType(MediaType.APPLICATION_JSON)
+                                               .content("{\"sub\":\"rslakra\",\"scope\":\"ADMIN\"}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("SUCCESS"))
+            .andReturn();
+
+        String token = JsonPath.read(result.getResponse().getContentAsString(), "$.jwt");
+        assertThat(token).doesNotContain(".");
+        assertThat(secretsService.parseToken(token).get("scope")).isEqualTo("ADMIN");
+    }
+}
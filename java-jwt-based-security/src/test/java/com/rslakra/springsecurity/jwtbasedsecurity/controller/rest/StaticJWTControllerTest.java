@@ -0,0 +1,95 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.controller.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import com.rslakra.springsecurity.jwtbasedsecurity.JavaJwtBasedSecurityApplication;
+import com.rslakra.springsecurity.jwtbasedsecurity.compression.ClaimDictionary;
+import com.rslakra.springsecurity.jwtbasedsecurity.security.KeyRing;
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@SpringBootTest(classes = JavaJwtBasedSecurityApplication.class)
+@AutoConfigureMockMvc
+public class StaticJWTControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SecretsService secretsService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void givenNewlineDelimitedTokens_whenVerifyingInBulk_thenOneResultPerTokenIsStreamed() throws Exception {
+        KeyRing.Entry signingKey = secretsService.getHS256SigningKey();
+        String first = JWTUtils.jwtCompactBuilderWithClaims(Map.of("sub", "first"), signingKey);
+        String third = JWTUtils.jwtCompactBuilderWithClaims(Map.of("sub", "third"), signingKey);
+        String tooLong = "x".repeat(StaticJWTController.MAX_BULK_TOKEN_LENGTH + 10);
+        String body = first + "\r\n\nnot-a-token\n" + third + "\n" + tooLong;
+
+        String response = mockMvc.perform(post("/parser-bulk")
+                                              .contentType(MediaType.TEXT_PLAIN)
+                                              .content(body))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+            .andReturn().getResponse().getContentAsString();
+
+        String[] lines = response.split("\n");
+        assertThat(lines).hasSize(4);
+        Map<Long, JsonNode> results = new HashMap<>();
+        for (String line : lines) {
+            JsonNode result = objectMapper.readTree(line);
+            results.put(result.get("line").asLong(), result);
+        }
+
+        assertThat(results).containsOnlyKeys(1L, 3L, 4L, 5L);
+        assertThat(results.get(1L).get("status").asText()).isEqualTo("SUCCESS");
+        assertThat(results.get(1L).at("/claims/sub").asText()).isEqualTo("first");
+        assertThat(results.get(3L).get("status").asText()).isEqualTo("ERROR");
+        assertThat(results.get(3L).get("exceptionType").asText()).isEqualTo(IllegalArgumentException.class.getName());
+        assertThat(results.get(4L).at("/claims/sub").asText()).isEqualTo("third");
+        assertThat(results.get(5L).get("exceptionType").asText()).isEqualTo("io.jsonwebtoken.JwtException");
+    }
+
+    @Test
+    void givenDictionaryCompressedToken_whenParsed_thenOriginalClaimsAreReturned() throws Exception {
+        String issued = mockMvc.perform(post("/dynamic-builder-general")
+                                            .contentType(MediaType.APPLICATION_JSON)
+                                            .content("{\"sub\":\"rslakra\",\"tenantId\":\"acme\","
+                                                     + "\"permissions\":[\"resource:read\",\"resource:write\"],"
+                                                     + "\"scope\":\"ADMIN\"}"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        String token = JsonPath.read(issued, "$.jwt");
+
+        mockMvc.perform(get("/parser").param("jwt", token))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.jws.header." + ClaimDictionary.HEADER).value(1))
+            .andExpect(jsonPath("$.jws.payload.sub").value("rslakra"))
+            .andExpect(jsonPath("$.jws.payload.tenantId").value("acme"))
+            .andExpect(jsonPath("$.jws.payload.permissions[0]").value("resource:read"))
+            .andExpect(jsonPath("$.jws.payload.permissions[1]").value("resource:write"))
+            .andExpect(jsonPath("$.jws.payload.scope").value("ADMIN"))
+            .andExpect(jsonPath("$.jws.payload.tid").doesNotExist())
+            .andExpect(jsonPath("$.jws.payload.prm").doesNotExist());
+    }
+}
@@ -0,0 +1,66 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PathRuleMatcherTest {
+
+    @Test
+    void givenUnsortedRules_whenMatching_thenExactPathsMatchRegardlessOfOrder() {
+        PathRuleMatcher matcher = PathRuleMatcher.compile("/set-secrets", "/parser-bulk", "/dynamic-builder-batch");
+
+        assertThat(matcher.matches("POST", "/parser-bulk")).isTrue();
+        assertThat(matcher.matches("POST", "/set-secrets")).isTrue();
+        assertThat(matcher.matches("POST", "/set-secrets/")).isFalse();
+        assertThat(matcher.matches("POST", "/parser")).isFalse();
+        assertThat(matcher.matches("POST", "/")).isFalse();
+    }
+
+    @Test
+    void givenWildcardsAndMethods_whenMatching_thenSegmentsAndMethodsAreHonored() {
+        PathRuleMatcher matcher = PathRuleMatcher.compile("POST /api/{version}/tokens", "GET|HEAD /api/*/status",
+                                                          "/public/**", "PUT /api/v1/tokens");
+
+        assertThat(matcher.matches("POST", "/api/v2/tokens")).isTrue();
+        assertThat(matcher.matches("GET", "/api/v2/tokens")).isFalse();
+        assertThat(matcher.matches("PUT", "/api/v1/tokens")).isTrue();
+        assertThat(matcher.matches("PUT", "/api/v2/tokens")).isFalse();
+        assertThat(matcher.matches("head", "/api/v1/status")).isTrue();
+        assertThat(matcher.matches("POST", "/api//tokens")).isFalse();
+        assertThat(matcher.matches("DELETE", "/public")).isTrue();
+        assertThat(matcher.matches("PROPFIND", "/public/a/b/c")).isTrue();
+        assertThat(matcher.matches("PROPFIND", "/api/v1/status")).isFalse();
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v3/tokens");
+        request.setServletPath("/api/v3/tokens");
+        assertThat(matcher.matches(request)).isTrue();
+    }
+
+    @Test
+    void givenInvalidRules_whenCompiling_thenTheyAreRejected() {
+        assertThatThrownBy(() -> PathRuleMatcher.compile("/dynamic-*")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PathRuleMatcher.compile("/a/**/b")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PathRuleMatcher.compile("FETCH /a")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PathRuleMatcher.compile("a/b")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void givenThousandsOfRules_whenMatching_thenEachRuleStillMatches() {
+        List<String> rules = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            rules.add("POST /api/service-" + i + "/{id}/action-" + (i % 7));
+        }
+        PathRuleMatcher matcher = PathRuleMatcher.compile(rules);
+
+        assertThat(matcher.size()).isEqualTo(5_000);
+        assertThat(matcher.matches("POST", "/api/service-4242/17/action-" + (4242 % 7))).isTrue();
+        assertThat(matcher.matches("POST", "/api/service-4242/17/action-" + (4243 % 7))).isFalse();
+        assertThat(matcher.matches("POST", "/api/service-5000/17/action-0")).isFalse();
+    }
+}
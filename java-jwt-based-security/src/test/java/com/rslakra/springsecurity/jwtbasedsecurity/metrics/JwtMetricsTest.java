@@ -0,0 +1,104 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public class JwtMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private JwtMetrics jwtMetrics;
+    private SecretsService secretsService;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        jwtMetrics = JwtMetrics.install(registry);
+        secretsService = new SecretsService();
+        secretsService.initObject();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jwtMetrics.close();
+    }
+
+    /**
+     * @return the count of the timer with the tags, or 0 if it isn't registered
+     */
+    private long count(String operation, String algorithm, String outcome) {
+        Timer timer = registry.find(JwtMetrics.TIMER_NAME)
+            .tags("operation", operation, "algorithm", algorithm, "outcome", outcome)
+            .timer();
+        return (timer == null ? 0 : timer.count());
+    }
+
+    @Test
+    void givenInstalledMetrics_whenSigningAndParsing_thenTimersAreTaggedByAlgorithmAndOutcome() {
+        String token = JWTUtils.compact(Jwts.builder().subject("rslakra"), secretsService.getHS256SigningKey());
+        secretsService.parseToken(token);
+        secretsService.parseToken(token);
+
+        String expired = JWTUtils.compact(Jwts.builder().subject("rslakra")
+                                              .expiration(Date.from(Instant.now().minusSeconds(60))),
+                                          secretsService.getSigningKey(JWTHeaderUtils.HS384));
+        assertThatThrownBy(() -> secretsService.parseToken(expired)).isInstanceOf(ExpiredJwtException.class);
+        assertThatThrownBy(() -> secretsService.parseToken("not-a-token")).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(count("sign", "HS256", "success")).isEqualTo(1);
+        assertThat(count("sign", "HS384", "success")).isEqualTo(1);
+        // the second parse is a cache hit, so only the first one verifies
+        assertThat(count("verify", "HS256", "success")).isEqualTo(1);
+        assertThat(count("parse_token", "HS256", "success")).isEqualTo(2);
+        assertThat(count("verify", "HS384", "expired")).isEqualTo(1);
+        assertThat(count("parse_token", "HS384", "expired")).isEqualTo(1);
+        assertThat(count("parse_token", "unknown", "malformed")).isEqualTo(1);
+        assertThat(registry.get(JwtMetrics.CACHE_COUNTER_NAME).tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(registry.get(JwtMetrics.CACHE_COUNTER_NAME).tag("result", "miss").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void givenClosedMetrics_whenSigning_thenNothingIsRecorded() {
+        jwtMetrics.close();
+        assertThat(JwtMetrics.isEnabled()).isFalse();
+        assertThat(JwtMetrics.start()).isZero();
+
+        String token = JWTUtils.compact(Jwts.builder().subject("rslakra"), secretsService.getHS256SigningKey());
+        secretsService.parseToken(token);
+
+        assertThat(registry.find(JwtMetrics.TIMER_NAME).timers()).isEmpty();
+    }
+
+    @Test
+    void givenRecordedOperations_whenReadingEndpoint_thenPercentilesAreReported() {
+        for (int i = 0; i < 10; i++) {
+            JWTUtils.compact(Jwts.builder().subject("rslakra"), secretsService.getSigningKey(JWTHeaderUtils.HS512));
+        }
+
+        Map<String, Object> result = new JwtMetricsEndpoint(jwtMetrics).jwt();
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> operations = (List<Map<String, Object>>) result.get("operations");
+        assertThat(operations).hasSize(1);
+        assertThat(operations.get(0))
+            .containsEntry("operation", "sign")
+            .containsEntry("algorithm", "HS512")
+            .containsEntry("outcome", "success")
+            .containsEntry("count", 10L)
+            .containsKeys("p50Micros", "p99Micros", "p999Micros");
+    }
+}
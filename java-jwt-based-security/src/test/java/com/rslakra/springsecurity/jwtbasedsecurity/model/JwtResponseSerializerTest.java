@@ -0,0 +1,82 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.CompactToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public class JwtResponseSerializerTest {
+
+    private static final SecretKey KEY = Jwts.SIG.HS256.key().build();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void givenParsedToken_whenSerializing_thenOutputMatchesBeanSerialization() throws Exception {
+        final JwtResponse response = new JwtResponse(parse(newToken()));
+        final ObjectMapper beanMapper = new ObjectMapper().addMixIn(JwtResponse.class, BeanSerialization.class);
+
+        final String streamed = objectMapper.writeValueAsString(response);
+
+        assertThat(streamed).isEqualTo(beanMapper.writeValueAsString(response));
+        assertThat(objectMapper.readTree(streamed).at("/jws/payload/roles/1").asText()).isEqualTo("user");
+    }
+
+    @Test
+    void givenRawPayload_whenSerializing_thenPayloadIsWrittenAsIs() throws Exception {
+        final String token = newToken();
+        final JwtResponse response = new JwtResponse(parse(token));
+        final String payload = CompactToken.of(token).getPayload();
+        response.setRawPayload(payload);
+
+        final String streamed = objectMapper.writeValueAsString(response);
+
+        assertThat(streamed).contains("\"payload\":" + payload + ",").contains("\"body\":" + payload + "}");
+        assertThat(objectMapper.readTree(streamed).at("/jws/payload"))
+            .isEqualTo(objectMapper.readTree(objectMapper.writeValueAsString(new JwtResponse(parse(token))))
+                           .at("/jws/payload"));
+    }
+
+    @Test
+    void givenErrorResponse_whenSerializing_thenOnlySetFieldsAreWritten() throws Exception {
+        final JwtResponse response = new JwtResponse();
+        response.setStatus(JwtResponse.Status.ERROR);
+        response.setMessage("Invalid \"token\"");
+        response.setExceptionType(IllegalArgumentException.class.getName());
+
+        assertThat(objectMapper.writeValueAsString(response))
+            .isEqualTo("{\"message\":\"Invalid \\\"token\\\"\",\"status\":\"ERROR\","
+                       + "\"exceptionType\":\"java.lang.IllegalArgumentException\"}");
+    }
+
+    private static String newToken() {
+        return Jwts.builder()
+            .subject("rslakra")
+            .expiration(new Date(4622470422000L))
+            .claim("scope", "admin")
+            .claim("hasAutomobile", true)
+            .claim("roles", List.of("admin", "user"))
+            .claim("address", Map.of("city", "Zürich"))
+            .signWith(KEY)
+            .compact();
+    }
+
+    private static Jws<Claims> parse(String token) {
+        return Jwts.parser().verifyWith(KEY).build().parseSignedClaims(token);
+    }
+
+    @JsonSerialize(using = JsonSerializer.None.class)
+    private interface BeanSerialization {
+    }
+}
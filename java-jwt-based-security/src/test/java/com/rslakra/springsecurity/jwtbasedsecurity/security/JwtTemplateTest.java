@@ -0,0 +1,81 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+/**
+ * Tokens issued from templates; see JwtTemplateBenchmark for their throughput and allocation rate against the builder
+ * path.
+ */
+public class JwtTemplateTest {
+
+    private SecretsService secretsService;
+    private JwtTemplate template;
+    private long issuedAt;
+    private long expiry;
+
+    @BeforeEach
+    void setUp() {
+        secretsService = new SecretsService();
+        secretsService.initObject();
+        template = JwtTemplate.register("test", Map.of("typ", "JWT"),
+                                        Map.of("iss", "Rohtash Lakra", "scope", "admin"));
+        issuedAt = Instant.now().getEpochSecond();
+        expiry = Instant.now().plus(1, ChronoUnit.HOURS).getEpochSecond();
+    }
+
+    @Test
+    void givenTemplate_whenIssuing_thenTokenVerifiesWithStaticAndDynamicClaims() {
+        String token = template.issue(secretsService.getHS256SigningKey(), "r\"sé", issuedAt, expiry, "id-1");
+
+        Claims claims = secretsService.parseToken(token);
+        assertThat(claims.getIssuer()).isEqualTo("Rohtash Lakra");
+        assertThat(claims.get("scope")).isEqualTo("admin");
+        assertThat(claims.getSubject()).isEqualTo("r\"sé");
+        assertThat(claims.getIssuedAt().toInstant().getEpochSecond()).isEqualTo(issuedAt);
+        assertThat(claims.getExpiration().toInstant().getEpochSecond()).isEqualTo(expiry);
+        assertThat(claims.getId()).isEqualTo("id-1");
+        assertThat(JwtTemplate.get("test")).isSameAs(template);
+
+        String bare = JwtTemplate.register("bare", Map.of(), Map.of())
+            .issue(secretsService.getHS512SecretKey(), null, null, null, null);
+        assertThat(secretsService.parseToken(bare).isEmpty()).isTrue();
+    }
+
+    @Test
+    void givenDynamicClaim_whenRegistering_thenTemplateIsRejected() {
+        assertThatThrownBy(() -> JwtTemplate.register("bad", Map.of(), Map.of("sub", "fixed")))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> JwtTemplate.get("missing")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void givenTemplate_whenIssuingThroughJwtUtils_thenJjwtParserReadsTheBuilderPathClaims() {
+        byte[] secretBytes = secretsService.getHS256SecretBytes();
+        String built = JWTUtils.jwtBuilder("Rohtash Lakra", "rslakra", issuedAt, expiry, Map.of("scope", "admin"),
+                                           secretBytes);
+        String templated = JWTUtils.jwtBuilder(template, "rslakra", issuedAt, expiry, secretBytes);
+
+        JwtParser parser = Jwts.parser().verifyWith(Keys.hmacShaKeyFor(secretBytes)).build();
+        Claims expected = parser.parseSignedClaims(built).getPayload();
+        Claims actual = parser.parseSignedClaims(templated).getPayload();
+        assertThat(actual.getIssuer()).isEqualTo("Rohtash Lakra");
+        assertThat(actual.get("scope")).isEqualTo("admin");
+        assertThat(actual.getSubject()).isEqualTo(expected.getSubject());
+        assertThat(actual.getIssuedAt()).isEqualTo(expected.getIssuedAt());
+        assertThat(actual.getExpiration()).isEqualTo(expected.getExpiration());
+    }
+}
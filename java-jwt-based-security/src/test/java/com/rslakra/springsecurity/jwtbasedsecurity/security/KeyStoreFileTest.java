@@ -0,0 +1,91 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.VerifiedClaimsCache;
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class KeyStoreFileTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * @param keyStore the keystore
+     * @return an initialized service backed by the keystore
+     */
+    private SecretsService newSecretsService(KeyStoreFile keyStore) {
+        SecretsService secretsService = new SecretsService(new VerifiedClaimsCache(),
+                                                           SecretsService.DEFAULT_KEY_OVERLAP_MILLIS, keyStore);
+        secretsService.initObject();
+        return secretsService;
+    }
+
+    /**
+     * @param secretsService the issuing service
+     * @return a token signed with its current HS256 key
+     */
+    private String buildToken(SecretsService secretsService) {
+        return JWTUtils.compact(Jwts.builder().subject("rslakra"), secretsService.getHS256SigningKey());
+    }
+
+    @Test
+    void givenPersistedKeys_whenServiceRestarts_thenIssuedTokensStillVerify() {
+        KeyStoreFile keyStore = new KeyStoreFile(directory.resolve("keys/keystore.bin"));
+        SecretsService first = newSecretsService(keyStore);
+        String token = buildToken(first);
+        first.refreshSecrets();
+        String rotatedToken = buildToken(first);
+
+        SecretsService restarted = newSecretsService(new KeyStoreFile(keyStore.getPath()));
+
+        assertThat(restarted.getSecrets()).isEqualTo(first.getSecrets());
+        assertThat(restarted.getKeyRing().getVersion()).isEqualTo(first.getKeyRing().getVersion());
+        // the key replaced by the refresh is still within its overlap window
+        assertThat(restarted.parseToken(token).getSubject()).isEqualTo("rslakra");
+        assertThat(restarted.parseToken(rotatedToken).getSubject()).isEqualTo("rslakra");
+    }
+
+    @Test
+    void givenSharedKeyStore_whenAnotherInstanceRotates_thenItsTokensVerifyAndRotationsStack() throws Exception {
+        Path path = directory.resolve("keystore.bin");
+        SecretsService first = newSecretsService(new KeyStoreFile(path));
+        SecretsService second = newSecretsService(new KeyStoreFile(path));
+        assertThat(second.getSecrets()).isEqualTo(first.getSecrets());
+
+        // past the reload throttle of the second instance's initial load
+        Thread.sleep(SecretsService.KEY_STORE_CHECK_INTERVAL_MILLIS + 10);
+        first.refreshSecrets();
+        String token = buildToken(first);
+        assertThat(second.parseToken(token).getSubject()).isEqualTo("rslakra");
+
+        // rotating from the second instance keeps the first instance's rotation in the ring
+        second.refreshSecrets();
+        assertThat(second.getKeyRing().getVersion()).isEqualTo(3);
+        assertThat(second.parseToken(token).getSubject()).isEqualTo("rslakra");
+    }
+
+    @Test
+    void givenCorruptedKeyStore_whenLoading_thenChecksumMismatchIsReported() throws Exception {
+        KeyStoreFile keyStore = new KeyStoreFile(directory.resolve("keystore.bin"));
+        newSecretsService(keyStore);
+
+        byte[] bytes = Files.readAllBytes(keyStore.getPath());
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(keyStore.getPath(), bytes, StandardOpenOption.TRUNCATE_EXISTING);
+
+        assertThatThrownBy(() -> keyStore.load(System.currentTimeMillis()))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("checksum mismatch");
+        assertThatThrownBy(() -> newSecretsService(keyStore)).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,122 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.VerifiedClaimsCache;
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.CompactToken;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.SignatureException;
+import io.jsonwebtoken.security.WeakKeyException;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Map;
+
+public class PooledMacAlgorithmTest {
+
+    @Test
+    void givenPooledAlgorithm_whenSigning_thenTokensMatchJjwtAndMacsAreReused() {
+        for (PooledMacAlgorithm algorithm : PooledMacAlgorithm.values()) {
+            SecretKey key = algorithm.key().build();
+            String standard = Jwts.builder().subject("rslakra").signWith(key).compact();
+            String pooled = Jwts.builder().subject("rslakra").signWith(key, algorithm).compact();
+            assertThat(pooled).isEqualTo(standard);
+
+            long created = algorithm.getStats().get("macsCreated");
+            for (int i = 0; i < 100; i++) {
+                Jwts.builder().subject("rslakra").signWith(key, algorithm).compact();
+            }
+            assertThat(algorithm.getStats().get("macsCreated")).isEqualTo(created);
+        }
+    }
+
+    @Test
+    void givenEitherEngine_whenParsing_thenTokensOfTheOtherVerify() {
+        SecretKey key = Jwts.SIG.HS384.key().build();
+        String jjwtToken = JWTUtils.compact(Jwts.builder().subject("rslakra"), key, SigningEngine.JJWT);
+        String pooledToken = JWTUtils.compact(Jwts.builder().subject("rslakra"), key, SigningEngine.POOLED);
+
+        assertThat(pooledToken).isEqualTo(jjwtToken);
+        assertThat(JWTUtils.parseJWTToken(jjwtToken, key, SigningEngine.POOLED).getPayload().getSubject())
+            .isEqualTo("rslakra");
+        assertThat(JWTUtils.parseJWTToken(pooledToken, key, SigningEngine.JJWT).getPayload().getSubject())
+            .isEqualTo("rslakra");
+    }
+
+    @Test
+    void givenPooledEngine_whenSecretsServiceVerifies_thenPooledMacsAreUsed() {
+        SecretsService secretsService = new SecretsService(new VerifiedClaimsCache(0, 0),
+                                                           SecretsService.DEFAULT_KEY_OVERLAP_MILLIS, null,
+                                                           SigningEngine.POOLED);
+        secretsService.initObject();
+        KeyRing.Entry signingKey = secretsService.getSigningKey(JWTHeaderUtils.HS512);
+        // signed by jjwt, so the key has no pooled Mac yet
+        String token = JWTUtils.compact(Jwts.builder().subject("rslakra"), signingKey, SigningEngine.JJWT);
+
+        long created = PooledMacAlgorithm.HS512.getStats().get("macsCreated");
+        for (int i = 0; i < 100; i++) {
+            assertThat(secretsService.parseToken(token).getSubject()).isEqualTo("rslakra");
+        }
+        assertThat(PooledMacAlgorithm.HS512.getStats().get("macsCreated")).isEqualTo(created + 1);
+
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BA" : "AA");
+        assertThatThrownBy(() -> secretsService.parseToken(tampered)).isInstanceOf(SignatureException.class);
+    }
+
+    @Test
+    void givenJjwtEngine_whenSigningRawTokens_thenResultsMatchAndNoPooledMacIsCreated() {
+        SecretsService secretsService = new SecretsService(new VerifiedClaimsCache(0, 0),
+                                                           SecretsService.DEFAULT_KEY_OVERLAP_MILLIS, null,
+                                                           SigningEngine.JJWT);
+        secretsService.initObject();
+        assertThat(secretsService.getSigningEngine()).isEqualTo(SigningEngine.JJWT);
+        KeyRing.Entry signingKey = secretsService.getSigningKey(JWTHeaderUtils.HS256);
+        JwtTemplate template = JwtTemplate.register("engines", Map.of("typ", "JWT"), Map.of("iss", "Rohtash Lakra"));
+        Map<String, Object> claims = Map.of("sub", "rslakra", "scope", "admin");
+
+        long created = PooledMacAlgorithm.HS256.getStats().get("macsCreated");
+        String jjwtTemplate = template.issue(signingKey, "rslakra", 1466796822L, 4622470422L, null,
+                                             SigningEngine.JJWT);
+        String jjwtCwt = JWTUtils.cwtCompactBuilderWithClaims(claims, signingKey, 0, SigningEngine.JJWT);
+        assertThat(CompactToken.of(jjwtTemplate).verifySignature(signingKey.getKey(), SigningEngine.JJWT)).isTrue();
+        assertThat(secretsService.parseToken(jjwtTemplate).getSubject()).isEqualTo("rslakra");
+        assertThat(secretsService.parseToken(jjwtCwt).get("scope")).isEqualTo("admin");
+        assertThat(PooledMacAlgorithm.HS256.getStats().get("macsCreated")).isEqualTo(created);
+
+        assertThat(template.issue(signingKey, "rslakra", 1466796822L, 4622470422L, null, SigningEngine.POOLED))
+            .isEqualTo(jjwtTemplate);
+        assertThat(JWTUtils.cwtCompactBuilderWithClaims(claims, signingKey, 0, SigningEngine.POOLED))
+            .isEqualTo(jjwtCwt);
+    }
+
+    @Test
+    void givenEitherEngine_whenParsingWithTheServiceParserBuilder_thenOnlyPooledEngineBorrowsMacs() {
+        for (SigningEngine engine : SigningEngine.values()) {
+            SecretsService secretsService = new SecretsService(new VerifiedClaimsCache(0, 0),
+                                                               SecretsService.DEFAULT_KEY_OVERLAP_MILLIS, null, engine);
+            secretsService.initObject();
+            KeyRing.Entry signingKey = secretsService.getSigningKey(JWTHeaderUtils.HS384);
+            String token = JWTUtils.compact(Jwts.builder().issuer("Rohtash Lakra").subject("rslakra"), signingKey,
+                                            SigningEngine.JJWT);
+            JwtParser parser = secretsService.parserBuilder().requireIssuer("Rohtash Lakra").build();
+
+            long created = PooledMacAlgorithm.HS384.getStats().get("macsCreated");
+            assertThat(parser.parseSignedClaims(token).getPayload().getSubject()).isEqualTo("rslakra");
+            assertThat(PooledMacAlgorithm.HS384.getStats().get("macsCreated"))
+                .isEqualTo(engine == SigningEngine.POOLED ? created + 1 : created);
+        }
+    }
+
+    @Test
+    void givenShortKey_whenBorrowing_thenWeakKeyIsRejected() {
+        SecretKey shortKey = new SecretKeySpec(new byte[16], "HmacSHA256");
+
+        assertThatThrownBy(() -> PooledMacAlgorithm.HS256.borrow(shortKey)).isInstanceOf(WeakKeyException.class);
+    }
+}
@@ -0,0 +1,120 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.cache.VerifiedClaimsCache;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Map;
+
+public class SecretsServiceTest {
+
+    private SecretsService secretsService;
+
+    @BeforeEach
+    void setUp() {
+        secretsService = new SecretsService();
+        secretsService.initObject();
+    }
+
+    /**
+     * @return a token signed with the current HS256 key, valid for an hour
+     */
+    private String buildToken() {
+        return Jwts.builder()
+            .subject("rslakra")
+            .claim("name", "Rohtash Lakra")
+            .issuedAt(new Date())
+            .expiration(Date.from(Instant.now().plus(1, ChronoUnit.HOURS)))
+            .signWith(secretsService.getHS256SecretKey())
+            .compact();
+    }
+
+    @Test
+    void givenVerifiedToken_whenParsedAgain_thenClaimsAreServedFromCache() {
+        String token = buildToken();
+
+        Claims first = secretsService.parseToken(token);
+        Claims second = secretsService.parseToken(token);
+
+        assertThat(second).isSameAs(first);
+        assertThat(secretsService.getClaimsCacheStats())
+            .containsEntry("size", 1L)
+            .containsEntry("hits", 1L)
+            .containsEntry("misses", 1L);
+    }
+
+    @Test
+    void givenCachedToken_whenSecretsAreRefreshed_thenTokenIsVerifiedAgain() {
+        String token = buildToken();
+        secretsService.parseToken(token);
+
+        secretsService.refreshSecrets();
+
+        assertThat(secretsService.getClaimsCacheStats()).containsEntry("size", 0L);
+        assertThatThrownBy(() -> secretsService.parseToken(token)).isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void givenTokenWithKeyId_whenSecretsAreRefreshed_thenTokenVerifiesDuringOverlap() {
+        String token = JWTUtils.jwtBuilder("Rohtash Lakra", "rslakra", Instant.now().getEpochSecond(),
+                                           Instant.now().plus(1, ChronoUnit.HOURS).getEpochSecond(), Map.of(),
+                                           secretsService.getHS256SecretBytes());
+        String keyId = secretsService.getHS256SigningKey().getKeyId();
+        assertThat(secretsService.parseSignedClaims(token).getHeader().getKeyId()).isEqualTo(keyId);
+
+        long version = secretsService.getKeyRing().getVersion();
+        secretsService.refreshSecrets();
+
+        assertThat(secretsService.getKeyRing().getVersion()).isEqualTo(version + 1);
+        assertThat(secretsService.getHS256SigningKey().getKeyId()).isNotEqualTo(keyId);
+        assertThat(secretsService.parseToken(token).getSubject()).isEqualTo("rslakra");
+    }
+
+    @Test
+    void givenNoOverlap_whenSecretsAreRefreshed_thenPreviousKeyIdIsRejected() {
+        secretsService = new SecretsService(new VerifiedClaimsCache(), 0);
+        secretsService.initObject();
+        String token = JWTUtils.jwtBuilder("Rohtash Lakra", "rslakra", null, null, null,
+                                           secretsService.getHS256SecretBytes());
+
+        secretsService.refreshSecrets();
+
+        assertThatThrownBy(() -> secretsService.parseToken(token))
+            .isInstanceOf(JwtException.class)
+            .hasMessageContaining("No secret key found for kid");
+    }
+
+    @Test
+    void givenTokenSignedWithServiceKey_whenSniffingAlgorithm_thenSigningAlgorithmIsFound() {
+        String token = JWTUtils.jwtBuilder("Rohtash Lakra", "rslakra", Instant.now().getEpochSecond(),
+                                           Instant.now().plus(1, ChronoUnit.HOURS).getEpochSecond(),
+                                           Map.of("scope", "ADMIN"), secretsService.getHS384SecretBytes());
+
+        assertThat(JWTHeaderUtils.sniffAlgorithm(token)).isEqualTo(JWTHeaderUtils.HS384);
+    }
+
+    @Test
+    void givenPrebuiltParsers_whenVerifying_thenClaimsMatchAParserBuiltPerCall() {
+        String token = JWTUtils.jwtBuilder("Rohtash Lakra", "rslakra", Instant.now().getEpochSecond(),
+                                           Instant.now().plus(1, ChronoUnit.HOURS).getEpochSecond(),
+                                           Map.of("scope", "ADMIN"), secretsService.getHS384SecretBytes());
+
+        Claims prebuilt = secretsService.parseSignedClaims(token).getPayload();
+        Claims rebuilt = Jwts.parser().keyLocator(secretsService.getKeyLocator()).build()
+            .parseSignedClaims(token).getPayload();
+
+        assertThat(prebuilt).isEqualTo(rebuilt);
+        assertThat(prebuilt.get("scope")).isEqualTo("ADMIN");
+    }
+}
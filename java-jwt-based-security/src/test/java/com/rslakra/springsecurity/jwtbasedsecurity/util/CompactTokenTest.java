@@ -0,0 +1,96 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.CompactToken;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+public class CompactTokenTest {
+
+    private static final String SECRET = "MySecretKeyThatIsAtLeast32BytesLong!";
+
+    private SecretsService secretsService;
+
+    @BeforeEach
+    void setUp() {
+        secretsService = new SecretsService();
+        secretsService.initObject();
+    }
+
+    @Test
+    void givenTokenBytes_whenViewing_thenSegmentsAreDecodedAndSignatureVerifiedInPlace() {
+        SecretKey key = secretsService.getHS384SecretKey();
+        String token = Jwts.builder().subject("rslakra").claim("name", "Rohtash Lakrä").signWith(key).compact();
+        byte[] request = ("token=" + token + "&next").getBytes(StandardCharsets.US_ASCII);
+
+        CompactToken view = CompactToken.of(request, 6, token.length());
+
+        assertThat(view.getAlgorithm()).isEqualTo(JWTHeaderUtils.HS384);
+        assertThat(view.getHeader()).contains("\"alg\":\"HS384\"");
+        assertThat(view.getPayload()).contains("\"sub\":\"rslakra\"", "Rohtash Lakrä");
+        assertThat(view.verifySignature(key)).isTrue();
+        assertThat(view.verifySignature(secretsService.getHS512SecretKey())).isFalse();
+        assertThat(view.toString()).isEqualTo(token);
+        assertThat(CompactToken.of(token).verifySignature(key)).isTrue();
+        assertThat(CompactToken.of(token.substring(0, token.length() - 2) + "AA").verifySignature(key)).isFalse();
+    }
+
+    @Test
+    void givenMalformedTokens_whenViewing_thenTheyAreRejected() {
+        assertThatThrownBy(() -> CompactToken.of("no-dots")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CompactToken.of("a.b")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CompactToken.of("a.b.c.d")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CompactToken.of(".b.c")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void givenExpiredToken_whenDecodingWithVerification_thenItIsRejected() {
+        SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        String expired = Jwts.builder()
+            .subject("rslakra")
+            .expiration(Date.from(Instant.now().minus(1, ChronoUnit.MINUTES)))
+            .signWith(key)
+            .compact();
+
+        assertThatThrownBy(() -> JWTUtils.decodeJWTToken(expired, SECRET))
+            .hasMessageContaining("integrity")
+            .hasCauseInstanceOf(ExpiredJwtException.class);
+    }
+
+    @Test
+    void givenNotYetValidToken_whenDecodingWithVerification_thenItIsRejected() {
+        SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        String premature = Jwts.builder()
+            .subject("rslakra")
+            .notBefore(Date.from(Instant.now().plus(1, ChronoUnit.MINUTES)))
+            .signWith(key)
+            .compact();
+
+        assertThatThrownBy(() -> JWTUtils.decodeJWTToken(premature, SECRET))
+            .hasMessageContaining("integrity")
+            .hasCauseInstanceOf(PrematureJwtException.class);
+    }
+
+    @Test
+    void givenCompressedToken_whenDecodingWithVerification_thenItIsVerified() throws Exception {
+        SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        String compressed = Jwts.builder().subject("rslakra").compressWith(Jwts.ZIP.DEF).signWith(key).compact();
+
+        assertThat(JWTUtils.decodeJWTToken(compressed, SECRET)).contains("\"zip\":\"DEF\"");
+    }
+}
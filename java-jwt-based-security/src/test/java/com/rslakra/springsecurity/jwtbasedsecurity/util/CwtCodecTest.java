@@ -0,0 +1,86 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.security.KeyRing;
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.CwtCodec;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTUtils;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CwtCodecTest {
+
+    private SecretsService secretsService;
+
+    @BeforeEach
+    void setUp() {
+        secretsService = new SecretsService();
+        secretsService.initObject();
+    }
+
+    @Test
+    void givenClaims_whenEncodingAsCwt_thenTokenIsSmallerAndParsesToTheSameClaims() {
+        final Map<String, Object> claims = claimsExpiringIn(1);
+        claims.put("roles", List.of("ADMIN", "USER"));
+        claims.put("address", Map.of("city", "Zürich"));
+        final KeyRing.Entry signingKey = secretsService.getSigningKey(JWTHeaderUtils.HS512);
+
+        final String cwt = JWTUtils.cwtCompactBuilderWithClaims(claims, signingKey);
+        final String jws = JWTUtils.jwtCompactBuilderWithClaims(claims, signingKey);
+
+        assertThat(CwtCodec.isCwt(cwt)).isTrue();
+        assertThat(CwtCodec.isCwt(jws)).isFalse();
+        assertThat(CwtCodec.isCwt("not-a-token")).isFalse();
+        assertThat(cwt.length()).isLessThan(jws.length());
+
+        final Claims fromCwt = secretsService.parseToken(cwt);
+        final Claims fromJws = secretsService.parseToken(jws);
+        assertThat(fromCwt).isEqualTo(fromJws);
+        assertThat(fromCwt.getAudience()).containsExactly("mobile");
+        assertThat(fromCwt.getId()).isEqualTo("token-1");
+        assertThat(fromCwt.get("roles")).isEqualTo(List.of("ADMIN", "USER"));
+        assertThat(fromCwt.get("address")).isEqualTo(Map.of("city", "Zürich"));
+    }
+
+    @Test
+    void givenTamperedOrExpiredCwt_whenParsing_thenItIsRejected() {
+        final KeyRing.Entry signingKey = secretsService.getHS256SigningKey();
+        final String cwt = JWTUtils.cwtCompactBuilderWithClaims(claimsExpiringIn(1), signingKey);
+        final String tampered = cwt.substring(0, cwt.length() - 3) + (cwt.endsWith("AAA") ? "BBB" : "AAA");
+        final String expired = JWTUtils.cwtCompactBuilderWithClaims(claimsExpiringIn(-1), signingKey);
+
+        assertThatThrownBy(() -> secretsService.parseToken(tampered)).isInstanceOf(SignatureException.class);
+        assertThatThrownBy(() -> secretsService.parseToken(expired)).isInstanceOf(ExpiredJwtException.class);
+        assertThatThrownBy(() -> JWTUtils.cwtCompactBuilderWithClaims(Map.of("exp", "tomorrow"), signingKey))
+            .isInstanceOf(JwtException.class);
+    }
+
+    /**
+     * @param hours the hours until the expiry, negative for an expired token
+     * @return the registered claims
+     */
+    private static Map<String, Object> claimsExpiringIn(int hours) {
+        final Instant now = Instant.now();
+        final Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put(JWTUtils.ISSUER, "Rohtash Lakra");
+        claims.put(JWTUtils.SUBJECT, "rslakra");
+        claims.put(JWTUtils.AUDIENCE, "mobile");
+        claims.put(JWTUtils.ISSUED_AT, now.minus(2, ChronoUnit.HOURS).getEpochSecond());
+        claims.put(JWTUtils.EXPIRATION, now.plus(hours, ChronoUnit.HOURS).getEpochSecond());
+        claims.put(JWTUtils.JWT_ID, "token-1");
+        return claims;
+    }
+}
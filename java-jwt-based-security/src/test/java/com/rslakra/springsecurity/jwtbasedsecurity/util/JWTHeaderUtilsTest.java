@@ -0,0 +1,37 @@
+package com.rslakra.springsecurity.jwtbasedsecurity.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.rslakra.springsecurity.jwtbasedsecurity.service.SecretsService;
+import com.rslakra.springsecurity.jwtbasedsecurity.utils.JWTHeaderUtils;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class JWTHeaderUtilsTest {
+
+    private SecretsService secretsService;
+
+    @BeforeEach
+    void setUp() {
+        secretsService = new SecretsService();
+        secretsService.initObject();
+    }
+
+    @Test
+    void givenTokensOfEachAlgorithm_whenSniffing_thenAlgorithmIsFound() {
+        String hs256 = Jwts.builder().subject("s").signWith(secretsService.getHS256SecretKey()).compact();
+        String hs384 = Jwts.builder().subject("s").signWith(secretsService.getHS384SecretKey()).compact();
+        // a kid that reads like the alg header must not be mistaken for it
+        String hs512 = Jwts.builder()
+            .header().keyId("alg").and()
+            .subject("s")
+            .signWith(secretsService.getHS512SecretKey())
+            .compact();
+
+        assertThat(JWTHeaderUtils.sniffAlgorithm(hs256)).isEqualTo(JWTHeaderUtils.HS256);
+        assertThat(JWTHeaderUtils.sniffAlgorithm(hs384)).isEqualTo(JWTHeaderUtils.HS384);
+        assertThat(JWTHeaderUtils.sniffAlgorithm(hs512)).isEqualTo(JWTHeaderUtils.HS512);
+        assertThat(JWTHeaderUtils.sniffAlgorithm("not-a-token")).isNull();
+    }
+}